@@ -0,0 +1,56 @@
+#!/usr/bin/env bash
+# Time from JVM launch to the first successful HTTP response, for the default build
+# and the fast-startup build (AOT + CDS + prod profile).
+#
+#   mvn -DskipTests package && scripts/measure-startup.sh baseline
+#   mvn -Pfast-startup -DskipTests package && scripts/measure-startup.sh fast
+#
+# Needs the usual environment (.env) and a reachable, migrated database. Run each mode
+# a few times and compare the medians; the first run after a build pays for cold disk caches.
+#
+# No before/after numbers have been recorded for the fast-startup build yet, so it makes no
+# claim about the gain. When measuring, keep the JDK build, hardware, database and RUNS the
+# same for both modes, and report the printed medians together with those.
+set -euo pipefail
+
+MODE=${1:?usage: measure-startup.sh baseline|fast [runs]}
+RUNS=${2:-5}
+PORT=${PORT:-8080}
+URL="http://localhost:${PORT}/actuator/health"
+cd "$(dirname "$0")/.."
+
+case "$MODE" in
+  baseline)
+    CMD=(java -jar target/tracemydata-0.0.1-SNAPSHOT-exec.jar)
+    ;;
+  fast)
+    cd target/cds
+    CMD=(java -XX:SharedArchiveFile=application.jsa -Dspring.aot.enabled=true
+         -Dspring.profiles.active=prod -jar tracemydata-0.0.1-SNAPSHOT-exec.jar)
+    ;;
+  *)
+    echo "unknown mode: $MODE" >&2
+    exit 1
+    ;;
+esac
+
+durations=()
+for run in $(seq 1 "$RUNS"); do
+  start=$(date +%s%N)
+  "${CMD[@]}" --server.port="$PORT" > "/tmp/startup-${MODE}-${run}.log" 2>&1 &
+  pid=$!
+  until curl -sf -o /dev/null "$URL"; do
+    if ! kill -0 "$pid" 2>/dev/null; then
+      echo "run $run: application exited, see /tmp/startup-${MODE}-${run}.log" >&2
+      exit 1
+    fi
+    sleep 0.02
+  done
+  end=$(date +%s%N)
+  durations+=($(( (end - start) / 1000000 )))
+  echo "$MODE run $run: ${durations[-1]} ms to first request"
+  kill "$pid"
+  wait "$pid" 2>/dev/null || true
+done
+
+echo "$MODE median of $RUNS runs: $(printf '%s\n' "${durations[@]}" | sort -n | awk '{ v[NR] = $1 } END { print (NR % 2) ? v[(NR + 1) / 2] : int((v[NR / 2] + v[NR / 2 + 1]) / 2) }') ms"
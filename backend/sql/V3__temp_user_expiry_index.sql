@@ -0,0 +1,5 @@
+-- Keyset index for the chunked expiry purge in TempUserCleanupJob.
+-- The column is expired_at (as mapped by TempUser), ordered with id for the keyset cursor.
+-- CONCURRENTLY keeps the table writable while the index is built.
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_temp_user_expired_at_id ON temp_user (expired_at, id);
@@ -0,0 +1,4 @@
+-- Per-user token version, copied into every access token as the "ver" claim.
+-- Bumping it makes all access tokens issued before the bump stale.
+
+ALTER TABLE users ADD COLUMN IF NOT EXISTS token_version INT NOT NULL DEFAULT 0;
@@ -0,0 +1,32 @@
+-- Append-only journal of authentication events (logins, password and email changes,
+-- logouts), written in batches by AuthEventJournal. Range partitioned by month so old
+-- months are dropped as whole tables instead of deleted row by row; the journal creates
+-- upcoming partitions itself, the default partition only catches rows it missed.
+
+CREATE TABLE IF NOT EXISTS auth_event (
+    id BIGSERIAL,
+    user_id UUID NOT NULL,
+    event_type VARCHAR(32) NOT NULL,
+    email VARCHAR(255),
+    ip VARCHAR(45),
+    user_agent VARCHAR(255),
+    occurred_at TIMESTAMP NOT NULL,
+    PRIMARY KEY (occurred_at, id)
+) PARTITION BY RANGE (occurred_at);
+
+CREATE TABLE IF NOT EXISTS auth_event_default PARTITION OF auth_event DEFAULT;
+
+-- Login history of one user, newest first, paged by (occurred_at, id)
+CREATE INDEX IF NOT EXISTS idx_auth_event_user ON auth_event (user_id, occurred_at DESC, id DESC);
+
+-- Current and next month, so the first writes after the migration do not land in the default partition
+DO $$
+DECLARE
+    month_start DATE;
+BEGIN
+    FOR i IN 0..1 LOOP
+        month_start := (date_trunc('month', now()) + make_interval(months => i))::date;
+        EXECUTE format('CREATE TABLE IF NOT EXISTS %I PARTITION OF auth_event FOR VALUES FROM (%L) TO (%L)',
+                'auth_event_p' || to_char(month_start, 'YYYY_MM'), month_start, (month_start + interval '1 month')::date);
+    END LOOP;
+END $$;
@@ -0,0 +1,17 @@
+-- ES256 access-token signing keys, shared by every instance.
+-- A key is published on /.well-known/jwks.json as soon as it exists, signs from
+-- activates_at until its successor activates, and is dropped from verification at
+-- expires_at (NULL while it is still the newest key).
+-- private_key is the PKCS#8 key encrypted with AES-GCM under a key derived from app.jwt.secret.
+
+CREATE TABLE IF NOT EXISTS jwt_signing_key (
+    kid VARCHAR(64) PRIMARY KEY,
+    algorithm VARCHAR(16) NOT NULL,
+    public_key BYTEA NOT NULL,
+    private_key BYTEA NOT NULL,
+    created_at TIMESTAMP NOT NULL,
+    activates_at TIMESTAMP NOT NULL,
+    expires_at TIMESTAMP
+);
+
+CREATE INDEX IF NOT EXISTS idx_jwt_signing_key_created_at ON jwt_signing_key (created_at);
@@ -0,0 +1,33 @@
+-- Email verification, email change and password reset tokens, one per pending temp_user row.
+-- Only the SHA-256 of a token is stored (a fixed 32 bytes); lookups go through a hash index,
+-- which keeps a 4-byte code per row instead of the whole key. Tokens cascade away with their
+-- temp_user row, so TempUserCleanupJob purges both.
+
+CREATE TABLE IF NOT EXISTS verification_token (
+    temp_user_id BIGINT PRIMARY KEY REFERENCES temp_user (id) ON DELETE CASCADE,
+    token_hash BYTEA NOT NULL CHECK (octet_length(token_hash) = 32),
+    purpose VARCHAR(16) NOT NULL CHECK (purpose IN ('REGISTER', 'EMAIL_CHANGE', 'PASSWORD_RESET')),
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    expires_at TIMESTAMP NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_verification_token_hash ON verification_token USING hash (token_hash);
+
+-- Pending links keep working: hash the plaintext tokens. The purpose follows from the row:
+-- no user yet is a registration, the user's current email a reset, another email a change.
+DO $$
+BEGIN
+    IF EXISTS (SELECT 1 FROM information_schema.columns
+               WHERE table_name = 'temp_user' AND column_name = 'token') THEN
+        INSERT INTO verification_token (temp_user_id, token_hash, purpose, created_at, expires_at)
+        SELECT t.id, sha256(convert_to(t.token, 'UTF8')),
+               CASE WHEN t.user_id IS NULL THEN 'REGISTER'
+                    WHEN t.email = u.email THEN 'PASSWORD_RESET'
+                    ELSE 'EMAIL_CHANGE' END,
+               t.created_at, t.expired_at
+        FROM temp_user t LEFT JOIN users u ON u.id = t.user_id
+        ON CONFLICT (temp_user_id) DO NOTHING;
+
+        ALTER TABLE temp_user DROP COLUMN token;
+    END IF;
+END $$;
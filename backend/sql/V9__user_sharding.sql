@@ -0,0 +1,25 @@
+-- Email-hash sharding of accounts (app.sharding.*). Runs on every shard.
+--
+-- user_bucket() is the SQL twin of ShardKeys.bucketOf(): the email trimmed of spaces and
+-- lower-cased in ASCII only, SHA-256, the first four bytes as an unsigned integer, modulo
+-- 1024. The two must stay identical: the app routes by the Java one, the resharding tool
+-- selects the rows of a bucket with this one.
+
+CREATE OR REPLACE FUNCTION user_bucket(email TEXT) RETURNS INTEGER
+    LANGUAGE sql IMMUTABLE STRICT PARALLEL SAFE AS
+$$
+    SELECT (('x' || substr(encode(sha256(convert_to(lower(btrim(email, ' ') COLLATE "C"), 'UTF8')), 'hex'), 1, 8))::bit(32)::bigint % 1024)::integer
+$$;
+
+-- A bucket's accounts (and pending registrations) in one index range scan while it is moved;
+-- their auth events are paged through idx_auth_event_user from V6
+CREATE INDEX IF NOT EXISTS idx_users_bucket ON users (user_bucket(email));
+CREATE INDEX IF NOT EXISTS idx_temp_user_bucket ON temp_user (user_bucket(email));
+
+-- Bucket -> shard directory, read from the first shard only. frozen_at is set while
+-- ShardMover copies the bucket; work for a frozen bucket waits until it flips.
+CREATE TABLE IF NOT EXISTS shard_bucket_map (
+    bucket SMALLINT PRIMARY KEY CHECK (bucket >= 0 AND bucket < 1024),
+    shard SMALLINT NOT NULL,
+    frozen_at TIMESTAMP
+);
@@ -0,0 +1,26 @@
+-- Flyway callback, runs before every migrate. Creates the two tables that used to come
+-- from Hibernate's ddl-auto=update (V1 and later alter them), so an empty database can be
+-- built from backend/sql alone. Columns match the JPA mappings as Hibernate created them;
+-- temp_user.user_id and users.token_version are added by V1 and V5. A no-op on existing
+-- databases.
+
+CREATE TABLE IF NOT EXISTS users (
+    id UUID PRIMARY KEY,
+    first_name VARCHAR(500),
+    last_name VARCHAR(500),
+    email VARCHAR(255) NOT NULL UNIQUE,
+    password_hash VARCHAR(255),
+    auth_provider VARCHAR(50),
+    created_at TIMESTAMP(6)
+);
+
+CREATE TABLE IF NOT EXISTS temp_user (
+    id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    first_name VARCHAR(500),
+    last_name VARCHAR(500),
+    email VARCHAR(255) NOT NULL UNIQUE,
+    password VARCHAR(255) NOT NULL,
+    token VARCHAR(255) NOT NULL UNIQUE,
+    created_at TIMESTAMP(6) NOT NULL,
+    expired_at TIMESTAMP(6) NOT NULL
+);
@@ -1,8 +0,0 @@
-CREATE TABLE verification_token (
-    id BIGINT PRIMARY KEY AUTO_INCREMENT,
-    token VARCHAR(255) NOT NULL UNIQUE,
-    user_id UUID NOT NULL,
-    created_at TIMESTAMP NOT NULL,
-    expires_at TIMESTAMP NOT NULL,
-    CONSTRAINT fk_user FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE
-);
@@ -1,14 +1,24 @@
 package com.tracemydata.config;
 
+import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.client.RestTemplate;
 
+import com.tracemydata.util.ConnectionHoldTracker;
+
 @Configuration
 public class AppConfig {
 
+    // Built from Boot's builder so outbound calls get http.client.requests metrics and client spans
     @Bean
-    public RestTemplate restTemplate() {
-        return new RestTemplate();
+    public RestTemplate restTemplate(RestTemplateBuilder builder, ConnectionHoldTracker connectionHolds) {
+        return builder
+                // Flags HTTP calls made while the calling thread holds a JDBC connection
+                .additionalInterceptors((request, body, execution) -> {
+                    connectionHolds.networkCall("http " + request.getURI().getHost());
+                    return execution.execute(request, body);
+                })
+                .build();
     }
 }
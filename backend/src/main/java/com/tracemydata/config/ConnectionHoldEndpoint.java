@@ -0,0 +1,31 @@
+package com.tracemydata.config;
+
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import com.tracemydata.util.ConnectionHoldTracker;
+
+// GET /actuator/connectionholds: call sites ranked by connection holds that spanned network I/O, then by longest hold
+@Component
+@Endpoint(id = "connectionholds")
+public class ConnectionHoldEndpoint {
+
+    private final ConnectionHoldTracker tracker;
+    private final int reportSize;
+
+    public ConnectionHoldEndpoint(ConnectionHoldTracker tracker,
+            @Value("${app.db.hold-profiler.report-size:20}") int reportSize) {
+        this.tracker = tracker;
+        this.reportSize = reportSize;
+    }
+
+    @ReadOperation
+    public Map<String, List<ConnectionHoldTracker.SiteReport>> sites() {
+        return Map.of("sites", tracker.report(reportSize));
+    }
+}
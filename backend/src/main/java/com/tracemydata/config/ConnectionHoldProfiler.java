@@ -0,0 +1,63 @@
+package com.tracemydata.config;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.stereotype.Component;
+
+import com.tracemydata.util.ConnectionHoldTracker;
+
+/**
+ * Wraps the application's "dataSource" so every checkout is timed by
+ * ConnectionHoldTracker. With read replicas that bean is the lazy routing proxy,
+ * so a hold spans the transaction rather than the physical pool checkout.
+ * app.db.hold-profiler.enabled=false leaves the DataSource untouched.
+ */
+@Component
+public class ConnectionHoldProfiler implements BeanPostProcessor {
+
+    // Looked up lazily: a post-processor must not pull beans into existence while it is being registered
+    private final ObjectProvider<ConnectionHoldTracker> tracker;
+    private final boolean enabled;
+
+    public ConnectionHoldProfiler(ObjectProvider<ConnectionHoldTracker> tracker,
+            @Value("${app.db.hold-profiler.enabled:true}") boolean enabled) {
+        this.tracker = tracker;
+        this.enabled = enabled;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (enabled && "dataSource".equals(beanName) && bean instanceof DataSource dataSource) {
+            return new ProfilingDataSource(dataSource, tracker.getObject());
+        }
+        return bean;
+    }
+
+    // DelegatingDataSource keeps unwrap() working for Hikari metrics and health checks
+    private static final class ProfilingDataSource extends DelegatingDataSource {
+
+        private final ConnectionHoldTracker tracker;
+
+        ProfilingDataSource(DataSource target, ConnectionHoldTracker tracker) {
+            super(target);
+            this.tracker = tracker;
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            return tracker.track(super.getConnection());
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return tracker.track(super.getConnection(username, password));
+        }
+    }
+}
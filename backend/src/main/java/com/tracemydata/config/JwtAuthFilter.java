@@ -7,17 +7,29 @@ import jakarta.servlet.http.HttpServletResponse;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.AuthorityUtils;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import com.tracemydata.controller.AuthController;
+import com.tracemydata.util.AuthJfrEvents;
+import com.tracemydata.util.JwtPrincipalCache;
 import com.tracemydata.util.JwtUtil;
+import com.tracemydata.util.TokenRevocationList;
+import com.tracemydata.util.TokenVersionRegistry;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
 
 import java.io.IOException;
+import java.util.List;
 
 @Component
 public class JwtAuthFilter extends OncePerRequestFilter {
@@ -27,10 +39,21 @@ public class JwtAuthFilter extends OncePerRequestFilter {
 
     private final JwtUtil jwtUtil; // your service to extract username and validate token
     private final UserDetailsService userDetailsService; // your UserDetailsService
+    private final JwtPrincipalCache principalCache; // already verified tokens -> principal
+    private final TokenRevocationList revocationList; // logged-out tokens, checked in memory
+    private final TokenVersionRegistry tokenVersions; // users whose older tokens are stale
+    // Build the principal from the verified claims instead of loading the user
+    private final boolean statelessAuth;
 
-    public JwtAuthFilter(JwtUtil jwtUtil, UserDetailsService userDetailsService) {
+    public JwtAuthFilter(JwtUtil jwtUtil, UserDetailsService userDetailsService, JwtPrincipalCache principalCache,
+            TokenRevocationList revocationList, TokenVersionRegistry tokenVersions,
+            @Value("${app.jwt.stateless-auth:false}") boolean statelessAuth) {
         this.jwtUtil = jwtUtil;
         this.userDetailsService = userDetailsService;
+        this.principalCache = principalCache;
+        this.revocationList = revocationList;
+        this.tokenVersions = tokenVersions;
+        this.statelessAuth = statelessAuth;
     }
 
     @Override
@@ -39,7 +62,6 @@ public class JwtAuthFilter extends OncePerRequestFilter {
 
         final String authHeader = request.getHeader("Authorization");
         final String jwt;
-        final String username;
 
         if (authHeader == null || !authHeader.startsWith("Bearer ")) {
             filterChain.doFilter(request, response);
@@ -47,17 +69,94 @@ public class JwtAuthFilter extends OncePerRequestFilter {
         }
 
         jwt = authHeader.substring(7).trim();
-        username = jwtUtil.extractUsername(jwt);
-
-        if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-            var userDetails = this.userDetailsService.loadUserByUsername(username);
-            if (jwtUtil.validateToken(jwt, userDetails)) {
-                UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
-                        userDetails, null, userDetails.getAuthorities());
-                authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
-                SecurityContextHolder.getContext().setAuthentication(authToken);
+
+        if (SecurityContextHolder.getContext().getAuthentication() == null) {
+            AuthJfrEvents.JwtFilter event = new AuthJfrEvents.JwtFilter();
+            event.begin();
+            JwtPrincipalCache.Principal cached = principalCache.get(jwt);
+            String rejection = null;
+            String outcome = "error";
+            try {
+                rejection = authenticate(jwt, cached, request);
+                outcome = rejection == null ? "authenticated" : "rejected";
+            } finally {
+                event.end();
+                if (event.shouldCommit()) {
+                    event.outcome = outcome;
+                    event.cacheHit = cached != null;
+                    Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+                    event.userHash = authentication != null ? AuthJfrEvents.userHash(authentication.getName()) : null;
+                    event.commit();
+                }
+            }
+            if (rejection != null) {
+                rejectToken(response, rejection);
+                return;
             }
         }
         filterChain.doFilter(request, response);
     }
+
+    // Sets the authentication for a good token; returns why the token was rejected otherwise
+    private String authenticate(String jwt, JwtPrincipalCache.Principal principal, HttpServletRequest request) {
+        if (principal == null) {
+            // Cache miss: verify the token once, then resolve and remember its principal until "exp"
+            Claims claims;
+            try {
+                claims = jwtUtil.parseClaims(jwt);
+            } catch (JwtException e) {
+                return "Invalid or expired token";
+            }
+            principal = resolvePrincipal(claims);
+            if (principal != null) {
+                principalCache.put(jwt, principal, claims.getExpiration());
+            }
+        }
+        if (principal != null) {
+            if (revocationList.isRevoked(principal.tokenId())) {
+                return "Token has been revoked";
+            }
+            if (tokenVersions.isStale(principal.userId(), principal.tokenVersion())) {
+                return "Token is no longer valid";
+            }
+            UserDetails userDetails = principal.userDetails();
+            UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
+                    userDetails, null, userDetails.getAuthorities());
+            authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+            SecurityContextHolder.getContext().setAuthentication(authToken);
+        }
+        return null;
+    }
+
+    private JwtPrincipalCache.Principal resolvePrincipal(Claims claims) {
+        String username = claims.get("email", String.class);
+        if (username == null) {
+            return null;
+        }
+        String userId = claims.get("uid", String.class);
+        Integer version = claims.get("ver", Integer.class);
+        List<?> roles = claims.get("roles", List.class);
+        UserDetails userDetails;
+        if (statelessAuth && userId != null && version != null && roles != null) {
+            // The signature vouches for the claims; stale ones are caught by version and revocation checks
+            userDetails = org.springframework.security.core.userdetails.User
+                    .withUsername(username)
+                    .password("")
+                    .authorities(AuthorityUtils.createAuthorityList(roles.stream().map(String::valueOf).toList()))
+                    .build();
+        } else {
+            // Tokens issued before roles/ver were embedded still go through the user lookup
+            userDetails = this.userDetailsService.loadUserByUsername(username);
+        }
+        return new JwtPrincipalCache.Principal(userDetails, claims.getId(), userId, version);
+    }
+
+    // 401 tells the client to renew the access token with its refresh token
+    private void rejectToken(HttpServletResponse response, String message) throws IOException {
+        loggers.debug("Rejected bearer token: {}", message);
+        response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+        response.setHeader("WWW-Authenticate", "Bearer error=\"invalid_token\"");
+        response.setContentType("text/plain;charset=UTF-8");
+        response.getWriter().write(message);
+    }
 }
@@ -0,0 +1,165 @@
+package com.tracemydata.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.tracemydata.service.AuthEventJournal;
+import com.tracemydata.service.CustomUserDetailsService;
+import com.tracemydata.service.PasswordHashingService;
+import com.tracemydata.service.ShardDirectory;
+import com.tracemydata.service.ShardMover;
+import com.tracemydata.service.TempUserCleanupJob;
+import com.tracemydata.util.ConnectionHoldTracker;
+import com.tracemydata.util.ExpiringLruCache;
+import com.tracemydata.util.JwtPrincipalCache;
+import com.tracemydata.util.TokenBucketRateLimiter;
+import com.tracemydata.util.TokenRevocationList;
+import com.tracemydata.util.TokenVersionRegistry;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+// Publishes the counters our own components keep (caches, revocation list, rate limits, BCrypt pool, auth journal, connection holds, cleanup job, shards)
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public MeterBinder authCacheMetrics(JwtPrincipalCache principalCache, CustomUserDetailsService userDetailsService) {
+        return registry -> {
+            bindCache(registry, "jwt-principal", principalCache.getCache());
+            bindCache(registry, "user-details", userDetailsService.getCache());
+        };
+    }
+
+    @Bean
+    public MeterBinder tokenRevocationMetrics(TokenRevocationList revocationList, TokenVersionRegistry tokenVersions) {
+        return registry -> {
+            Gauge.builder("auth.token_version.bumps", tokenVersions, TokenVersionRegistry::size)
+                    .description("Users with a token version bump inside the access-token lifetime")
+                    .register(registry);
+            Gauge.builder("auth.revocation.size", revocationList, TokenRevocationList::size)
+                    .description("Revoked access tokens that have not expired yet")
+                    .register(registry);
+            FunctionCounter.builder("auth.revocation.lookups", revocationList, TokenRevocationList::getBloomNegatives)
+                    .tag("result", "bloom_negative")
+                    .register(registry);
+            FunctionCounter.builder("auth.revocation.lookups", revocationList, TokenRevocationList::getFalsePositives)
+                    .tag("result", "false_positive")
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder rateLimitMetrics(RateLimitFilter rateLimitFilter) {
+        return registry -> {
+            for (TokenBucketRateLimiter limiter : new TokenBucketRateLimiter[] {
+                    rateLimitFilter.getIpLimiter(), rateLimitFilter.getEmailLimiter() }) {
+                Gauge.builder("auth.rate_limit.keys", limiter, TokenBucketRateLimiter::size)
+                        .tag("limiter", limiter.getName())
+                        .register(registry);
+                FunctionCounter.builder("auth.rate_limit.rejected", limiter, TokenBucketRateLimiter::getRejected)
+                        .tag("limiter", limiter.getName())
+                        .register(registry);
+            }
+        };
+    }
+
+    @Bean
+    public MeterBinder passwordHashingMetrics(PasswordHashingService hashing) {
+        return registry -> {
+            Gauge.builder("auth.bcrypt.queue.depth", hashing, PasswordHashingService::getQueueDepth)
+                    .description("BCrypt tasks waiting for a pool thread")
+                    .register(registry);
+            Gauge.builder("auth.bcrypt.active", hashing, PasswordHashingService::getActiveCount)
+                    .description("BCrypt pool threads currently hashing")
+                    .register(registry);
+            Gauge.builder("auth.bcrypt.pool.size", hashing, PasswordHashingService::getPoolSize)
+                    .register(registry);
+            Gauge.builder("auth.bcrypt.cost", hashing, PasswordHashingService::getStrength)
+                    .description("Calibrated BCrypt cost used for new hashes")
+                    .register(registry);
+            FunctionCounter.builder("auth.bcrypt.rejected", hashing, PasswordHashingService::getRejectedCount)
+                    .description("Password requests shed because the pool was saturated")
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder authEventJournalMetrics(AuthEventJournal journal) {
+        return registry -> {
+            Gauge.builder("auth.events.queue.depth", journal, AuthEventJournal::getQueueDepth)
+                    .description("Auth events buffered for the journal writer")
+                    .register(registry);
+            FunctionCounter.builder("auth.events", journal, AuthEventJournal::getWritten)
+                    .tag("result", "written")
+                    .register(registry);
+            FunctionCounter.builder("auth.events", journal, AuthEventJournal::getFailed)
+                    .tag("result", "failed")
+                    .register(registry);
+            FunctionCounter.builder("auth.events", journal, AuthEventJournal::getDropped)
+                    .tag("result", "dropped")
+                    .description("Events dropped because the buffer was full")
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder connectionHoldMetrics(ConnectionHoldTracker tracker) {
+        return tracker::bindTo; // per call site, registered as sites appear
+    }
+
+    @Bean
+    public MeterBinder tempUserCleanupMetrics(TempUserCleanupJob cleanupJob) {
+        return registry -> {
+            Gauge.builder("temp_user.purge.last.deleted", cleanupJob, TempUserCleanupJob::getLastRunDeleted)
+                    .register(registry);
+            Gauge.builder("temp_user.purge.last.batches", cleanupJob, TempUserCleanupJob::getLastRunBatches)
+                    .register(registry);
+            Gauge.builder("temp_user.purge.last.duration", cleanupJob, TempUserCleanupJob::getLastRunDurationMs)
+                    .baseUnit("milliseconds")
+                    .register(registry);
+            FunctionCounter.builder("temp_user.purge.deleted", cleanupJob, TempUserCleanupJob::getTotalDeleted)
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    public MeterBinder shardingMetrics(ShardDirectory directory, ShardMover mover) {
+        return registry -> {
+            if (!directory.isEnabled()) {
+                return;
+            }
+            for (int shard = 0; shard < directory.getShardCount(); shard++) {
+                int index = shard;
+                Gauge.builder("db.shard.buckets", directory, d -> d.bucketCounts()[index])
+                        .description("Buckets of accounts mapped to the shard")
+                        .tag("shard", String.valueOf(index))
+                        .register(registry);
+            }
+            Gauge.builder("db.shard.buckets.frozen", directory, ShardDirectory::getFrozenCount)
+                    .description("Buckets frozen while a move copies them")
+                    .register(registry);
+            Gauge.builder("db.shard.move.accounts", mover,
+                    m -> m.getCurrent() == null ? 0 : m.getCurrent().accountsMoved())
+                    .description("Accounts copied by the running or last shard move")
+                    .register(registry);
+        };
+    }
+
+    private static void bindCache(MeterRegistry registry, String name, ExpiringLruCache<?, ?> cache) {
+        Gauge.builder("auth.cache.size", cache, ExpiringLruCache::size)
+                .tag("cache", name)
+                .register(registry);
+        FunctionCounter.builder("auth.cache.requests", cache, ExpiringLruCache::getHits)
+                .tag("cache", name).tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("auth.cache.requests", cache, ExpiringLruCache::getMisses)
+                .tag("cache", name).tag("result", "miss")
+                .register(registry);
+        FunctionCounter.builder("auth.cache.evictions", cache, ExpiringLruCache::getEvictions)
+                .tag("cache", name)
+                .register(registry);
+    }
+}
@@ -0,0 +1,32 @@
+package com.tracemydata.config;
+
+import java.io.IOException;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import com.tracemydata.util.PrimaryRouting;
+
+// Scopes the read-your-writes pin to one request; pooled threads must not carry it over
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class PrimaryPinFilter extends OncePerRequestFilter {
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        PrimaryRouting.clear();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            PrimaryRouting.clear();
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package com.tracemydata.config;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.web.servlet.util.matcher.PathPatternRequestMatcher;
+import org.springframework.security.web.util.matcher.RequestMatcher;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tracemydata.util.AuthMetrics;
+import com.tracemydata.util.TokenBucketRateLimiter;
+
+/**
+ * Throttles the credential endpoints before any BCrypt work or email is spent on
+ * them: one token bucket per client IP and one per target email, so neither a
+ * single client nor a botnet aimed at one account gets through unthrottled.
+ */
+@Component
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    // Matched on the decoded path within the application, as the dispatcher routes it, so neither
+    // an encoded path (/api/auth/%6cogin) nor a servlet context path gets a request past the limiter
+    private static final Map<String, RequestMatcher> LIMITED_ENDPOINTS = Map.of(
+            "login", post("/api/auth/login"), "register", post("/api/auth/register"),
+            "forgot-password", post("/api/auth/forgot-password"), "reset-password", post("/api/auth/reset-password"));
+
+    // Credential bodies are tiny; anything bigger is refused
+    private static final int MAX_BODY_BYTES = 16 * 1024;
+
+    private Logger loggers = LoggerFactory.getLogger(RateLimitFilter.class);
+
+    private final TokenBucketRateLimiter ipLimiter;
+    private final TokenBucketRateLimiter emailLimiter;
+    private final ObjectMapper objectMapper;
+    private final AuthMetrics metrics;
+    private final boolean enabled;
+    private final boolean trustForwardedFor;
+
+    public RateLimitFilter(ObjectMapper objectMapper, AuthMetrics metrics,
+            @Value("${app.rate-limit.enabled:true}") boolean enabled,
+            @Value("${app.rate-limit.trust-forwarded-for:false}") boolean trustForwardedFor,
+            @Value("${app.rate-limit.ip.capacity:30}") int ipCapacity,
+            @Value("${app.rate-limit.ip.refill-per-minute:30}") double ipRefillPerMinute,
+            @Value("${app.rate-limit.email.capacity:5}") int emailCapacity,
+            @Value("${app.rate-limit.email.refill-per-minute:1}") double emailRefillPerMinute,
+            @Value("${app.rate-limit.max-keys:100000}") int maxKeys) {
+        this.objectMapper = objectMapper;
+        this.metrics = metrics;
+        this.enabled = enabled;
+        this.trustForwardedFor = trustForwardedFor;
+        this.ipLimiter = new TokenBucketRateLimiter("ip", ipCapacity, ipRefillPerMinute, maxKeys);
+        this.emailLimiter = new TokenBucketRateLimiter("email", emailCapacity, emailRefillPerMinute, maxKeys);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !enabled || endpointOf(request) == null;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+
+        // Every body is read here so none can skip the email limiter; a declared length over the
+        // cap is refused up front, a chunked body by the capped read below
+        if (request.getContentLengthLong() > MAX_BODY_BYTES) {
+            reject(response, HttpStatus.PAYLOAD_TOO_LARGE, "Request body too large.");
+            return;
+        }
+
+        long waitNanos = ipLimiter.tryAcquire(clientIp(request));
+        if (waitNanos > 0) {
+            tooManyRequests(request, response, waitNanos, "ip");
+            return;
+        }
+
+        // The controller still needs the body, so read it once and replay it
+        byte[] body = request.getInputStream().readNBytes(MAX_BODY_BYTES + 1);
+        if (body.length > MAX_BODY_BYTES) {
+            reject(response, HttpStatus.PAYLOAD_TOO_LARGE, "Request body too large.");
+            return;
+        }
+        waitNanos = emailLimiter.tryAcquire(limiterKey(body));
+        if (waitNanos > 0) {
+            tooManyRequests(request, response, waitNanos, "email");
+            return;
+        }
+        filterChain.doFilter(new CachedBodyRequest(request, body), response);
+    }
+
+    // Idle buckets are also dropped on demand when the table is full; this keeps it small in between
+    @Scheduled(fixedDelayString = "${app.rate-limit.evict-interval-ms:60000}")
+    public void evictIdle() {
+        ipLimiter.evictIdle();
+        emailLimiter.evictIdle();
+    }
+
+    public TokenBucketRateLimiter getIpLimiter() {
+        return ipLimiter;
+    }
+
+    public TokenBucketRateLimiter getEmailLimiter() {
+        return emailLimiter;
+    }
+
+    // The endpoint name the controller records auth.endpoint under, null when not limited
+    private static String endpointOf(HttpServletRequest request) {
+        for (Map.Entry<String, RequestMatcher> endpoint : LIMITED_ENDPOINTS.entrySet()) {
+            if (endpoint.getValue().matches(request)) {
+                return endpoint.getKey();
+            }
+        }
+        return null;
+    }
+
+    private static RequestMatcher post(String path) {
+        return PathPatternRequestMatcher.withDefaults().matcher(HttpMethod.POST, path);
+    }
+
+    private String clientIp(HttpServletRequest request) {
+        if (trustForwardedFor) {
+            // Only behind a proxy that overwrites the header; clients could pick any IP otherwise
+            String forwarded = request.getHeader("X-Forwarded-For");
+            if (forwarded != null && !forwarded.isBlank()) {
+                int comma = forwarded.indexOf(',');
+                return (comma < 0 ? forwarded : forwarded.substring(0, comma)).trim();
+            }
+        }
+        return request.getRemoteAddr();
+    }
+
+    // The target email; reset-password carries none, so its token stands in. Bodies with
+    // neither share one bucket, which only ever holds requests the controller rejects anyway.
+    private String limiterKey(byte[] body) {
+        try {
+            JsonNode json = objectMapper.readTree(body);
+            JsonNode email = json == null ? null : json.get("email");
+            if (email != null && email.isTextual()) {
+                return email.asText().trim().toLowerCase(Locale.ROOT);
+            }
+            JsonNode token = json == null ? null : json.get("token");
+            if (token != null && token.isTextual()) {
+                return "token:" + token.asText();
+            }
+        } catch (IOException e) {
+            // not JSON; the controller will reject it anyway
+        }
+        return "";
+    }
+
+    private void tooManyRequests(HttpServletRequest request, HttpServletResponse response, long waitNanos,
+            String limiter) throws IOException {
+        long retryAfterSeconds = Math.max(1, (waitNanos + 999_999_999L) / 1_000_000_000L);
+        loggers.warn("Rate limited {} by {} limiter, retry after {}s", request.getRequestURI(), limiter, retryAfterSeconds);
+        // Counted with the endpoint's other failures; the controller never sees these requests
+        metrics.failure(endpointOf(request), metrics.start(), AuthMetrics.RATE_LIMITED);
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+        reject(response, HttpStatus.TOO_MANY_REQUESTS, "Too many attempts. Please try again later.");
+    }
+
+    private void reject(HttpServletResponse response, HttpStatus status, String message) throws IOException {
+        response.setStatus(status.value());
+        response.setContentType("text/plain;charset=UTF-8");
+        response.getWriter().write(message);
+    }
+
+    private static class CachedBodyRequest extends HttpServletRequestWrapper {
+
+        private final byte[] body;
+
+        CachedBodyRequest(HttpServletRequest request, byte[] body) {
+            super(request);
+            this.body = body;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            ByteArrayInputStream in = new ByteArrayInputStream(body);
+            return new ServletInputStream() {
+                @Override
+                public int read() {
+                    return in.read();
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    return in.read(b, off, len);
+                }
+
+                @Override
+                public boolean isFinished() {
+                    return in.available() == 0;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setReadListener(ReadListener listener) {
+                    // The whole body is already in memory, so it is all available right away
+                    try {
+                        if (!isFinished()) {
+                            listener.onDataAvailable();
+                        }
+                        listener.onAllDataRead();
+                    } catch (IOException e) {
+                        listener.onError(e);
+                    }
+                }
+            };
+        }
+
+        @Override
+        public BufferedReader getReader() {
+            return new BufferedReader(new InputStreamReader(getInputStream(), StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.tracemydata.config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Read replicas for lookup traffic: app.datasource.replicas.enabled=true and a
+ * comma-separated app.datasource.replicas.urls. Replaces Boot's single pool with
+ * the primary pool, one read-only pool per replica and a routing "dataSource" that
+ * JPA and the transaction manager use. Ignored when app.sharding.enabled is set, the
+ * shards bring their own routing.
+ */
+@Configuration
+@ConditionalOnExpression("${app.datasource.replicas.enabled:false} and !${app.sharding.enabled:false}")
+public class ReplicaDataSourceConfig {
+
+    private ReplicaRoutingDataSource routing;
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("primary");
+        return dataSource;
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(HikariDataSource primaryDataSource, DataSourceProperties properties,
+            MeterRegistry meterRegistry,
+            @Value("${app.datasource.replicas.urls}") List<String> urls,
+            @Value("${app.datasource.replicas.username:${spring.datasource.username}}") String username,
+            @Value("${app.datasource.replicas.password:${spring.datasource.password}}") String password,
+            @Value("${app.datasource.replicas.pool-size:10}") int poolSize,
+            @Value("${app.datasource.replicas.max-lag-ms:1000}") long maxLagMs) {
+        List<DataSource> replicas = new ArrayList<>();
+        for (String url : urls) {
+            HikariDataSource replica = new HikariDataSource();
+            replica.setPoolName(ReplicaRoutingDataSource.replicaKey(replicas.size()));
+            replica.setJdbcUrl(url.trim());
+            replica.setUsername(username);
+            replica.setPassword(password);
+            replica.setDriverClassName(properties.getDriverClassName());
+            replica.setMaximumPoolSize(poolSize);
+            replica.setReadOnly(true);
+            // Fail over to the primary quickly instead of queueing on a dead replica
+            replica.setConnectionTimeout(1000);
+            replica.setInitializationFailTimeout(-1); // start even if a replica is down
+            replica.setMetricRegistry(meterRegistry); // hikaricp_* metrics with pool=replica-N
+            replicas.add(replica);
+        }
+        routing = new ReplicaRoutingDataSource(primaryDataSource, replicas, maxLagMs);
+        routing.afterPropertiesSet();
+        routing.probeReplicas();
+
+        for (int i = 0; i < routing.getReplicaCount(); i++) {
+            int index = i;
+            Gauge.builder("db.replica.lag", routing, r -> r.getLagMs(index))
+                    .description("Replication lag of the replica, -1 while unreachable")
+                    .baseUnit("milliseconds")
+                    .tag("replica", ReplicaRoutingDataSource.replicaKey(index))
+                    .register(meterRegistry);
+            Gauge.builder("db.replica.usable", routing, r -> r.isUsable(index) ? 1 : 0)
+                    .tag("replica", ReplicaRoutingDataSource.replicaKey(index))
+                    .register(meterRegistry);
+        }
+        // Defer the physical connection until the first statement, when the read-only flag is set
+        return new LazyConnectionDataSourceProxy(routing);
+    }
+
+    @Scheduled(fixedDelayString = "${app.datasource.replicas.probe-interval-ms:1000}")
+    public void probeReplicas() {
+        if (routing != null) {
+            routing.probeReplicas();
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.tracemydata.config;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.tracemydata.util.PrimaryRouting;
+
+/**
+ * Sends read-only transactions to a replica and everything else to the primary.
+ *
+ * Must sit behind a LazyConnectionDataSourceProxy so the connection is picked at the
+ * first statement, after the transaction's read-only flag is known. A replica is
+ * only used while its last lag probe succeeded and reported at most maxLagMs; with
+ * no usable replica, or when the request already wrote (PrimaryRouting), reads go
+ * to the primary too.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    static final String PRIMARY = "primary";
+
+    // Replication delay in ms; 0 on a server that is not in recovery (e.g. a plain stand-in instance)
+    private static final String LAG_QUERY = "SELECT CASE WHEN NOT pg_is_in_recovery() THEN 0 "
+            + "WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0 "
+            + "ELSE COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) * 1000, 0) END";
+
+    private Logger loggers = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+
+    private final DataSource primary;
+    private final List<DataSource> replicas;
+    private final long maxLagMs;
+    // Per replica: measured lag in ms, Long.MAX_VALUE while unreachable
+    private final AtomicLongArray lagMs;
+    private final AtomicInteger next = new AtomicInteger();
+
+    public ReplicaRoutingDataSource(DataSource primary, List<DataSource> replicas, long maxLagMs) {
+        this.primary = primary;
+        this.replicas = List.copyOf(replicas);
+        this.maxLagMs = maxLagMs;
+        this.lagMs = new AtomicLongArray(replicas.size());
+        for (int i = 0; i < replicas.size(); i++) {
+            lagMs.set(i, Long.MAX_VALUE); // unusable until the first probe
+        }
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        for (int i = 0; i < replicas.size(); i++) {
+            targets.put(replicaKey(i), replicas.get(i));
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        boolean readOnly = TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+        if (!readOnly) {
+            if (TransactionSynchronizationManager.isActualTransactionActive()) {
+                PrimaryRouting.pin(); // this request may have written, read it back from the primary
+            }
+            return PRIMARY;
+        }
+        if (PrimaryRouting.isPinned()) {
+            return PRIMARY;
+        }
+        // Round-robin over replicas that are close enough to the primary
+        int size = replicas.size();
+        int start = Math.floorMod(next.getAndIncrement(), Math.max(size, 1));
+        for (int i = 0; i < size; i++) {
+            int index = (start + i) % size;
+            if (lagMs.get(index) <= maxLagMs) {
+                return replicaKey(index);
+            }
+        }
+        return PRIMARY;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        Object key = determineCurrentLookupKey();
+        if (PRIMARY.equals(key)) {
+            return primary.getConnection();
+        }
+        int index = Integer.parseInt(((String) key).substring("replica-".length()));
+        try {
+            return replicas.get(index).getConnection();
+        } catch (SQLException e) {
+            // Take it out of rotation until the next successful probe and serve this read from the primary
+            lagMs.set(index, Long.MAX_VALUE);
+            loggers.warn("Replica {} unavailable, reading from primary: {}", index, e.getMessage());
+            return primary.getConnection();
+        }
+    }
+
+    // Called on a schedule by ReplicaDataSourceConfig
+    public void probeReplicas() {
+        for (int i = 0; i < replicas.size(); i++) {
+            try (Connection connection = replicas.get(i).getConnection();
+                    Statement statement = connection.createStatement()) {
+                statement.setQueryTimeout(2);
+                try (ResultSet rs = statement.executeQuery(LAG_QUERY)) {
+                    rs.next();
+                    long lag = (long) rs.getDouble(1);
+                    long previous = lagMs.getAndSet(i, lag);
+                    if (lag > maxLagMs && previous <= maxLagMs) {
+                        loggers.warn("Replica {} lags {} ms behind, routing its reads to the primary", i, lag);
+                    }
+                }
+            } catch (SQLException e) {
+                if (lagMs.getAndSet(i, Long.MAX_VALUE) != Long.MAX_VALUE) {
+                    loggers.warn("Replica {} lag probe failed: {}", i, e.getMessage());
+                }
+            }
+        }
+    }
+
+    public int getReplicaCount() {
+        return replicas.size();
+    }
+
+    // -1 while the replica is unreachable
+    public long getLagMs(int index) {
+        long lag = lagMs.get(index);
+        return lag == Long.MAX_VALUE ? -1 : lag;
+    }
+
+    public boolean isUsable(int index) {
+        return lagMs.get(index) <= maxLagMs;
+    }
+
+    static String replicaKey(int index) {
+        return "replica-" + index;
+    }
+}
@@ -0,0 +1,78 @@
+package com.tracemydata.config;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.data.repository.core.support.RepositoryFactoryBeanSupport;
+import org.springframework.stereotype.Component;
+
+import com.tracemydata.util.AuthJfrEvents;
+
+import io.micrometer.tracing.Span;
+import io.micrometer.tracing.Tracer;
+
+/**
+ * Wraps every Spring Data repository method in a trace span and a RepositoryCall
+ * JFR event, the way Boot attaches its repository metrics. Spans only: the
+ * spring.data.repository.invocations timer already covers the latency metrics.
+ */
+@Component
+public class RepositoryInstrumentationPostProcessor implements BeanPostProcessor {
+
+    // Looked up on first use: repositories are created before tracing may be ready
+    private final ObjectProvider<Tracer> tracerProvider;
+    private volatile Tracer tracer;
+
+    public RepositoryInstrumentationPostProcessor(ObjectProvider<Tracer> tracerProvider) {
+        this.tracerProvider = tracerProvider;
+    }
+
+    @Override
+    public Object postProcessBeforeInitialization(Object bean, String beanName) {
+        if (bean instanceof RepositoryFactoryBeanSupport<?, ?, ?> factoryBean) {
+            factoryBean.addRepositoryFactoryCustomizer(factory -> factory.addRepositoryProxyPostProcessor(
+                    (proxyFactory, repositoryInformation) -> proxyFactory.addAdvice(
+                            interceptor(repositoryInformation.getRepositoryInterface().getSimpleName()))));
+        }
+        return bean;
+    }
+
+    private MethodInterceptor interceptor(String repository) {
+        return invocation -> {
+            AuthJfrEvents.RepositoryCall event = new AuthJfrEvents.RepositoryCall();
+            event.begin();
+            Span span = tracer().spanBuilder()
+                    .name(repository + "." + invocation.getMethod().getName())
+                    .kind(Span.Kind.CLIENT)
+                    .tag("db.system", "postgresql")
+                    .start();
+            String outcome = "error";
+            try (Tracer.SpanInScope scope = tracer().withSpan(span)) {
+                Object result = invocation.proceed();
+                outcome = "success";
+                return result;
+            } catch (Throwable e) {
+                span.error(e);
+                throw e;
+            } finally {
+                span.end();
+                event.end();
+                if (event.shouldCommit()) {
+                    event.repository = repository;
+                    event.method = invocation.getMethod().getName();
+                    event.outcome = outcome;
+                    event.commit();
+                }
+            }
+        };
+    }
+
+    private Tracer tracer() {
+        Tracer current = tracer;
+        if (current == null) {
+            current = tracerProvider.getIfAvailable(() -> Tracer.NOOP);
+            tracer = current;
+        }
+        return current;
+    }
+}
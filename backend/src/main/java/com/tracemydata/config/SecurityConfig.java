@@ -22,6 +22,9 @@ public class SecurityConfig {
      @Autowired
      private  JwtAuthFilter jwtAuthFilter;
 
+     @Autowired
+     private RateLimitFilter rateLimitFilter;
+
 
     @Bean
     public SecurityFilterChain filterChain(HttpSecurity http) throws Exception {
@@ -30,12 +33,19 @@ public class SecurityConfig {
             .csrf(csrf -> csrf.disable())
             .authorizeHttpRequests(auth -> auth
                 .requestMatchers(HttpMethod.OPTIONS, "/**").permitAll() 
+                .requestMatchers("/api/auth/history").authenticated() // must precede the /api/auth/** rule
                 .requestMatchers("/api/auth/**").permitAll()
+                .requestMatchers("/actuator/health", "/actuator/prometheus").permitAll() // load balancer + scraper
+                .requestMatchers("/actuator/connectionholds/**").hasAuthority("ADMIN") // code locations and timings
+                .requestMatchers(HttpMethod.GET, "/.well-known/jwks.json").permitAll() // token verification keys
+                .requestMatchers("/api/admin/**").hasAuthority("ADMIN") // accounts in app.admin.emails
                 .anyRequest().authenticated()
             )
             .sessionManagement(sess -> sess.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
             .addFilterBefore(
                  jwtAuthFilter, UsernamePasswordAuthenticationFilter.class)
+            // Throttle credential endpoints before any token parsing or BCrypt work
+            .addFilterBefore(rateLimitFilter, JwtAuthFilter.class)
             .httpBasic(httpBasic -> httpBasic.disable())
             .formLogin(form -> form.disable());
 
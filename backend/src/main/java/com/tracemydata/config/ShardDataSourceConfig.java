@@ -0,0 +1,71 @@
+package com.tracemydata.config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Accounts split across several Postgres instances: app.sharding.enabled=true and a
+ * comma-separated app.sharding.urls. The spring.datasource database is shard 0 (it
+ * also keeps the global tables: the shard map and the JWT signing keys), each url
+ * adds the next shard. Replaces Boot's single pool with one pool per shard and a
+ * routing "dataSource" that JPA and the transaction manager use.
+ *
+ * Every shard runs the same Flyway migrations. Not combinable with read replicas.
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.sharding.enabled", havingValue = "true")
+public class ShardDataSourceConfig {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource shardZeroDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName(ShardRoutingDataSource.shardKey(0));
+        return dataSource;
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(HikariDataSource shardZeroDataSource, DataSourceProperties properties,
+            MeterRegistry meterRegistry,
+            @Value("${app.sharding.urls}") List<String> urls,
+            @Value("${app.sharding.username:${spring.datasource.username}}") String username,
+            @Value("${app.sharding.password:${spring.datasource.password}}") String password,
+            @Value("${app.sharding.pool-size:10}") int poolSize) {
+        List<DataSource> shards = new ArrayList<>();
+        shards.add(shardZeroDataSource);
+        for (String url : urls) {
+            if (url.isBlank()) {
+                continue;
+            }
+            HikariDataSource shard = new HikariDataSource();
+            shard.setPoolName(ShardRoutingDataSource.shardKey(shards.size()));
+            shard.setJdbcUrl(url.trim());
+            shard.setUsername(username);
+            shard.setPassword(password);
+            shard.setDriverClassName(properties.getDriverClassName());
+            shard.setMaximumPoolSize(poolSize);
+            shard.setMetricRegistry(meterRegistry); // hikaricp_* metrics with pool=shard-N
+            shards.add(shard);
+        }
+        ShardRoutingDataSource routing = new ShardRoutingDataSource(shards);
+        routing.afterPropertiesSet();
+        // Defer the physical connection until the first statement, when the shard is bound
+        return new LazyConnectionDataSourceProxy(routing);
+    }
+}
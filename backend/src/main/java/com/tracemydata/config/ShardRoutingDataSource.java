@@ -0,0 +1,42 @@
+package com.tracemydata.config;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import com.tracemydata.util.ShardContext;
+
+/**
+ * Hands out connections from the pool of the shard bound in ShardContext, or the
+ * first shard when nothing is bound.
+ *
+ * Must sit behind a LazyConnectionDataSourceProxy so the connection is picked at the
+ * first statement, after ShardRoutingPostProcessor has bound the transaction to the
+ * shard of the account it works on.
+ */
+public class ShardRoutingDataSource extends AbstractRoutingDataSource {
+
+    public ShardRoutingDataSource(List<DataSource> shards) {
+        Map<Object, Object> targets = new HashMap<>();
+        for (int i = 0; i < shards.size(); i++) {
+            targets.put(i, shards.get(i));
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(shards.get(0));
+        setLenientFallback(false); // a shard missing from the config must fail, not write to shard 0
+    }
+
+    public static String shardKey(int shard) {
+        return "shard-" + shard;
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        ShardContext.Binding binding = ShardContext.current();
+        return binding == null ? 0 : binding.shard();
+    }
+}
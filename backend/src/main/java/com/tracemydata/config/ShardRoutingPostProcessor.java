@@ -0,0 +1,226 @@
+package com.tracemydata.config;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.ProxyMethodInvocation;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.repository.core.support.RepositoryFactoryBeanSupport;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.tracemydata.model.TempUser;
+import com.tracemydata.model.User;
+import com.tracemydata.service.ShardDirectory;
+import com.tracemydata.util.ShardContext;
+import com.tracemydata.util.ShardKey;
+import com.tracemydata.util.ShardKeys;
+
+/**
+ * Routes UserRepository and TempUserRepository calls to the shard of the account
+ * they are about, and binds the surrounding transaction to it so the rest of the
+ * transaction (tokens, outbox, events) lands on the same shard.
+ *
+ * The key is the @ShardKey parameter, the entity passed to save/delete, or the id
+ * passed to findById. An email always routes by its hash: a lookup of another
+ * account's email (is the new address taken?) on a different shard runs in its own
+ * read-only transaction there, a write fails. Ids and entities follow a transaction
+ * that is already bound, since an account's rows stay together even after an email
+ * change moved it. Outside a transaction a by-id read that misses (ids from before
+ * sharding, accounts moved since) is retried on the other shards.
+ */
+@Component
+@ConditionalOnProperty(name = "app.sharding.enabled", havingValue = "true")
+public class ShardRoutingPostProcessor implements BeanPostProcessor {
+
+    private static final int NO_KEY = -1;
+    private static final Set<String> ENTITY_METHODS = Set.of("save", "saveAndFlush", "delete");
+    private static final Set<String> ID_METHODS = Set.of("findById", "existsById");
+
+    // Looked up on first use: repositories are created before the transaction manager
+    private final ObjectProvider<ShardDirectory> directoryProvider;
+    private final ObjectProvider<PlatformTransactionManager> transactionManagerProvider;
+    private volatile ShardDirectory directory;
+    private volatile TransactionTemplate foreignReadTx;
+
+    public ShardRoutingPostProcessor(ObjectProvider<ShardDirectory> directoryProvider,
+            ObjectProvider<PlatformTransactionManager> transactionManagerProvider) {
+        this.directoryProvider = directoryProvider;
+        this.transactionManagerProvider = transactionManagerProvider;
+    }
+
+    @Override
+    public Object postProcessBeforeInitialization(Object bean, String beanName) {
+        if (bean instanceof RepositoryFactoryBeanSupport<?, ?, ?> factoryBean) {
+            factoryBean.addRepositoryFactoryCustomizer(factory -> factory.addRepositoryProxyPostProcessor(
+                    (proxyFactory, repositoryInformation) -> {
+                        Class<?> domainType = repositoryInformation.getDomainType();
+                        if (domainType == User.class || domainType == TempUser.class) {
+                            // Outermost, so the shard is bound before the repository opens its own transaction
+                            proxyFactory.addAdvice(0, interceptor(domainType));
+                        }
+                    }));
+        }
+        return bean;
+    }
+
+    private MethodInterceptor interceptor(Class<?> domainType) {
+        Map<Method, Integer> keyIndexes = new ConcurrentHashMap<>();
+        return invocation -> {
+            int index = keyIndexes.computeIfAbsent(invocation.getMethod(), method -> keyIndex(method, domainType));
+            if (index == NO_KEY || invocation.getArguments()[index] == null) {
+                return invocation.proceed(); // follows the bound shard, or shard 0
+            }
+            Object key = invocation.getArguments()[index];
+            if (key instanceof String email) {
+                return routeByEmail(invocation, email);
+            }
+            if (ShardContext.current() != null) {
+                return invocation.proceed();
+            }
+            int bucket = key instanceof UUID id ? ShardKeys.bucketOf(id) : ShardKeys.bucketOf(emailOf(key));
+            return routeUnbound(invocation, bucket, key instanceof UUID);
+        };
+    }
+
+    private Object routeByEmail(MethodInvocation invocation, String email) throws Throwable {
+        int bucket = ShardKeys.bucketOf(email);
+        ShardContext.Binding current = ShardContext.current();
+        if (current == null) {
+            return routeUnbound(invocation, bucket, false);
+        }
+        ShardContext.Binding target = directory().bindingFor(bucket);
+        if (target.shard() == current.shard()) {
+            return invocation.proceed();
+        }
+        if (!isRead(invocation.getMethod())) {
+            throw new IllegalStateException("Transaction bound to shard " + current.shard()
+                    + " cannot write account data of shard " + target.shard());
+        }
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            return proceedOn(target, invocation);
+        }
+        // The bound transaction keeps its connection; this lookup gets one on the other shard
+        return ShardContext.callOn(target, () -> foreignReadTx().execute(status -> proceed(invocation)));
+    }
+
+    private Object routeUnbound(MethodInvocation invocation, int bucket, boolean byId) throws Throwable {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            directory().enter(bucket); // the whole transaction follows this account
+            return invocation.proceed();
+        }
+        ShardContext.Binding target = directory().bindingFor(bucket);
+        Object result = proceedOn(target, invocation);
+        if (!byId || !isMiss(result)) {
+            return result;
+        }
+        for (int shard = 0; shard < directory().getShardCount(); shard++) {
+            if (shard != target.shard()) {
+                result = proceedOn(new ShardContext.Binding(shard, ShardKeys.UNKNOWN), invocation);
+                if (!isMiss(result)) {
+                    return result;
+                }
+            }
+        }
+        return result;
+    }
+
+    // Each call gets a fresh invocation copy, so the same call can be tried on several shards
+    private Object proceedOn(ShardContext.Binding binding, MethodInvocation invocation) throws Throwable {
+        ShardContext.Binding previous = ShardContext.current();
+        ShardContext.bind(binding);
+        try {
+            return invocation instanceof ProxyMethodInvocation proxyInvocation
+                    ? proxyInvocation.invocableClone().proceed()
+                    : invocation.proceed();
+        } finally {
+            if (previous == null) {
+                ShardContext.clear();
+            } else {
+                ShardContext.bind(previous);
+            }
+        }
+    }
+
+    private static Object proceed(MethodInvocation invocation) {
+        try {
+            return invocation.proceed();
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static boolean isMiss(Object result) {
+        return result == null || Boolean.FALSE.equals(result)
+                || (result instanceof Optional<?> optional && optional.isEmpty());
+    }
+
+    private static boolean isRead(Method method) {
+        String name = method.getName();
+        return name.startsWith("find") || name.startsWith("exists") || name.startsWith("count")
+                || name.startsWith("get") || name.startsWith("stream");
+    }
+
+    private static String emailOf(Object entity) {
+        if (entity instanceof User user) {
+            return user.getEmail();
+        }
+        return ((TempUser) entity).getEmail();
+    }
+
+    private static int keyIndex(Method method, Class<?> domainType) {
+        Annotation[][] annotations = method.getParameterAnnotations();
+        for (int i = 0; i < annotations.length; i++) {
+            for (Annotation annotation : annotations[i]) {
+                if (annotation instanceof ShardKey) {
+                    return i;
+                }
+            }
+        }
+        Class<?>[] types = method.getParameterTypes();
+        if (types.length != 1) {
+            return NO_KEY;
+        }
+        if (ENTITY_METHODS.contains(method.getName()) && types[0].isAssignableFrom(domainType)) {
+            return 0;
+        }
+        if (domainType == User.class && ID_METHODS.contains(method.getName())) {
+            return 0;
+        }
+        return NO_KEY;
+    }
+
+    private ShardDirectory directory() {
+        ShardDirectory current = directory;
+        if (current == null) {
+            current = directoryProvider.getObject();
+            directory = current;
+        }
+        return current;
+    }
+
+    private TransactionTemplate foreignReadTx() {
+        TransactionTemplate current = foreignReadTx;
+        if (current == null) {
+            current = new TransactionTemplate(transactionManagerProvider.getObject());
+            current.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+            current.setReadOnly(true);
+            foreignReadTx = current;
+        }
+        return current;
+    }
+}
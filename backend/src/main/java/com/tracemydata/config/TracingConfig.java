@@ -0,0 +1,115 @@
+package com.tracemydata.config;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tracemydata.util.FileSpanExporter;
+import com.tracemydata.util.TailSamplingSpanProcessor;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.sdk.trace.data.LinkData;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import io.opentelemetry.sdk.trace.samplers.Sampler;
+import io.opentelemetry.sdk.trace.samplers.SamplingDecision;
+import io.opentelemetry.sdk.trace.samplers.SamplingResult;
+
+/**
+ * Trace sampling and export on top of Boot's OpenTelemetry setup.
+ *
+ * Head sampling keeps management.tracing.sampling.probability of new traces. With
+ * app.tracing.tail.enabled the rest are recorded instead of dropped, and
+ * TailSamplingSpanProcessor exports their slow or failed spans and discards the rest. Spans go
+ * to every SpanExporter bean: OTLP when management.otlp.tracing.endpoint is set,
+ * a JSON-lines file when app.tracing.file.enabled=true.
+ */
+@Configuration
+public class TracingConfig {
+
+    @Bean
+    public Sampler otelSampler(@Value("${management.tracing.sampling.probability:0.1}") double probability,
+            @Value("${app.tracing.tail.enabled:true}") boolean tailSampling) {
+        Sampler ratio = Sampler.traceIdRatioBased(probability);
+        if (!tailSampling) {
+            return Sampler.parentBased(ratio);
+        }
+        // Children of a recorded-only span must be recorded too, or the buffered trace would be missing them
+        Sampler recordOnly = new RecordUnsampled(Sampler.alwaysOff());
+        return Sampler.parentBasedBuilder(new RecordUnsampled(ratio))
+                .setLocalParentNotSampled(recordOnly)
+                .setRemoteParentNotSampled(recordOnly)
+                .build();
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "app.tracing.tail.enabled", havingValue = "true", matchIfMissing = true)
+    public TailSamplingSpanProcessor tailSamplingSpanProcessor(ObjectProvider<SpanExporter> exporters,
+            @Value("${app.tracing.tail.slow-threshold-ms:1000}") long slowThresholdMs,
+            @Value("${app.tracing.tail.max-pending-traces:10000}") int maxPendingTraces,
+            @Value("${app.tracing.tail.max-spans-per-trace:256}") int maxSpansPerTrace,
+            @Value("${app.tracing.tail.pending-timeout-ms:60000}") long pendingTimeoutMs) {
+        List<SpanExporter> targets = exporters.orderedStream().toList();
+        return new TailSamplingSpanProcessor(SpanExporter.composite(targets), slowThresholdMs, maxPendingTraces,
+                maxSpansPerTrace, pendingTimeoutMs);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "app.tracing.tail.enabled", havingValue = "true", matchIfMissing = true)
+    public MeterBinder tailSamplingMetrics(TailSamplingSpanProcessor processor) {
+        return registry -> {
+            Gauge.builder("tracing.tail.pending", processor, TailSamplingSpanProcessor::getPendingTraces)
+                    .description("Unsampled traces buffered until their root span ends")
+                    .register(registry);
+            FunctionCounter.builder("tracing.tail.traces", processor, TailSamplingSpanProcessor::getKeptTraces)
+                    .tag("result", "kept")
+                    .register(registry);
+            FunctionCounter.builder("tracing.tail.traces", processor, TailSamplingSpanProcessor::getDiscardedTraces)
+                    .tag("result", "discarded")
+                    .register(registry);
+            FunctionCounter.builder("tracing.tail.overflow.spans", processor, TailSamplingSpanProcessor::getOverflowSpans)
+                    .description("Spans not buffered because a limit was reached")
+                    .register(registry);
+        };
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "app.tracing.file.enabled", havingValue = "true")
+    public FileSpanExporter fileSpanExporter(@Value("${app.tracing.file.path:traces.jsonl}") String path,
+            ObjectMapper objectMapper) throws IOException {
+        return new FileSpanExporter(Path.of(path), objectMapper);
+    }
+
+    // Turns a DROP into RECORD_ONLY: the span is recorded for tail sampling but not propagated as sampled
+    private static final class RecordUnsampled implements Sampler {
+
+        private final Sampler delegate;
+
+        RecordUnsampled(Sampler delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public SamplingResult shouldSample(Context parentContext, String traceId, String name, SpanKind spanKind,
+                Attributes attributes, List<LinkData> parentLinks) {
+            SamplingResult result = delegate.shouldSample(parentContext, traceId, name, spanKind, attributes, parentLinks);
+            return result.getDecision() == SamplingDecision.DROP ? SamplingResult.recordOnly() : result;
+        }
+
+        @Override
+        public String getDescription() {
+            return "RecordUnsampled{" + delegate.getDescription() + "}";
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.tracemydata.controller;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.tracemydata.config.AsyncTimeoutConfig;
+import com.tracemydata.dto.UserImportReport;
+import com.tracemydata.service.JfrRecordingService;
+import com.tracemydata.service.ShardDirectory;
+import com.tracemydata.service.ShardMover;
+import com.tracemydata.service.UserBulkService;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+// Operator endpoints; SecurityConfig limits /api/admin/** to the ADMIN authority (app.admin.emails)
+@RestController
+@RequestMapping("/api/admin")
+public class AdminController {
+
+    private static final DateTimeFormatter FILE_TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private final JfrRecordingService jfrRecordingService;
+    private final UserBulkService userBulkService;
+    private final ShardDirectory shardDirectory;
+    private final ShardMover shardMover;
+    private final long exportTimeoutMs;
+    private Logger loggers = LoggerFactory.getLogger(AdminController.class);
+
+    public AdminController(JfrRecordingService jfrRecordingService, UserBulkService userBulkService,
+            ShardDirectory shardDirectory, ShardMover shardMover,
+            @Value("${app.admin.export.timeout-ms:3600000}") long exportTimeoutMs) {
+        this.jfrRecordingService = jfrRecordingService;
+        this.userBulkService = userBulkService;
+        this.shardDirectory = shardDirectory;
+        this.shardMover = shardMover;
+        this.exportTimeoutMs = exportTimeoutMs;
+    }
+
+    // Records for "seconds" with the "default" or "profile" settings, then streams the .jfr file (open it in JMC)
+    @PostMapping("/jfr")
+    public ResponseEntity<?> recordJfr(@RequestParam(value = "seconds", defaultValue = "30") long seconds,
+            @RequestParam(value = "settings", defaultValue = "profile") String settings) {
+        Path file;
+        try {
+            file = jfrRecordingService.record(Duration.ofSeconds(seconds), settings);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("Recording interrupted");
+        } catch (Exception e) {
+            loggers.error("JFR recording failed: {}", e.getMessage());
+            return ResponseEntity.internalServerError().body("JFR recording failed: " + e.getMessage());
+        }
+
+        StreamingResponseBody body = out -> {
+            try {
+                Files.copy(file, out);
+            } finally {
+                Files.deleteIfExists(file);
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=\"tracemydata-" + LocalDateTime.now().format(FILE_TIMESTAMP) + ".jfr\"")
+                .body(body);
+    }
+
+    // Streams every user (password hashes included) as NDJSON or CSV, straight from a database cursor
+    @GetMapping("/users/export")
+    public ResponseEntity<?> exportUsers(@RequestParam(value = "format", defaultValue = "ndjson") String format,
+            HttpServletRequest request) {
+        if (!UserBulkService.FORMATS.contains(format)) {
+            return ResponseEntity.badRequest().body("Format must be one of " + UserBulkService.FORMATS);
+        }
+        // Streams as an async request; the container default of 30s would cut a large export off
+        AsyncTimeoutConfig.withTimeout(request, exportTimeoutMs);
+        StreamingResponseBody body = out -> userBulkService.export(format, out);
+        return ResponseEntity.ok()
+                .contentType("csv".equals(format) ? MediaType.parseMediaType("text/csv")
+                        : MediaType.parseMediaType("application/x-ndjson"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"users-"
+                        + LocalDateTime.now().format(FILE_TIMESTAMP) + "." + format + "\"")
+                .body(body);
+    }
+
+    // Reads the raw request body as it arrives (NDJSON lines or CSV with a header row); BCrypt hashes
+    // are stored as given. The report lists the rows that were rejected and why.
+    @PostMapping("/users/import")
+    public ResponseEntity<?> importUsers(@RequestParam(value = "format", defaultValue = "ndjson") String format,
+            HttpServletRequest request) {
+        if (!UserBulkService.FORMATS.contains(format)) {
+            return ResponseEntity.badRequest().body("Format must be one of " + UserBulkService.FORMATS);
+        }
+        try {
+            UserImportReport report = userBulkService.importUsers(format, request.getInputStream());
+            return ResponseEntity.ok(report);
+        } catch (IOException e) {
+            loggers.warn("User import aborted: {}", e.getMessage());
+            return ResponseEntity.badRequest().body("Could not read the upload: " + e.getMessage());
+        }
+    }
+
+    // Bucket ranges per shard and the state of the running or last move
+    @GetMapping("/shards")
+    public ResponseEntity<?> shards() {
+        List<Map<String, Object>> ranges = new ArrayList<>();
+        for (int[] range : shardDirectory.ranges()) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("fromBucket", range[0]);
+            entry.put("toBucket", range[1]);
+            entry.put("shard", range[2]);
+            entry.put("frozen", range[3] == 1);
+            ranges.add(entry);
+        }
+        Map<String, Object> layout = new LinkedHashMap<>();
+        layout.put("enabled", shardDirectory.isEnabled());
+        layout.put("shards", shardDirectory.getShardCount());
+        layout.put("ranges", ranges);
+        layout.put("move", shardMover.getCurrent());
+        return ResponseEntity.ok(layout);
+    }
+
+    // Moves buckets from..to (inclusive) to the shard in the background; poll GET /shards for progress
+    @PostMapping("/shards/move")
+    public ResponseEntity<?> moveBuckets(@RequestParam("from") int fromBucket, @RequestParam("to") int toBucket,
+            @RequestParam("shard") int shard) {
+        try {
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(shardMover.start(fromBucket, toBucket, shard));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+        }
+    }
+}
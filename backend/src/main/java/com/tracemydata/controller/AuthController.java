@@ -4,16 +4,24 @@ package com.tracemydata.controller;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.tracemydata.dto.AuthHistoryPage;
 import com.tracemydata.dto.AuthResponse;
 import com.tracemydata.dto.LoginRequest;
 import com.tracemydata.dto.RegisterRequest;
 
+import com.tracemydata.service.AuthEventJournal;
 import com.tracemydata.service.AuthService;
+import com.tracemydata.service.InvalidRefreshTokenException;
+import com.tracemydata.service.PasswordHashingOverloadedException;
+import com.tracemydata.util.AuthMetrics;
+
+import io.micrometer.core.instrument.Timer;
 
 
 import jakarta.servlet.http.HttpServletResponse;
 
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseCookie;
 import org.springframework.http.ResponseEntity;
@@ -30,20 +38,30 @@ import java.util.Map;
 public class AuthController {
 
     private final AuthService authService;
+    private final AuthMetrics metrics; // per-endpoint latency and failure reasons
+    private final AuthEventJournal authEvents;
     private Logger loggers = LoggerFactory.getLogger(AuthController.class);
 
     // Inject AuthService through constructor
-    public AuthController(AuthService authService) {
+    public AuthController(AuthService authService, AuthMetrics metrics, AuthEventJournal authEvents) {
         this.authService = authService;
+        this.metrics = metrics;
+        this.authEvents = authEvents;
     }
 
     // Register a new user with email/password
     @PostMapping("/register")
     public ResponseEntity<String> initiateRegistration(@RequestBody RegisterRequest request) {
+        Timer.Sample sample = metrics.start();
         try{
             String message = authService.initiateRegistration(request);
+            metrics.success("register", sample);
             return ResponseEntity.ok(message); // returns: "Verification email sent
+        }catch (PasswordHashingOverloadedException e) {
+            metrics.failure("register", sample, "overloaded");
+            return overloaded(e);
         }catch (Exception e) {
+            metrics.failure("register", sample, e);
             loggers.error("Registration error: {}", e.getMessage());
             return ResponseEntity.badRequest().body(e.getMessage());
         }
@@ -51,10 +69,14 @@ public class AuthController {
     }
     @GetMapping("/verify")
     public ResponseEntity verifyUser(@RequestParam("token") String token) {
+        Timer.Sample sample = metrics.start();
         try {
-            return authService.register(token);
+            ResponseEntity<?> result = authService.register(token);
+            metrics.success("verify", sample);
+            return result;
             // "Email verified. Account created."
         } catch (Exception e) {
+            metrics.failure("verify", sample, e);
             return ResponseEntity.badRequest().body(e.getMessage());
         }
     }
@@ -62,9 +84,16 @@ public class AuthController {
     // Local login with email and password
     @PostMapping("/login")
     public ResponseEntity<?> login(@RequestBody LoginRequest request) {
+        Timer.Sample sample = metrics.start();
         try{
-            return ResponseEntity.ok(authService.login(request));
+            AuthResponse result = authService.login(request);
+            metrics.success("login", sample);
+            return ResponseEntity.ok(result);
+        }catch (PasswordHashingOverloadedException e) {
+            metrics.failure("login", sample, "overloaded");
+            return overloaded(e);
         }catch (Exception e) {
+            metrics.failure("login", sample, e);
             return ResponseEntity.badRequest().body(e.getMessage());
         }
         
@@ -73,15 +102,57 @@ public class AuthController {
     // Login with Google ID token (sent from frontend)
     @PostMapping("/google")
     public ResponseEntity<?> loginWithGoogle(@RequestBody Map<String, String> body, HttpServletResponse response) {
+        Timer.Sample sample = metrics.start();
         String token = body.get("idToken");
         if (token == null || token.isEmpty()) {
+            metrics.failure("google", sample, "missing_id_token");
             return ResponseEntity.badRequest().body("ID token is required");
         }
-        return ResponseEntity.ok(authService.loginWithGoogle(token));
+        try {
+            AuthResponse result = authService.loginWithGoogle(token);
+            metrics.success("google", sample);
+            return ResponseEntity.ok(result);
+        } catch (RuntimeException e) {
+            metrics.failure("google", sample, e);
+            throw e;
+        }
+    }
+
+    // Trade a refresh token for a new access token; the refresh token is rotated on every call
+    @PostMapping("/refresh")
+    public ResponseEntity<?> refresh(@RequestBody Map<String, String> body) {
+        Timer.Sample sample = metrics.start();
+        String refreshToken = body.get("refreshToken");
+        if (refreshToken == null || refreshToken.isEmpty()) {
+            metrics.failure("refresh", sample, "missing_refresh_token");
+            return ResponseEntity.badRequest().body("Refresh token is required");
+        }
+        try {
+            AuthResponse result = authService.refresh(refreshToken);
+            metrics.success("refresh", sample);
+            return ResponseEntity.ok(result);
+        } catch (InvalidRefreshTokenException e) {
+            metrics.failure("refresh", sample, e);
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(e.getMessage());
+        } catch (Exception e) {
+            metrics.failure("refresh", sample, e);
+            loggers.error("Token refresh error: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
     }
 
     @PostMapping("logout")
-    public ResponseEntity<String> logout() {
+    public ResponseEntity<String> logout(@RequestBody(required = false) Map<String, String> body) {
+        Timer.Sample sample = metrics.start();
+        // Tokens come in the body: an expired access token in the header would be rejected before we get here
+        if (body != null) {
+            try {
+                authService.logout(body.get("token"), body.get("refreshToken"));
+            } catch (Exception e) {
+                // The client forgets its tokens either way
+                loggers.warn("Could not revoke tokens on logout: {}", e.getMessage());
+            }
+        }
         // Clear the JWT cookie
         ResponseCookie cookie = ResponseCookie.from("jwt", "")
                 .path("/") 
@@ -91,6 +162,7 @@ public class AuthController {
                 .secure(true) // HttpOnly for security
                 .build();
         loggers.info("User logged out, clearing JWT cookie");
+        metrics.success("logout", sample);
         return ResponseEntity.ok()
                 .header(HttpHeaders.SET_COOKIE, cookie.toString())
                 .body("Logged out successfully");
@@ -98,6 +170,7 @@ public class AuthController {
 
     @PostMapping("/update-profile")
 public ResponseEntity<?> updateProfile(@RequestBody Map<String, String> profileData, @RequestHeader("Authorization") String token) {
+    Timer.Sample sample = metrics.start();
     Authentication auth = SecurityContextHolder.getContext().getAuthentication();
     String username = auth.getName();
 
@@ -112,9 +185,11 @@ public ResponseEntity<?> updateProfile(@RequestBody Map<String, String> profileD
             String message = authService.updateEmail(profileData, username);
             response.put("message", message);
         }
+        metrics.success("update-profile", sample);
         return ResponseEntity.ok(response);
 
     } catch (Exception e) {
+        metrics.failure("update-profile", sample, e);
         loggers.error("Profile update error: {}", e.getMessage());
         Map<String, String> error = new HashMap<>();
         error.put("error", e.getMessage());
@@ -125,14 +200,18 @@ public ResponseEntity<?> updateProfile(@RequestBody Map<String, String> profileD
 
     @PostMapping("/forgot-password")
     public ResponseEntity<String> forgotPassword(@RequestBody Map<String, String> body) {
+        Timer.Sample sample = metrics.start();
         String email = body.get("email");
         if (email == null || email.isEmpty()) {
+            metrics.failure("forgot-password", sample, "missing_email");
             return ResponseEntity.badRequest().body("Email is required");
         }
         try {
             authService.forgotPassword(email);
+            metrics.success("forgot-password", sample);
             return ResponseEntity.ok("Password reset link sent to your email");
         } catch (Exception e) {
+            metrics.failure("forgot-password", sample, e);
             loggers.error("Forgot password error: {}", e.getMessage());
             return ResponseEntity.badRequest().body(e.getMessage());
         }
@@ -140,38 +219,79 @@ public ResponseEntity<?> updateProfile(@RequestBody Map<String, String> profileD
 
     @PostMapping("/reset-password")
     public ResponseEntity<String> resetPassword(@RequestBody Map<String, String> body) {
+        Timer.Sample sample = metrics.start();
         String token = body.get("token");
         String newPassword = body.get("newPassword");
         if (token == null || token.isEmpty() || newPassword == null || newPassword.isEmpty()) {
+            metrics.failure("reset-password", sample, "missing_fields");
             return ResponseEntity.badRequest().body("Token and new password are required");
         }
         try {
             authService.resetPassword(token, newPassword);
+            metrics.success("reset-password", sample);
             return ResponseEntity.ok("Password reset successfully");
+        } catch (PasswordHashingOverloadedException e) {
+            metrics.failure("reset-password", sample, "overloaded");
+            return overloaded(e);
         } catch (Exception e) {
+            metrics.failure("reset-password", sample, e);
             loggers.error("Reset password error: {}", e.getMessage());
             return ResponseEntity.badRequest().body(e.getMessage());
         }
     }
     @PostMapping("/change-password")
     public ResponseEntity<String> changePassword(@RequestBody Map<String, String> payload, @RequestHeader("Authorization") String token) {
-    
+        Timer.Sample sample = metrics.start();
         Authentication auth = SecurityContextHolder.getContext().getAuthentication();
         String username = auth.getName();
         
         String oldPassword = payload.get("oldPassword");
         String newPassword = payload.get("newPassword");
         if (oldPassword == null || oldPassword.isEmpty() || newPassword == null || newPassword.isEmpty()) {
+            metrics.failure("change-password", sample, "missing_fields");
             return ResponseEntity.badRequest().body("Old and new passwords are required");
         }
         try {
             authService.changePassword(username, oldPassword, newPassword);
+            metrics.success("change-password", sample);
             return ResponseEntity.ok("Password changed successfully");
+        } catch (PasswordHashingOverloadedException e) {
+            metrics.failure("change-password", sample, "overloaded");
+            return overloaded(e);
         } catch (Exception e) {
+            metrics.failure("change-password", sample, e);
             loggers.error("Change password error: {}", e.getMessage());
             return ResponseEntity.badRequest().body(e.getMessage());
         }
     }
 
+    // Sign-in and account activity of the current user, newest first; pass nextCursor back for the next page
+    @GetMapping("/history")
+    public ResponseEntity<?> history(@RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "limit", defaultValue = "20") int limit) {
+        Timer.Sample sample = metrics.start();
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        try {
+            AuthHistoryPage page = authEvents.history(auth.getName(), cursor, Math.max(1, Math.min(limit, 100)));
+            metrics.success("history", sample);
+            return ResponseEntity.ok(page);
+        } catch (IllegalArgumentException | java.time.format.DateTimeParseException e) {
+            metrics.failure("history", sample, "invalid_cursor");
+            return ResponseEntity.badRequest().body("Invalid cursor");
+        } catch (Exception e) {
+            metrics.failure("history", sample, e);
+            loggers.error("Auth history error: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    // BCrypt pool is saturated: answer fast and let the client back off
+    private ResponseEntity<String> overloaded(PasswordHashingOverloadedException e) {
+        loggers.warn("Rejected password request: {}", e.getMessage());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(e.getMessage());
+    }
+
     
 }
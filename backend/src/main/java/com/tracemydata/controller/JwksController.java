@@ -0,0 +1,41 @@
+package com.tracemydata.controller;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+
+import com.tracemydata.service.JwtSigningKeyService;
+import com.tracemydata.util.JwtKeyRing;
+
+// Public keys for verifying our access tokens; downstream services cache this and look keys up by "kid"
+@RestController
+public class JwksController {
+
+    private final JwtSigningKeyService signingKeys;
+    private final long maxAgeSeconds;
+
+    public JwksController(JwtSigningKeyService signingKeys,
+            @Value("${app.jwt.signing.jwks-max-age-seconds:900}") long maxAgeSeconds) {
+        this.signingKeys = signingKeys;
+        this.maxAgeSeconds = maxAgeSeconds;
+    }
+
+    // New keys are listed publish-ahead-ms before they sign, which must exceed max-age
+    @GetMapping("/.well-known/jwks.json")
+    public ResponseEntity<Map<String, Object>> jwks(WebRequest request) {
+        JwtKeyRing ring = signingKeys.ring();
+        if (request.checkNotModified(ring.getEtag())) {
+            return null; // 304, headers already set
+        }
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.maxAge(maxAgeSeconds, TimeUnit.SECONDS).cachePublic())
+                .eTag(ring.getEtag())
+                .body(ring.getJwks());
+    }
+}
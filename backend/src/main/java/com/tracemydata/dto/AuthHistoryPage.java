@@ -0,0 +1,60 @@
+package com.tracemydata.dto;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public class AuthHistoryPage {
+
+    private List<Entry> events;
+    private String nextCursor; // null on the last page
+
+    public AuthHistoryPage(List<Entry> events, String nextCursor) {
+        this.events = events;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<Entry> getEvents() {
+        return events;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public static class Entry {
+
+        private String type;
+        private String email;
+        private String ip;
+        private String userAgent;
+        private LocalDateTime occurredAt;
+
+        public Entry(String type, String email, String ip, String userAgent, LocalDateTime occurredAt) {
+            this.type = type;
+            this.email = email;
+            this.ip = ip;
+            this.userAgent = userAgent;
+            this.occurredAt = occurredAt;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public String getEmail() {
+            return email;
+        }
+
+        public String getIp() {
+            return ip;
+        }
+
+        public String getUserAgent() {
+            return userAgent;
+        }
+
+        public LocalDateTime getOccurredAt() {
+            return occurredAt;
+        }
+    }
+}
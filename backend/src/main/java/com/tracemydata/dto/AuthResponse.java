@@ -6,6 +6,7 @@ public class AuthResponse {
     private String email;
     private String authProvider;
     private String token;
+    private String refreshToken;
     private String firstName;
     private String lastName;
 
@@ -35,6 +36,14 @@ public class AuthResponse {
         this.token = token;
     }
 
+    public String getRefreshToken() {
+        return refreshToken;
+    }
+
+    public void setRefreshToken(String refreshToken) {
+        this.refreshToken = refreshToken;
+    }
+
     public void setFirstName(String firstName) {
         this.firstName = firstName;
     }
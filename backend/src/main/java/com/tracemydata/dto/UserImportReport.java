@@ -0,0 +1,65 @@
+package com.tracemydata.dto;
+
+import java.util.List;
+
+public class UserImportReport {
+
+    private long read;
+    private long imported;
+    private long failed;
+    private List<RowError> errors; // the first app.admin.import.max-reported-errors failures
+    private boolean errorsTruncated;
+
+    public UserImportReport(long read, long imported, long failed, List<RowError> errors, boolean errorsTruncated) {
+        this.read = read;
+        this.imported = imported;
+        this.failed = failed;
+        this.errors = errors;
+        this.errorsTruncated = errorsTruncated;
+    }
+
+    public long getRead() {
+        return read;
+    }
+
+    public long getImported() {
+        return imported;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+
+    public List<RowError> getErrors() {
+        return errors;
+    }
+
+    public boolean isErrorsTruncated() {
+        return errorsTruncated;
+    }
+
+    public static class RowError {
+
+        private long line; // 1-based line of the row in the upload (CSV: where the record starts)
+        private String email;
+        private String message;
+
+        public RowError(long line, String email, String message) {
+            this.line = line;
+            this.email = email;
+            this.message = message;
+        }
+
+        public long getLine() {
+            return line;
+        }
+
+        public String getEmail() {
+            return email;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.tracemydata.dto;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+// One account in a bulk import or export (NDJSON object or CSV row)
+public class UserTransferRecord {
+
+    private UUID id; // generated on import when absent
+    private String email;
+    private String firstName;
+    private String lastName;
+    private String authProvider; // local, google or outlook; "local" when a password hash is given
+    private String passwordHash; // BCrypt, imported as is
+    private LocalDateTime createdAt;
+
+    public UserTransferRecord() {
+    }
+
+    public UserTransferRecord(UUID id, String email, String firstName, String lastName, String authProvider,
+            String passwordHash, LocalDateTime createdAt) {
+        this.id = id;
+        this.email = email;
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.authProvider = authProvider;
+        this.passwordHash = passwordHash;
+        this.createdAt = createdAt;
+    }
+
+    public UUID getId() {
+        return id;
+    }
+
+    public void setId(UUID id) {
+        this.id = id;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public void setEmail(String email) {
+        this.email = email;
+    }
+
+    public String getFirstName() {
+        return firstName;
+    }
+
+    public void setFirstName(String firstName) {
+        this.firstName = firstName;
+    }
+
+    public String getLastName() {
+        return lastName;
+    }
+
+    public void setLastName(String lastName) {
+        this.lastName = lastName;
+    }
+
+    public String getAuthProvider() {
+        return authProvider;
+    }
+
+    public void setAuthProvider(String authProvider) {
+        this.authProvider = authProvider;
+    }
+
+    public String getPasswordHash() {
+        return passwordHash;
+    }
+
+    public void setPasswordHash(String passwordHash) {
+        this.passwordHash = passwordHash;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+}
@@ -0,0 +1,18 @@
+package com.tracemydata.model;
+
+import java.util.UUID;
+
+// One row of the auth_event journal; not a JPA entity, AuthEventJournal writes it with JDBC batches
+public record AuthEvent(String type, UUID userId, String email, String ip, String userAgent, long occurredAtMillis) {
+
+    public static final String LOGIN = "LOGIN";
+    public static final String LOGIN_FAILED = "LOGIN_FAILED";
+    public static final String LOGIN_GOOGLE = "LOGIN_GOOGLE";
+    public static final String LOGOUT = "LOGOUT";
+    public static final String ACCOUNT_CREATED = "ACCOUNT_CREATED";
+    public static final String PASSWORD_CHANGED = "PASSWORD_CHANGED";
+    public static final String PASSWORD_RESET_REQUESTED = "PASSWORD_RESET_REQUESTED";
+    public static final String PASSWORD_RESET = "PASSWORD_RESET";
+    public static final String EMAIL_CHANGE_REQUESTED = "EMAIL_CHANGE_REQUESTED";
+    public static final String EMAIL_CHANGED = "EMAIL_CHANGED";
+}
@@ -0,0 +1,85 @@
+package com.tracemydata.model;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+@Entity
+@Table(name = "jwt_signing_key")
+public class JwtSigningKey {
+
+    // RFC 7638 thumbprint of the public key, sent as the token's "kid" header
+    @Id
+    @Column(name = "kid", length = 64)
+    private String kid;
+
+    @Column(name = "algorithm", nullable = false, length = 16)
+    private String algorithm;
+
+    // X.509 SubjectPublicKeyInfo
+    @Column(name = "public_key", nullable = false)
+    private byte[] publicKey;
+
+    // PKCS#8, encrypted with a key derived from app.jwt.secret (see JwtSigningKeyService)
+    @Column(name = "private_key", nullable = false)
+    private byte[] privateKey;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    // Published before this so verifiers' JWKS caches know the key before tokens use it
+    @Column(name = "activates_at", nullable = false)
+    private LocalDateTime activatesAt;
+
+    // Null while this is the newest key; set on rotation to the last moment a token it signed can be valid
+    @Column(name = "expires_at")
+    private LocalDateTime expiresAt;
+
+    public JwtSigningKey() {
+        this.createdAt = LocalDateTime.now();
+    }
+
+    public JwtSigningKey(String kid, String algorithm, byte[] publicKey, byte[] privateKey, LocalDateTime activatesAt) {
+        this();
+        this.kid = kid;
+        this.algorithm = algorithm;
+        this.publicKey = publicKey;
+        this.privateKey = privateKey;
+        this.activatesAt = activatesAt;
+    }
+
+    public String getKid() {
+        return kid;
+    }
+
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    public byte[] getPublicKey() {
+        return publicKey;
+    }
+
+    public byte[] getPrivateKey() {
+        return privateKey;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public LocalDateTime getActivatesAt() {
+        return activatesAt;
+    }
+
+    public LocalDateTime getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(LocalDateTime expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+}
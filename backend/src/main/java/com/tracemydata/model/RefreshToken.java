@@ -0,0 +1,84 @@
+package com.tracemydata.model;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+@Entity
+@Table(name = "refresh_token")
+public class RefreshToken {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // SHA-256 of the token handed to the client; the token itself is never stored
+    @Column(name = "token_hash", nullable = false, unique = true)
+    private byte[] tokenHash;
+
+    @Column(name = "user_id", nullable = false)
+    private UUID userId;
+
+    // Shared by every token rotated out of the same login
+    @Column(name = "family_id", nullable = false)
+    private UUID familyId;
+
+    @Column(name = "expires_at", nullable = false)
+    private LocalDateTime expiresAt;
+
+    @Column(name = "used_at")
+    private LocalDateTime usedAt;
+
+    @Column(name = "revoked_at")
+    private LocalDateTime revokedAt;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    public RefreshToken() {
+        this.createdAt = LocalDateTime.now();
+    }
+
+    public RefreshToken(byte[] tokenHash, UUID userId, UUID familyId, LocalDateTime expiresAt) {
+        this();
+        this.tokenHash = tokenHash;
+        this.userId = userId;
+        this.familyId = familyId;
+        this.expiresAt = expiresAt;
+    }
+
+    public boolean isExpired() {
+        return LocalDateTime.now().isAfter(this.expiresAt);
+    }
+
+    public Long getId() {
+        return id;
+    }
+    public byte[] getTokenHash() {
+        return tokenHash;
+    }
+    public UUID getUserId() {
+        return userId;
+    }
+    public UUID getFamilyId() {
+        return familyId;
+    }
+    public LocalDateTime getExpiresAt() {
+        return expiresAt;
+    }
+    public LocalDateTime getUsedAt() {
+        return usedAt;
+    }
+    public LocalDateTime getRevokedAt() {
+        return revokedAt;
+    }
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+}
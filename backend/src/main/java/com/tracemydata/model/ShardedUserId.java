@@ -0,0 +1,18 @@
+package com.tracemydata.model;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import org.hibernate.annotations.IdGeneratorType;
+
+/**
+ * User ids that carry the shard bucket of the account's email (ShardKeys.newUserId),
+ * so findById can go straight to the right shard.
+ */
+@IdGeneratorType(ShardedUserIdGenerator.class)
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ ElementType.FIELD, ElementType.METHOD })
+public @interface ShardedUserId {
+}
@@ -30,9 +30,6 @@ public class TempUser {
     @Column(name = "password", nullable = false)
     private String password;
 
-    @Column(nullable = false, unique = true)
-    private String token;
-
     @Column(name = "created_at", nullable = false)
     private LocalDateTime createdAt;
 
@@ -75,12 +72,6 @@ public class TempUser {
     public void setPassword(String password) {
         this.password = password;
     }
-    public String getToken() {
-        return token;
-    }
-    public void setToken(String token) {
-        this.token = token;
-    }
     public LocalDateTime getCreatedAt() {
         return createdAt;
     }
@@ -4,14 +4,16 @@ import jakarta.persistence.*;
 
 
 import java.time.LocalDateTime;
+import java.util.List;
 import java.util.UUID;
 
 @Entity
 @Table(name = "users")
 public class User {
 
+    // Carries the shard bucket of the email the account was created with
     @Id
-    @GeneratedValue
+    @ShardedUserId
     private UUID id;
 
     @Column(name = "first_name", length = 500)
@@ -32,6 +34,10 @@ public class User {
     @Column(name = "created_at")
     private LocalDateTime createdAt = LocalDateTime.now();
 
+    // Embedded in every access token as "ver"; bumped to invalidate all tokens issued before
+    @Column(name = "token_version", nullable = false)
+    private int tokenVersion;
+
     // ----- Getters & Setters -----
 
     public UUID getId() {
@@ -89,4 +95,17 @@ public class User {
     public void setCreatedAt(LocalDateTime createdAt) {
         this.createdAt = createdAt;
     }
+
+    public int getTokenVersion() {
+        return tokenVersion;
+    }
+
+    public void setTokenVersion(int tokenVersion) {
+        this.tokenVersion = tokenVersion;
+    }
+
+    // Every account has the same authorities for now; they travel in the token as "roles"
+    public List<String> getAuthorities() {
+        return List.of("USER");
+    }
 }
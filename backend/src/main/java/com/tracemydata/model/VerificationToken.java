@@ -0,0 +1,62 @@
+package com.tracemydata.model;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+@Entity
+@Table(name = "verification_token")
+public class VerificationToken {
+
+    public static final String REGISTER = "REGISTER";
+    public static final String EMAIL_CHANGE = "EMAIL_CHANGE";
+    public static final String PASSWORD_RESET = "PASSWORD_RESET";
+
+    // One token per pending temp_user row; a new link for the same row replaces the old one
+    @Id
+    @Column(name = "temp_user_id")
+    private Long tempUserId;
+
+    // SHA-256 of the token in the emailed link; the token itself is never stored
+    @Column(name = "token_hash", nullable = false, length = 32)
+    private byte[] tokenHash;
+
+    @Column(name = "purpose", nullable = false, length = 16)
+    private String purpose;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "expires_at", nullable = false)
+    private LocalDateTime expiresAt;
+
+    public VerificationToken() {
+    }
+
+    public boolean isExpired() {
+        return LocalDateTime.now().isAfter(this.expiresAt);
+    }
+
+    public Long getTempUserId() {
+        return tempUserId;
+    }
+
+    public byte[] getTokenHash() {
+        return tokenHash;
+    }
+
+    public String getPurpose() {
+        return purpose;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public LocalDateTime getExpiresAt() {
+        return expiresAt;
+    }
+}
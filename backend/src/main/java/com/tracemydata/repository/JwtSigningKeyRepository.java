@@ -0,0 +1,39 @@
+package com.tracemydata.repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.tracemydata.model.JwtSigningKey;
+
+@Repository
+public interface JwtSigningKeyRepository extends JpaRepository<JwtSigningKey, String> {
+
+    Optional<JwtSigningKey> findFirstByOrderByCreatedAtDesc();
+
+    // Keys that may still have valid tokens out there, or will sign some soon
+    @Query("SELECT k FROM JwtSigningKey k WHERE k.expiresAt IS NULL OR k.expiresAt > :now")
+    List<JwtSigningKey> findUnexpired(@Param("now") LocalDateTime now);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE JwtSigningKey k SET k.expiresAt = :expiresAt WHERE k.expiresAt IS NULL AND k.kid <> :successor")
+    int expirePredecessors(@Param("successor") String successor, @Param("expiresAt") LocalDateTime expiresAt);
+
+    // Own transaction when called outside one, e.g. from the scheduled purge
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM JwtSigningKey k WHERE k.expiresAt < :cutoff")
+    int deleteExpiredBefore(@Param("cutoff") LocalDateTime cutoff);
+
+    // Serializes rotation across instances for the rest of the transaction
+    @Query(value = "SELECT pg_try_advisory_xact_lock(:key)", nativeQuery = true)
+    boolean tryAdvisoryLock(@Param("key") long key);
+}
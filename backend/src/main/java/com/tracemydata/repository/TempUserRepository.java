@@ -1,21 +1,72 @@
 package com.tracemydata.repository;
 
 import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.tracemydata.model.TempUser;
-
-import jakarta.transaction.Transactional;
+import com.tracemydata.util.ShardKey;
 
 @Repository
 public interface TempUserRepository extends JpaRepository<TempUser, Long> {
-    TempUser save(TempUser tempUser);
-    Optional<TempUser> findByToken(String token);
-    Optional<TempUser> findByEmail(String email);
+    Optional<TempUser> findByEmail(@ShardKey String email);
     void delete(TempUser tempUser);
-    void deleteByExpiresAtBefore(LocalDateTime time);
-    boolean existsByEmail(String email);
+    boolean existsByEmail(@ShardKey String email);
+
+    /**
+     * Stores a pending registration in one statement. Nothing is written when the email
+     * already belongs to a user, or when an unexpired request for it is pending (the
+     * unique email constraint); an expired pending row is replaced.
+     *
+     * The caller issues the row's verification token afterwards.
+     *
+     * @return the temp_user id, empty when the email is taken.
+     */
+    @Transactional
+    @Query(value = "INSERT INTO temp_user (first_name, last_name, email, password, created_at, expired_at) "
+            + "SELECT :firstName, :lastName, :email, :password, :now, :expiresAt "
+            + "WHERE NOT EXISTS (SELECT 1 FROM users WHERE email = :email) "
+            + "ON CONFLICT (email) DO UPDATE SET first_name = EXCLUDED.first_name, last_name = EXCLUDED.last_name, "
+            + "password = EXCLUDED.password, created_at = EXCLUDED.created_at, "
+            + "expired_at = EXCLUDED.expired_at, user_id = NULL "
+            + "WHERE temp_user.expired_at < EXCLUDED.created_at "
+            + "RETURNING id", nativeQuery = true)
+    Optional<Long> insertPendingRegistration(@Param("firstName") String firstName,
+            @Param("lastName") String lastName,
+            @Param("email") @ShardKey String email,
+            @Param("password") String password,
+            @Param("now") LocalDateTime now,
+            @Param("expiresAt") LocalDateTime expiresAt);
+
+    // Claims the pending row of a verification token: gone for any concurrent use of the same link
+    @Transactional
+    @Query(value = "DELETE FROM temp_user WHERE id = :id RETURNING *", nativeQuery = true)
+    Optional<TempUser> deleteByIdReturning(@Param("id") Long id);
+
+    // Next page of expired rows after the (expiresAt, id) cursor, served by idx_temp_user_expired_at_id
+    @Query("SELECT t.id AS id, t.expiresAt AS expiresAt FROM TempUser t "
+            + "WHERE t.expiresAt < :cutoff AND (t.expiresAt, t.id) > (:afterExpiresAt, :afterId) "
+            + "ORDER BY t.expiresAt, t.id")
+    List<ExpiredRow> findExpiredAfter(@Param("cutoff") LocalDateTime cutoff,
+            @Param("afterExpiresAt") LocalDateTime afterExpiresAt,
+            @Param("afterId") Long afterId,
+            Pageable page);
+
+    // One bulk DELETE statement instead of loading and removing each entity
+    @Modifying
+    @Query("DELETE FROM TempUser t WHERE t.id IN :ids")
+    int deleteAllByIdIn(@Param("ids") List<Long> ids);
+
+    interface ExpiredRow {
+        Long getId();
+        LocalDateTime getExpiresAt();
+    }
 }
@@ -1,15 +1,79 @@
 package com.tracemydata.repository;
 
 import com.tracemydata.model.User;
+import com.tracemydata.util.ShardKey;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.stream.Stream;
+
+import org.hibernate.jpa.HibernateHints;
+
+import jakarta.persistence.QueryHint;
 
 @Repository
 public interface UserRepository extends JpaRepository<User, UUID> {
 
-    Optional<User> findByEmail(String email);
-    User save(User newUser);
+    Optional<User> findByEmail(@ShardKey String email);
+    boolean existsByEmail(@ShardKey String email);
+
+    /**
+     * First OAuth login inserts the user, later ones return the existing row; one
+     * statement, and concurrent first logins are settled by the unique email.
+     * Empty only when a concurrent insert committed after this statement's snapshot.
+     */
+    @Transactional
+    @Query(value = "WITH inserted AS ("
+            + "INSERT INTO users (id, email, first_name, last_name, auth_provider, created_at, token_version) "
+            + "VALUES (:id, :email, :firstName, :lastName, :authProvider, :now, 0) "
+            + "ON CONFLICT (email) DO NOTHING RETURNING *) "
+            + "SELECT * FROM inserted "
+            + "UNION ALL "
+            + "SELECT * FROM users WHERE email = :email AND NOT EXISTS (SELECT 1 FROM inserted)", nativeQuery = true)
+    Optional<User> upsertOAuthUser(@Param("id") UUID id,
+            @Param("email") @ShardKey String email,
+            @Param("firstName") String firstName,
+            @Param("lastName") String lastName,
+            @Param("authProvider") String authProvider,
+            @Param("now") LocalDateTime now);
+
+    /**
+     * Applies a verified email change and bumps the token version in one statement.
+     * A clash with an account registered meanwhile fails on the unique email.
+     */
+    @Transactional
+    @Query(value = "UPDATE users u SET email = :email, first_name = :firstName, last_name = :lastName, "
+            + "password_hash = :passwordHash, auth_provider = 'local', token_version = u.token_version + 1 "
+            + "FROM (SELECT id, email FROM users WHERE id = :id FOR UPDATE) old "
+            + "WHERE u.id = old.id "
+            + "RETURNING old.email AS \"oldEmail\", u.token_version AS \"tokenVersion\"", nativeQuery = true)
+    Optional<EmailChange> applyVerifiedEmailChange(@Param("id") @ShardKey UUID id,
+            @Param("email") String email,
+            @Param("firstName") String firstName,
+            @Param("lastName") String lastName,
+            @Param("passwordHash") String passwordHash);
+
+    /**
+     * Every user, read through a server-side cursor: inside a transaction the driver
+     * fetches this many rows per round trip instead of the whole result. Read-only,
+     * so Hibernate keeps no snapshots; the caller still detaches each row it is done with.
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT u FROM User u ORDER BY u.id") // primary key order: an index scan, no sort
+    Stream<User> streamAll();
+
+    interface EmailChange {
+        String getOldEmail();
+        Integer getTokenVersion();
+    }
 }
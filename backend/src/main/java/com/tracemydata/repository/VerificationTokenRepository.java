@@ -0,0 +1,41 @@
+package com.tracemydata.repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Optional;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.tracemydata.model.VerificationToken;
+
+@Repository
+public interface VerificationTokenRepository extends JpaRepository<VerificationToken, Long> {
+
+    // Issuing again for the same pending row (a re-registration) invalidates the previous link
+    @Modifying
+    @Query(value = "INSERT INTO verification_token (temp_user_id, token_hash, purpose, created_at, expires_at) "
+            + "VALUES (:tempUserId, :tokenHash, :purpose, :now, :expiresAt) "
+            + "ON CONFLICT (temp_user_id) DO UPDATE SET token_hash = EXCLUDED.token_hash, purpose = EXCLUDED.purpose, "
+            + "created_at = EXCLUDED.created_at, expires_at = EXCLUDED.expires_at", nativeQuery = true)
+    int upsert(@Param("tempUserId") Long tempUserId,
+            @Param("tokenHash") byte[] tokenHash,
+            @Param("purpose") String purpose,
+            @Param("now") LocalDateTime now,
+            @Param("expiresAt") LocalDateTime expiresAt);
+
+    // Looks a token up without using it up (same index as the claim)
+    @Query(value = "SELECT * FROM verification_token WHERE token_hash = :tokenHash AND purpose IN (:purposes)",
+            nativeQuery = true)
+    Optional<VerificationToken> findByTokenHash(@Param("tokenHash") byte[] tokenHash,
+            @Param("purposes") Collection<String> purposes);
+
+    // Claims a token (an equality probe on idx_verification_token_hash): gone for any concurrent use
+    @Query(value = "DELETE FROM verification_token WHERE token_hash = :tokenHash AND purpose IN (:purposes) "
+            + "RETURNING *", nativeQuery = true)
+    Optional<VerificationToken> deleteByTokenHashReturning(@Param("tokenHash") byte[] tokenHash,
+            @Param("purposes") Collection<String> purposes);
+}
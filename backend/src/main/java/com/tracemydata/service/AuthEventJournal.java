@@ -0,0 +1,346 @@
+package com.tracemydata.service;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import com.tracemydata.dto.AuthHistoryPage;
+import com.tracemydata.model.AuthEvent;
+import com.tracemydata.util.MpscRingBuffer;
+import com.tracemydata.util.ShardContext;
+import com.tracemydata.util.ShardKeys;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+/**
+ * Journal of authentication events.
+ *
+ * Request threads only stamp the event and offer it to a bounded lock-free ring
+ * buffer; a single writer thread drains it and inserts whatever has accumulated as
+ * one JDBC batch into the monthly partitioned auth_event table. When the buffer is
+ * full the event is dropped and counted rather than slowing the request down.
+ * With sharding, each batch is split by the shard of the account it belongs to.
+ */
+@Service
+public class AuthEventJournal {
+
+    private static final String INSERT_SQL = "INSERT INTO auth_event (user_id, event_type, email, ip, user_agent, occurred_at) "
+            + "VALUES (?, ?, ?, ?, ?, ?)";
+
+    private static final Pattern PARTITION_NAME = Pattern.compile("auth_event_p(\\d{4})_(\\d{2})");
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyy_MM");
+
+    private Logger loggers = LoggerFactory.getLogger(AuthEventJournal.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate partitionTx;
+    private final ShardDirectory shardDirectory;
+    private final MpscRingBuffer<AuthEvent> buffer;
+    private final int batchSize;
+    private final long idleParkNanos;
+    private final int partitionsAhead;
+    private final int retentionMonths;
+
+    private final LongAdder dropped = new LongAdder();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    private volatile boolean running;
+    private Thread writer;
+
+    public AuthEventJournal(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+            ShardDirectory shardDirectory,
+            @Value("${app.auth-events.buffer-capacity:16384}") int bufferCapacity,
+            @Value("${app.auth-events.batch-size:500}") int batchSize,
+            @Value("${app.auth-events.idle-park-ms:20}") long idleParkMs,
+            @Value("${app.auth-events.partitions-ahead:2}") int partitionsAhead,
+            @Value("${app.auth-events.retention-months:12}") int retentionMonths) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.partitionTx = new TransactionTemplate(transactionManager);
+        this.shardDirectory = shardDirectory;
+        this.buffer = new MpscRingBuffer<>(bufferCapacity);
+        this.batchSize = batchSize;
+        this.idleParkNanos = TimeUnit.MILLISECONDS.toNanos(idleParkMs);
+        this.partitionsAhead = partitionsAhead;
+        this.retentionMonths = retentionMonths;
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        writer = new Thread(this::writeLoop, "auth-event-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // Flushes what is still buffered before the DataSource goes away
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(writer);
+        writer.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    // Hot path: a few field reads, one allocation and one CAS; never touches the database
+    public void record(String type, UUID userId, String email) {
+        if (userId == null) {
+            return; // the journal is per user; unknown accounts have no history to show
+        }
+        String ip = null;
+        String userAgent = null;
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes instanceof ServletRequestAttributes servletAttributes) {
+            HttpServletRequest request = servletAttributes.getRequest();
+            ip = request.getRemoteAddr();
+            userAgent = truncate(request.getHeader("User-Agent"), 255);
+        }
+        if (!buffer.offer(new AuthEvent(type, userId, email, ip, userAgent, System.currentTimeMillis()))) {
+            dropped.increment();
+        }
+    }
+
+    private void writeLoop() {
+        List<AuthEvent> batch = new ArrayList<>(batchSize);
+        while (running || buffer.size() > 0) {
+            AuthEvent event;
+            while (batch.size() < batchSize && (event = buffer.poll()) != null) {
+                batch.add(event);
+            }
+            if (batch.isEmpty()) {
+                // Producers never signal, so they stay wait-free; idle latency is bounded by the park
+                LockSupport.parkNanos(this, idleParkNanos);
+                continue;
+            }
+            if (shardDirectory.isEnabled()) {
+                flushByShard(batch);
+            } else {
+                flush(batch);
+            }
+            batch.clear();
+        }
+    }
+
+    private void flushByShard(List<AuthEvent> batch) {
+        Map<Integer, List<AuthEvent>> byShard = new TreeMap<>();
+        for (AuthEvent event : batch) {
+            int bucket = event.email() != null ? ShardKeys.bucketOf(event.email()) : ShardKeys.bucketOf(event.userId());
+            int shard;
+            try {
+                shard = shardDirectory.bindingFor(bucket).shard(); // waits while the account's bucket is being moved
+            } catch (RuntimeException e) {
+                failed.incrementAndGet();
+                loggers.warn("Could not route an auth event: {}", e.getMessage());
+                continue;
+            }
+            byShard.computeIfAbsent(shard, key -> new ArrayList<>()).add(event);
+        }
+        byShard.forEach((shard, events) -> ShardContext.runOn(new ShardContext.Binding(shard, ShardKeys.UNKNOWN),
+                () -> flush(events)));
+    }
+
+    private void flush(List<AuthEvent> batch) {
+        try {
+            // With reWriteBatchedInserts the driver sends this as multi-row INSERTs
+            jdbcTemplate.batchUpdate(INSERT_SQL, batch, batch.size(), (ps, event) -> {
+                ps.setObject(1, event.userId());
+                ps.setString(2, event.type());
+                ps.setString(3, event.email());
+                ps.setString(4, event.ip());
+                ps.setString(5, event.userAgent());
+                ps.setTimestamp(6, new Timestamp(event.occurredAtMillis()));
+            });
+            written.addAndGet(batch.size());
+        } catch (DataAccessException e) {
+            // The journal is best effort: a failed batch is logged and counted, never retried in a loop
+            failed.addAndGet(batch.size());
+            loggers.warn("Could not write {} auth events: {}", batch.size(), e.getMessage());
+        } catch (RuntimeException e) {
+            failed.addAndGet(batch.size());
+            loggers.error("Unexpected error writing auth events", e);
+        }
+    }
+
+    // Newest first; the cursor is the (occurred_at, id) of the last row of the previous page
+    @Transactional(readOnly = true)
+    public AuthHistoryPage history(String email, String cursor, int limit) {
+        shardDirectory.enter(ShardKeys.bucketOf(email));
+        LocalDateTime beforeAt = LocalDateTime.of(9999, 1, 1, 0, 0);
+        long beforeId = Long.MAX_VALUE;
+        if (cursor != null && !cursor.isEmpty()) {
+            String[] parts = decodeCursor(cursor);
+            beforeAt = LocalDateTime.parse(parts[0]);
+            beforeId = Long.parseLong(parts[1]);
+        }
+        List<HistoryRow> rows = jdbcTemplate.query(
+                "SELECT e.id, e.event_type, e.email, e.ip, e.user_agent, e.occurred_at FROM auth_event e "
+                        + "WHERE e.user_id = (SELECT u.id FROM users u WHERE u.email = ?) "
+                        + "AND (e.occurred_at, e.id) < (?, ?) "
+                        + "ORDER BY e.occurred_at DESC, e.id DESC LIMIT ?",
+                (rs, rowNum) -> new HistoryRow(rs.getLong("id"), new AuthHistoryPage.Entry(rs.getString("event_type"),
+                        rs.getString("email"), rs.getString("ip"), rs.getString("user_agent"),
+                        rs.getTimestamp("occurred_at").toLocalDateTime())),
+                email, Timestamp.valueOf(beforeAt), beforeId, limit);
+
+        List<AuthHistoryPage.Entry> entries = new ArrayList<>(rows.size());
+        for (HistoryRow row : rows) {
+            entries.add(row.entry());
+        }
+        String nextCursor = null;
+        if (rows.size() == limit) {
+            HistoryRow last = rows.get(rows.size() - 1);
+            nextCursor = encodeCursor(last.entry().getOccurredAt(), last.id());
+        }
+        return new AuthHistoryPage(entries, nextCursor);
+    }
+
+    private record HistoryRow(long id, AuthHistoryPage.Entry entry) {
+    }
+
+    private static String encodeCursor(LocalDateTime occurredAt, long id) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((occurredAt + "|" + id).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String[] decodeCursor(String cursor) {
+        String[] parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\\|");
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        return parts;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady() {
+        maintainPartitions();
+    }
+
+    // Creates the next months' partitions ahead of time and drops months past the retention period
+    @Scheduled(cron = "${app.auth-events.partition.cron:0 15 3 * * *}")
+    public void maintainPartitions() {
+        shardDirectory.forEachShard(shard -> maintainPartitions(shard));
+    }
+
+    // Each month is its own step: one that fails (a lock timeout, say) does not stop the others
+    private void maintainPartitions(int shard) {
+        YearMonth current = YearMonth.now();
+        for (int i = 0; i <= partitionsAhead; i++) {
+            YearMonth month = current.plusMonths(i);
+            try {
+                createPartition(month, shard);
+            } catch (DataAccessException e) {
+                // Rows still land in the default partition; the next run tries again
+                loggers.warn("Could not create auth event partition for {} on shard {}: {}", month, shard, e.getMessage());
+            }
+        }
+        if (retentionMonths <= 0) {
+            return;
+        }
+        YearMonth oldestKept = current.minusMonths(retentionMonths);
+        List<String> partitions;
+        try {
+            partitions = jdbcTemplate.queryForList(
+                    "SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid "
+                            + "JOIN pg_class p ON p.oid = i.inhparent WHERE p.relname = 'auth_event'",
+                    String.class);
+        } catch (DataAccessException e) {
+            loggers.warn("Could not list auth event partitions on shard {}: {}", shard, e.getMessage());
+            return;
+        }
+        for (String partition : partitions) {
+            Matcher matcher = PARTITION_NAME.matcher(partition);
+            if (matcher.matches() && YearMonth.of(Integer.parseInt(matcher.group(1)),
+                    Integer.parseInt(matcher.group(2))).isBefore(oldestKept)) {
+                try {
+                    jdbcTemplate.execute("DROP TABLE IF EXISTS " + partition);
+                    loggers.info("Dropped auth event partition {} on shard {}", partition, shard);
+                } catch (DataAccessException e) {
+                    loggers.warn("Could not drop auth event partition {} on shard {}: {}", partition, shard, e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * CREATE TABLE ... PARTITION OF fails while auth_event_default holds rows of that
+     * month, which is exactly when a month was missed. So the partition is built as a
+     * plain table, the month's rows are moved out of the default partition into it, and
+     * only then is it attached, all in one transaction. The default partition is locked
+     * against inserts meanwhile, otherwise a row arriving between the move and the
+     * attach would make the attach fail.
+     */
+    private void createPartition(YearMonth month, int shard) {
+        String partition = "auth_event_p" + month.format(PARTITION_SUFFIX);
+        LocalDate from = month.atDay(1);
+        LocalDate to = from.plusMonths(1);
+        Boolean exists = jdbcTemplate.queryForObject("SELECT to_regclass(?::text) IS NOT NULL", Boolean.class, partition);
+        if (Boolean.TRUE.equals(exists)) {
+            return;
+        }
+        partitionTx.executeWithoutResult(status -> {
+            jdbcTemplate.execute("LOCK TABLE auth_event_default IN EXCLUSIVE MODE");
+            jdbcTemplate.execute("CREATE TABLE " + partition + " (LIKE auth_event INCLUDING DEFAULTS INCLUDING CONSTRAINTS)");
+            int moved = jdbcTemplate.update("WITH moved AS (DELETE FROM auth_event_default "
+                    + "WHERE occurred_at >= ? AND occurred_at < ? RETURNING *) INSERT INTO " + partition
+                    + " SELECT * FROM moved", from, to);
+            jdbcTemplate.execute("ALTER TABLE auth_event ATTACH PARTITION " + partition
+                    + " FOR VALUES FROM ('" + from + "') TO ('" + to + "')");
+            if (moved > 0) {
+                loggers.info("Moved {} auth events from the default partition into {} on shard {}", moved, partition, shard);
+            }
+        });
+    }
+
+    private static String truncate(String value, int max) {
+        return value == null || value.length() <= max ? value : value.substring(0, max);
+    }
+
+    public int getQueueDepth() {
+        return buffer.size();
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    public long getWritten() {
+        return written.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+}
@@ -4,19 +4,29 @@ package com.tracemydata.service;
 import com.tracemydata.dto.AuthResponse;
 import com.tracemydata.dto.LoginRequest;
 import com.tracemydata.dto.RegisterRequest;
+import com.tracemydata.model.AuthEvent;
 // import com.tracemydata.dto.TempUserDTO;
 import com.tracemydata.model.TempUser;
 import com.tracemydata.model.User;
+import com.tracemydata.model.VerificationToken;
 import com.tracemydata.repository.TempUserRepository;
 import com.tracemydata.repository.UserRepository;
+import com.tracemydata.util.AuthFailureException;
 import com.tracemydata.util.JwtUtil;
+import com.tracemydata.util.ShardContext;
+import com.tracemydata.util.ShardKeys;
+import com.tracemydata.util.TokenRevocationList;
+import com.tracemydata.util.TokenVersionRegistry;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.micrometer.observation.annotation.Observed;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 
@@ -24,11 +34,18 @@ import java.time.LocalDateTime;
 
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+// Every public method is an observation: a span in the request's trace and an auth.service timer
+@Observed(name = "auth.service")
 @Service
 public class AuthService {
 
@@ -38,39 +55,61 @@ public class AuthService {
     private final TempUserRepository tempUserRepository; // Repository for temporary user registrations
     private final EmailService emailService; // Assuming you have an EmailService for sending verification emails
     private final UserRepository userRepo;
-    private final BCryptPasswordEncoder passwordEncoder;
+    private final PasswordHashingService passwordHasher; // BCrypt runs on its own bounded pool
     private final JwtUtil jwtUtil;
     private final RestTemplate restTemplate;
     private TempUserCleanupJob tempUserCleanupJob;
+    private final CustomUserDetailsService userDetailsService;
+    private final RefreshTokenService refreshTokenService;
+    private final TokenRevocationList revocationList;
+    private final TokenVersionRegistry tokenVersions;
+    private final VerificationTokenService verificationTokens; // hashed, single-use email link tokens
+    private final AuthEventJournal authEvents;
+    private final ShardMover shardMover;
+    // Short transactions around the writes of methods that run BCrypt first, so no connection waits on it
+    private final TransactionTemplate transactionTemplate;
 
     // Constructor initializes dependencies
-    public AuthService(UserRepository userRepo, TempUserCleanupJob tempUserCleanupJob , TempUserRepository tempUserRepository, EmailService emailService, JwtUtil jwtUtil, RestTemplate restTemplate) {
+    public AuthService(UserRepository userRepo, TempUserCleanupJob tempUserCleanupJob , TempUserRepository tempUserRepository, EmailService emailService, JwtUtil jwtUtil, RestTemplate restTemplate, CustomUserDetailsService userDetailsService, PasswordHashingService passwordHasher, RefreshTokenService refreshTokenService, TokenRevocationList revocationList, TokenVersionRegistry tokenVersions, AuthEventJournal authEvents, VerificationTokenService verificationTokens, ShardMover shardMover, PlatformTransactionManager transactionManager) {
         this.tempUserRepository = tempUserRepository;
         this.emailService = emailService;
         this.userRepo = userRepo;
-        this.passwordEncoder = new BCryptPasswordEncoder();
+        this.passwordHasher = passwordHasher;
         this.jwtUtil = jwtUtil;
         this.restTemplate = restTemplate;
         this.tempUserCleanupJob = tempUserCleanupJob;
+        this.userDetailsService = userDetailsService;
+        this.refreshTokenService = refreshTokenService;
+        this.revocationList = revocationList;
+        this.tokenVersions = tokenVersions;
+        this.authEvents = authEvents;
+        this.verificationTokens = verificationTokens;
+        this.shardMover = shardMover;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
     }
 
     public String initiateRegistration(RegisterRequest request) {
-        userRepo.findByEmail(request.getEmail()).ifPresent(u -> {
-            throw new RuntimeException("Email already registered");
-        });
-        if(tempUserRepository.existsByEmail(request.getEmail())) {
-            throw new RuntimeException("A registration request is already pending for this email");
+        // Hashed before the transaction begins, so no connection is held through BCrypt or its queue
+        String passwordHash = passwordHasher.encode(request.getPassword());
+        return transactionTemplate.execute(status -> storeRegistration(request, passwordHash));
+    }
+
+    private String storeRegistration(RegisterRequest request, String passwordHash) {
+        LocalDateTime now = LocalDateTime.now();
+        // One statement; a registered email or a pending request is detected by the insert itself
+        Optional<Long> pendingId = tempUserRepository.insertPendingRegistration(request.getFirstName(),
+                request.getLastName(), request.getEmail(), passwordHash, now, now.plusHours(24));
+        if (pendingId.isEmpty()) {
+            // Failure path only: tell the two cases apart for the message
+            if (userRepo.existsByEmail(request.getEmail())) {
+                throw new AuthFailureException(AuthFailureException.ALREADY_REGISTERED, "Email already registered");
+            }
+            throw new AuthFailureException(AuthFailureException.ALREADY_PENDING, "A registration request is already pending for this email");
         }
-        String token = UUID.randomUUID().toString();
-        TempUser temp = new TempUser();
-        temp.setFirstName(request.getFirstName());
-        temp.setLastName(request.getLastName());
-        temp.setEmail(request.getEmail());
-        temp.setPassword(passwordEncoder.encode(request.getPassword()));
-        temp.setToken(token);
-        temp.setExpiresAt(LocalDateTime.now().plusHours(24));
-        emailService.sendVerificationEmail(request.getEmail(), token);
-        tempUserRepository.save(temp);
+        // Replaces the link of an expired request the insert just took over
+        String token = verificationTokens.issue(pendingId.get(), request.getEmail(), VerificationToken.REGISTER,
+                now.plusHours(24));
+        emailService.sendVerificationEmail(request.getEmail(), token); // outbox row, same transaction
 
         return "Verification email sent";
     }
@@ -79,59 +118,90 @@ public class AuthService {
     // Handles user registration for local auth
     @Transactional
     public ResponseEntity<?> register(String token) {
-    User newUser = null;
-        // Check if email is already registered
-    TempUser tempUser = tempUserRepository.findByToken(token)
-            .orElseThrow(() -> new RuntimeException("Invalid or Expired token. Try registering again."));
-    
-    if (tempUser.isExpired()) {
-        tempUserRepository.delete(tempUser);
-        
-    }
-
-
-    // Create new user entity
-    if(tempUser.getUser_id() != null) {
-        newUser = userRepo.findById(tempUser.getUser_id()).get();
-    }else{
-        newUser = new User();
-    }
-
-    userRegisterUpdate(tempUser, newUser); // Clean up temp user
-
-    return ResponseEntity.ok("Email verified! Redirecting to login...");
-    }
+        // Deleting first claims the token, so two clicks on the same link cannot both succeed
+        VerificationToken claimed = verificationTokens.claim(token,
+                Set.of(VerificationToken.REGISTER, VerificationToken.EMAIL_CHANGE))
+                .orElseThrow(() -> new AuthFailureException(AuthFailureException.EXPIRED_TOKEN, "Invalid or Expired token. Try registering again."));
+        TempUser tempUser = tempUserRepository.deleteByIdReturning(claimed.getTempUserId())
+                .orElseThrow(() -> new AuthFailureException(AuthFailureException.EXPIRED_TOKEN, "Invalid or Expired token. Try registering again."));
+        if (claimed.isExpired() || tempUser.isExpired()) {
+            // Commits the delete, so the expired row is cleaned up as well
+            return ResponseEntity.badRequest().body("Invalid or Expired token. Try registering again.");
+        }
 
-    private void userRegisterUpdate(TempUser tempUser, User newUser) {
-        newUser.setFirstName(tempUser.getFirstName());
-        newUser.setLastName(tempUser.getLastName());
-        newUser.setEmail(tempUser.getEmail());
-        newUser.setPasswordHash(tempUser.getPassword());
-        newUser.setAuthProvider("local");
+        try {
+            if (tempUser.getUser_id() != null) {
+                // Verified email update
+                UserRepository.EmailChange change = userRepo.applyVerifiedEmailChange(tempUser.getUser_id(),
+                        tempUser.getEmail(), tempUser.getFirstName(), tempUser.getLastName(), tempUser.getPassword())
+                        .orElseThrow(() -> new AuthFailureException(AuthFailureException.UNKNOWN_ACCOUNT, "User not found"));
+                // The cached entry of the old address is stale now, and access tokens still carry it
+                evictCachedUser(change.getOldEmail());
+                evictCachedUser(tempUser.getEmail());
+                publishTokenVersion(tempUser.getUser_id(), change.getTokenVersion());
+                // Refresh tokens are routed by the bucket of the old email, which no longer finds them once
+                // the account has moved shards; like a password reset, every session logs in again
+                refreshTokenService.revokeAllForUser(tempUser.getUser_id());
+                recordEvent(AuthEvent.EMAIL_CHANGED, tempUser.getUser_id(), tempUser.getEmail());
+                rehomeAccount(tempUser.getUser_id(), tempUser.getEmail());
+            } else {
+                User newUser = new User();
+                newUser.setFirstName(tempUser.getFirstName());
+                newUser.setLastName(tempUser.getLastName());
+                newUser.setEmail(tempUser.getEmail());
+                newUser.setPasswordHash(tempUser.getPassword());
+                newUser.setAuthProvider("local");
+                userRepo.saveAndFlush(newUser); // flush so a duplicate email surfaces here
+                recordEvent(AuthEvent.ACCOUNT_CREATED, newUser.getId(), newUser.getEmail());
+            }
+        } catch (DataIntegrityViolationException e) {
+            throw new AuthFailureException(AuthFailureException.ALREADY_REGISTERED, "Email already registered");
+        }
 
-        userRepo.save(newUser);
-        tempUserRepository.delete(tempUser);
+        return ResponseEntity.ok("Email verified! Redirecting to login...");
     }
 
     // Handles login for local users
     public AuthResponse login(LoginRequest request) {
         // Look up user by email
         User user = userRepo.findByEmail(request.getEmail())
-                .orElseThrow(() -> new RuntimeException("User not found"));
+                .orElseThrow(() -> new AuthFailureException(tempUserRepository.existsByEmail(request.getEmail())
+                        ? AuthFailureException.UNVERIFIED : AuthFailureException.UNKNOWN_ACCOUNT, "User not found"));
 
         // Reject if the account is an OAuth account
         if (!user.getAuthProvider().equals("local")) {
-            throw new RuntimeException("This account uses " + user.getAuthProvider() + " login");
+            throw new AuthFailureException(AuthFailureException.WRONG_PROVIDER, "This account uses " + user.getAuthProvider() + " login");
         }
 
-        // Verify password
-        if (!passwordEncoder.matches(request.getPassword(), user.getPasswordHash())) {
-            throw new RuntimeException("Invalid credentials");
+        // Verify password, and re-hash in the same pool task if the stored cost is not this node's target
+        String upgradedHash;
+        try {
+            upgradedHash = passwordHasher.execute(encoder -> {
+                if (!encoder.matches(request.getPassword(), user.getPasswordHash())) {
+                    throw new AuthFailureException(AuthFailureException.BAD_CREDENTIALS, "Invalid credentials");
+                }
+                return passwordHasher.needsRehash(user.getPasswordHash()) ? encoder.encode(request.getPassword()) : null;
+            });
+        } catch (PasswordHashingOverloadedException e) {
+            throw e; // shed before the password was checked
+        } catch (RuntimeException e) {
+            recordEvent(AuthEvent.LOGIN_FAILED, user.getId(), user.getEmail());
+            throw e;
+        }
+        if (upgradedHash != null) {
+            try {
+                user.setPasswordHash(upgradedHash);
+                userRepo.save(user);
+                evictCachedUser(user.getEmail());
+            } catch (Exception e) {
+                // The login itself succeeded; the next one will try again
+                loggers.warn("Could not re-hash password for {}: {}", user.getEmail(), e.getMessage());
+            }
         }
 
-        // Generate token
-        String token = jwtUtil.generateToken(user);
-        return mapToAuthResponse(user, token);
+        AuthResponse response = issueTokens(user);
+        recordEvent(AuthEvent.LOGIN, user.getId(), user.getEmail());
+        return response;
     }
 
     // Handles login via Google OAuth
@@ -142,24 +212,20 @@ public class AuthService {
 
 
     // Shared method for processing OAuth logins (Google/Outlook)
-    @Transactional
     private AuthResponse handleOAuthLogin(Map<String, Object> payload, String provider) {
         
         try{
-            User user = null;
             String email = (String) payload.get("email");
-            // If user doesn't exist, register a new OAuth user
-            Optional<User> user_email = userRepo.findByEmail(email);
-            if(user_email.isEmpty()){
-                user = registerNewOAuthUser(payload);
-            }
-            else{
-                user = user_email.get();
-            }
-            // Generate token and return response
-            String token = jwtUtil.generateToken(user);
-            
-            return mapToAuthResponse(user, token);
+            // Registers the OAuth user on first login, otherwise returns the existing one, in one statement
+            User user = userRepo.upsertOAuthUser(ShardKeys.newUserId(email), email,
+                            (String) payload.get("given_name"), (String) payload.get("family_name"),
+                            provider, LocalDateTime.now())
+                    .or(() -> userRepo.findByEmail(email)) // lost a race with a concurrent first login
+                    .orElseThrow(() -> new RuntimeException("OAuth user could not be created"));
+            // Generate tokens and return response
+            AuthResponse response = issueTokens(user);
+            recordEvent(AuthEvent.LOGIN_GOOGLE, user.getId(), user.getEmail());
+            return response;
         }catch (DataIntegrityViolationException e) {
             throw new RuntimeException("Database error during OAuth login", e);
         } catch (Exception e) {
@@ -167,17 +233,42 @@ public class AuthService {
         }   
         
     }
-    private User registerNewOAuthUser(Map<String, Object> payload) {
-        User newUser = new User();
-        newUser.setEmail((String) payload.get("email"));
-        newUser.setFirstName((String) payload.get("given_name"));
-        newUser.setLastName((String) payload.get("family_name"));
-        newUser.setAuthProvider("google");
-        return userRepo.save(newUser);
+
+    // Exchanges a refresh token for a new access token and the next refresh token of its family
+    public AuthResponse refresh(String refreshToken) {
+        RefreshTokenService.Rotation rotation = refreshTokenService.rotate(refreshToken);
+        AuthResponse response = mapToAuthResponse(rotation.user(), jwtUtil.generateToken(rotation.user()));
+        response.setRefreshToken(rotation.refreshToken());
+        return response;
+    }
+
+    // Ends the session: the refresh token's family in the DB, the access token in memory until it expires
+    public void logout(String accessToken, String refreshToken) {
+        if (refreshToken != null && !refreshToken.isEmpty()) {
+            refreshTokenService.revoke(refreshToken);
+        }
+        if (accessToken != null && !accessToken.isEmpty()) {
+            try {
+                Claims claims = jwtUtil.parseClaims(accessToken);
+                revocationList.revoke(claims.getId(), claims.getExpiration());
+                String userId = claims.get("uid", String.class);
+                if (userId != null) {
+                    recordEvent(AuthEvent.LOGOUT, UUID.fromString(userId), claims.getSubject());
+                }
+            } catch (JwtException e) {
+                // Expired or forged: nothing left to revoke
+            }
+        }
+    }
+
+    private AuthResponse issueTokens(User user) {
+        AuthResponse response = mapToAuthResponse(user, jwtUtil.generateToken(user));
+        response.setRefreshToken(refreshTokenService.issue(user));
+        return response;
     }
 
-    // Utility to map user entity + token into AuthResponse DTO
-    private AuthResponse mapToAuthResponse(User user, String token) {
+    // Utility to map user entity + token into AuthResponse DTO (package-private for the benchmarks module)
+    static AuthResponse mapToAuthResponse(User user, String token) {
         AuthResponse response = new AuthResponse();
         response.setFirstName(user.getFirstName());
         response.setLastName(user.getLastName());
@@ -200,40 +291,44 @@ public class AuthService {
     @Transactional
     public AuthResponse updateProfile(Map<String, String> profileData, String email) {
           User user = userRepo.findByEmail(email)
-                .orElseThrow(() -> new RuntimeException("User not found with email: " + email));
+                .orElseThrow(() -> new AuthFailureException(AuthFailureException.UNKNOWN_ACCOUNT, "User not found with email: " + email));
         
         
         
             user.setFirstName(profileData.get("firstName"));
             user.setLastName(profileData.get("lastName"));
             userRepo.save(user);
+            evictCachedUser(email);
             String token = jwtUtil.generateToken(user);
             return mapToAuthResponse(user, token);
     }
     @Transactional
     public String updateEmail(Map<String, String> profileData, String oldEmail) {  
         User user = userRepo.findByEmail(oldEmail)
-                .orElseThrow(() -> new RuntimeException("User not found with email: " + oldEmail)); 
+                .orElseThrow(() -> new AuthFailureException(AuthFailureException.UNKNOWN_ACCOUNT, "User not found with email: " + oldEmail)); 
         userRepo.findByEmail(profileData.get("newEmail")).ifPresent(u -> {
-            throw new RuntimeException("Email already registered");
+            throw new AuthFailureException(AuthFailureException.ALREADY_REGISTERED, "Email already registered");
         });
       
         if(tempUserRepository.existsByEmail(profileData.get("newEmail"))) {
-            throw new RuntimeException("Email already pending for verification. Please check your inbox.");
+            throw new AuthFailureException(AuthFailureException.ALREADY_PENDING, "Email already pending for verification. Please check your inbox.");
         }
         try{
             TempUser tempUser = new TempUser();
-            String token = UUID.randomUUID().toString();
             tempUser.setFirstName(profileData.get("firstName"));
             tempUser.setLastName(profileData.get("lastName"));
             tempUser.setEmail(profileData.get("newEmail"));
             tempUser.setPassword(user.getPasswordHash()); // Keep the same password hash
             tempUser.setUser_id(user.getId());
-            tempUser.setToken(token);
             tempUser.setCreatedAt(LocalDateTime.now());
             tempUser.setExpiresAt(LocalDateTime.now().plusHours(24)); // 24hr expiry
-            tempUserRepository.save(tempUser);
+            tempUserRepository.saveAndFlush(tempUser); // the token row references its id
+            // Pending rows of an account live with the account, i.e. by its current email
+            String token = verificationTokens.issue(tempUser.getId(), user.getEmail(), VerificationToken.EMAIL_CHANGE,
+                    tempUser.getExpiresAt());
+            evictCachedUser(oldEmail);
             emailService.sendVerificationEmail(tempUser.getEmail(), token); 
+            recordEvent(AuthEvent.EMAIL_CHANGE_REQUESTED, user.getId(), oldEmail);
 
         }catch (DataIntegrityViolationException e) {
             throw new RuntimeException("Database error during email update", e);
@@ -246,36 +341,37 @@ public class AuthService {
         
     }
 
-    @Transactional
     /**
      * Initiates the password reset process by sending a verification email with a token.
      *
      * @param email The user's email address.
      * @throws RuntimeException if the email is not registered or if a reset request is already pending.
      */
+    @Transactional
     public void forgotPassword(String email) {
 
          User user = userRepo.findByEmail(email)
-                .orElseThrow(() -> new RuntimeException("Email not registered"));
+                .orElseThrow(() -> new AuthFailureException(AuthFailureException.UNKNOWN_ACCOUNT, "Email not registered"));
         
         if(user.getAuthProvider().equals("google") ) {
-            throw new RuntimeException("Cannot reset password for OAuth accounts");
+            throw new AuthFailureException(AuthFailureException.WRONG_PROVIDER, "Cannot reset password for OAuth accounts");
         }
         if(tempUserRepository.existsByEmail(email)) {
-            throw new RuntimeException("A password reset request is already pending. Please check your email.");
+            throw new AuthFailureException(AuthFailureException.ALREADY_PENDING, "A password reset request is already pending. Please check your email.");
         }
         try{
-            String token = UUID.randomUUID().toString();
             TempUser temp = new TempUser();
             temp.setFirstName(user.getFirstName());
             temp.setLastName(user.getLastName());
             temp.setEmail(user.getEmail());
-            temp.setToken(token);
             temp.setPassword(user.getPasswordHash());
-            temp.setExpiresAt(LocalDateTime.now().plusMinutes((long) 0.5)); // 30 minutes expiry
+            temp.setExpiresAt(LocalDateTime.now().plusMinutes(30)); // 30 minutes expiry
             temp.setUser_id(user.getId());
-            tempUserRepository.save(temp);
+            tempUserRepository.saveAndFlush(temp); // the token row references its id
+            String token = verificationTokens.issue(temp.getId(), user.getEmail(), VerificationToken.PASSWORD_RESET,
+                    temp.getExpiresAt());
             emailService.sendForgotPassword(email, token);
+            recordEvent(AuthEvent.PASSWORD_RESET_REQUESTED, user.getId(), email);
 
         }catch (DataIntegrityViolationException e) {
             throw new RuntimeException("Database error during password reset", e);
@@ -286,7 +382,6 @@ public class AuthService {
     }
     
 
-    @Transactional
     /**
      * Resets the user's password using a temporary token.
      *
@@ -295,42 +390,133 @@ public class AuthService {
      * @throws RuntimeException if the token is invalid, expired, or if the new password is the same as the old one.
      */
     public void resetPassword(String token, String newPassword) {
-    
-        TempUser tempUser = tempUserRepository.findByToken(token)
-                .orElseThrow(() -> new RuntimeException("Invalid or Expired token. Try resetting your password again."));
+        Set<String> purposes = Set.of(VerificationToken.PASSWORD_RESET);
+        // Read only: a rejected new password leaves the link usable
+        TempUser tempUser = transactionTemplate.execute(status -> verificationTokens.find(token, purposes)
+                .filter(t -> !t.isExpired())
+                .flatMap(t -> tempUserRepository.findById(t.getTempUserId()))
+                .orElseThrow(() -> new AuthFailureException(AuthFailureException.EXPIRED_TOKEN, "Invalid or Expired token. Try resetting your password again.")));
 
         loggers.info("Resetting password for user: {}", tempUser.getEmail());
-        if (tempUser.isExpired()) {
-           tempUserRepository.delete(tempUser);
-       
-        }
-        if(passwordEncoder.matches(newPassword, tempUser.getPassword())) {
-            throw new RuntimeException("New password cannot be the same as the old password");
-        }
-
-        User user = userRepo.findById(tempUser.getUser_id())
-                .orElseThrow(() -> new RuntimeException("User not found"));
+        // Compare and re-hash in a single task on the hashing pool, with no connection or row lock held
+        String newHash = passwordHasher.execute(encoder -> {
+            if (encoder.matches(newPassword, tempUser.getPassword())) {
+                throw new AuthFailureException(AuthFailureException.SAME_PASSWORD, "New password cannot be the same as the old password");
+            }
+            return encoder.encode(newPassword);
+        });
 
-        user.setPasswordHash(passwordEncoder.encode(newPassword));
-        userRepo.save(user);
-        tempUserRepository.delete(tempUser); // Clean up temp user
+        User user = transactionTemplate.execute(status -> {
+            // Claimed now: a concurrent reset with the same link waits, then finds nothing
+            verificationTokens.claim(token, purposes)
+                    .filter(t -> !t.isExpired() && t.getTempUserId().equals(tempUser.getId()))
+                    .orElseThrow(() -> new AuthFailureException(AuthFailureException.EXPIRED_TOKEN, "Invalid or Expired token. Try resetting your password again."));
+            User account = userRepo.findById(tempUser.getUser_id())
+                    .orElseThrow(() -> new AuthFailureException(AuthFailureException.UNKNOWN_ACCOUNT, "User not found"));
+            account.setPasswordHash(newHash);
+            bumpTokenVersion(account);
+            userRepo.save(account);
+            evictCachedUser(account.getEmail());
+            refreshTokenService.revokeAllForUser(account.getId()); // sessions end once their access token expires
+            tempUserRepository.deleteById(tempUser.getId()); // Clean up temp user
+            recordEvent(AuthEvent.PASSWORD_RESET, account.getId(), account.getEmail());
+            return account;
+        });
 
         loggers.info("Password reset successful for user: {}", user.getEmail());
     }
 
-    @Transactional
     public void changePassword(String username, String oldPassword, String newPassword) {
-        // TODO Auto-generated method stub
-        User user = userRepo.findByEmail(username)
-                .orElseThrow(() -> new RuntimeException("User not found with email: " + username));
-        if (!passwordEncoder.matches(oldPassword, user.getPasswordHash())) {
-            throw new RuntimeException("Old password is incorrect");
+        User current = transactionTemplate.execute(status -> userRepo.findByEmail(username)
+                .orElseThrow(() -> new AuthFailureException(AuthFailureException.UNKNOWN_ACCOUNT, "User not found with email: " + username)));
+        String verifiedHash = current.getPasswordHash();
+        // All three BCrypt operations go to the hashing pool as one task, outside any transaction
+        String newHash = passwordHasher.execute(encoder -> {
+            if (!encoder.matches(oldPassword, verifiedHash)) {
+                throw new AuthFailureException(AuthFailureException.BAD_CREDENTIALS, "Old password is incorrect");
+            }
+            if (encoder.matches(newPassword, verifiedHash)) {
+                throw new AuthFailureException(AuthFailureException.SAME_PASSWORD, "New password cannot be the same as the old password");
+            }
+            return encoder.encode(newPassword);
+        });
+        transactionTemplate.executeWithoutResult(status -> {
+            User user = userRepo.findById(current.getId())
+                    .orElseThrow(() -> new AuthFailureException(AuthFailureException.UNKNOWN_ACCOUNT, "User not found with email: " + username));
+            if (!verifiedHash.equals(user.getPasswordHash())) {
+                // Changed or reset since the old password was checked against it
+                throw new AuthFailureException(AuthFailureException.CONCURRENT_CHANGE, "Password was changed meanwhile, please try again");
+            }
+            user.setPasswordHash(newHash);
+            bumpTokenVersion(user);
+            userRepo.save(user);
+            evictCachedUser(username);
+            refreshTokenService.revokeAllForUser(user.getId());
+            recordEvent(AuthEvent.PASSWORD_CHANGED, user.getId(), username);
+        });
+    }
+
+    // Makes every access token issued so far stale; published only once the new version is committed
+    private void bumpTokenVersion(User user) {
+        int version = user.getTokenVersion() + 1;
+        user.setTokenVersion(version);
+        publishTokenVersion(user.getId(), version);
+    }
+
+    private void publishTokenVersion(UUID id, int version) {
+        String userId = id.toString();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    tokenVersions.recordBump(userId, version);
+                }
+            });
+        } else {
+            tokenVersions.recordBump(userId, version);
         }
-        if (passwordEncoder.matches(newPassword, user.getPasswordHash())) {
-            throw new RuntimeException("New password cannot be the same as the old password");
+    }
+
+    // Journals the event once the change is committed; a rolled back change leaves no trace
+    private void recordEvent(String type, UUID userId, String email) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    authEvents.record(type, userId, email);
+                }
+            });
+        } else {
+            authEvents.record(type, userId, email);
+        }
+    }
+
+    // Accounts live on the shard of their email; once the change is committed, follow it there if needed
+    private void rehomeAccount(UUID userId, String newEmail) {
+        ShardContext.Binding bound = ShardContext.current();
+        if (bound == null || !TransactionSynchronizationManager.isSynchronizationActive()) {
+            return; // not inside a transaction bound to the account
+        }
+        int fromShard = bound.shard();
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                shardMover.rehomeAccount(userId, newEmail, fromShard);
+            }
+        });
+    }
+
+    // Evict now and once more after commit, so a concurrent request cannot re-cache the pre-commit row
+    private void evictCachedUser(String email) {
+        userDetailsService.evict(email);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    userDetailsService.evict(email);
+                }
+            });
         }
-        user.setPasswordHash(passwordEncoder.encode(newPassword));
-        userRepo.save(user);
     }
 
     
@@ -1,32 +1,90 @@
 package com.tracemydata.service;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import com.tracemydata.repository.UserRepository;
+import com.tracemydata.util.AdminAccounts;
+import com.tracemydata.util.ExpiringLruCache;
+import com.tracemydata.util.JwtPrincipalCache;
 
 @Service
 public class CustomUserDetailsService implements UserDetailsService {
 
     private final UserRepository userRepository;
+    private final JwtPrincipalCache principalCache;
+    private final AdminAccounts adminAccounts;
 
-    public CustomUserDetailsService(UserRepository userRepository) {
+    // email -> UserDetails, bounded and short lived; AuthService evicts on every account change
+    private final ExpiringLruCache<String, UserDetails> cache;
+    private final long ttlMs;
+
+    // Lookups are read-only transactions, which go to a replica when replicas are configured
+    private final TransactionTemplate readOnly;
+    // Users changed within the last replica lag window; their reload must see the primary
+    private final ExpiringLruCache<String, Boolean> recentlyChanged;
+    private final long maxReplicaLagMs;
+
+    public CustomUserDetailsService(UserRepository userRepository, JwtPrincipalCache principalCache,
+            AdminAccounts adminAccounts, PlatformTransactionManager transactionManager,
+            @Value("${app.security.user-cache.max-entries:10000}") int maxEntries,
+            @Value("${app.security.user-cache.ttl-ms:300000}") long ttlMs,
+            @Value("${app.datasource.replicas.max-lag-ms:1000}") long maxReplicaLagMs) {
         this.userRepository = userRepository;
+        this.principalCache = principalCache;
+        this.adminAccounts = adminAccounts;
+        this.cache = new ExpiringLruCache<>(maxEntries);
+        this.ttlMs = ttlMs;
+        this.readOnly = new TransactionTemplate(transactionManager);
+        this.readOnly.setReadOnly(true);
+        this.recentlyChanged = new ExpiringLruCache<>(maxEntries);
+        this.maxReplicaLagMs = maxReplicaLagMs;
     }
 
     @Override
     public UserDetails loadUserByUsername(String email) throws UsernameNotFoundException {
+        UserDetails cached = cache.get(email);
+        if (cached != null) {
+            return cached;
+        }
+        // Outside a transaction the lookup uses the primary, so a just-changed user is not
+        // re-cached from a replica that has not replayed the change yet
+        UserDetails userDetails = recentlyChanged.get(email) != null
+                ? load(email)
+                : readOnly.execute(status -> load(email));
+        cache.put(email, userDetails, System.currentTimeMillis() + ttlMs);
+        return userDetails;
+    }
+
+    private UserDetails load(String email) {
         return userRepository.findByEmail(email)
             .map(user -> org.springframework.security.core.userdetails.User
                 .withUsername(user.getEmail())
                 .password(user.getPasswordHash()) // encoded password if applicable
-                .authorities("USER") // or pull from DB
+                .authorities(adminAccounts.authoritiesFor(user).toArray(String[]::new)) // same as the token's "roles"
                 .build())
             .orElseThrow(() -> new UsernameNotFoundException("User '" + email + "' not found"));
     }
+
+    // Forget everything cached for this user so the next request reloads it from the DB
+    public void evict(String email) {
+        if (email == null) {
+            return;
+        }
+        cache.remove(email);
+        principalCache.invalidateUser(email);
+        // Twice the allowed lag: the replica may only start replaying once the commit is done
+        recentlyChanged.put(email, Boolean.TRUE, System.currentTimeMillis() + 2 * maxReplicaLagMs);
+    }
+
+    public ExpiringLruCache<String, UserDetails> getCache() {
+        return cache;
+    }
 }
- 
-    
+
 
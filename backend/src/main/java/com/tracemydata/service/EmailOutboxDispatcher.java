@@ -0,0 +1,141 @@
+package com.tracemydata.service;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.tracemydata.model.EmailOutbox;
+import com.tracemydata.repository.EmailOutboxRepository;
+
+/**
+ * Drains the email_outbox table in batches.
+ *
+ * Rows are claimed in a short transaction (FOR UPDATE SKIP LOCKED plus a lease on
+ * next_attempt_at), sent over a single SMTP connection outside any transaction, and
+ * then deleted on success or rescheduled with exponential backoff on failure.
+ */
+@Service
+public class EmailOutboxDispatcher {
+
+    private Logger loggers = LoggerFactory.getLogger(EmailOutboxDispatcher.class);
+
+    private final EmailOutboxRepository outboxRepository;
+    private final EmailService emailService;
+    private final TransactionTemplate transactionTemplate;
+    private final ShardDirectory shardDirectory;
+
+    @Value("${app.mail.outbox.batch-size:50}")
+    private int batchSize;
+
+    @Value("${app.mail.outbox.max-attempts:8}")
+    private int maxAttempts;
+
+    @Value("${app.mail.outbox.backoff-ms:5000}")
+    private long backoffMs;
+
+    @Value("${app.mail.outbox.max-backoff-ms:3600000}")
+    private long maxBackoffMs;
+
+    // How long a claimed row stays invisible to other nodes while it is being sent
+    @Value("${app.mail.outbox.lease-ms:300000}")
+    private long leaseMs;
+
+    public EmailOutboxDispatcher(EmailOutboxRepository outboxRepository, EmailService emailService,
+            PlatformTransactionManager transactionManager, ShardDirectory shardDirectory) {
+        this.outboxRepository = outboxRepository;
+        this.emailService = emailService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.shardDirectory = shardDirectory;
+    }
+
+    // Emails are queued on the shard of the account they are about
+    @Scheduled(fixedDelayString = "${app.mail.outbox.poll-interval-ms:2000}")
+    public void dispatch() {
+        shardDirectory.forEachShard(shard -> dispatchShard());
+    }
+
+    private void dispatchShard() {
+        List<EmailOutbox> batch;
+        do {
+            batch = claimBatch();
+            if (!batch.isEmpty()) {
+                deliver(batch);
+            }
+        } while (batch.size() == batchSize);
+    }
+
+    private List<EmailOutbox> claimBatch() {
+        return transactionTemplate.execute(status -> {
+            LocalDateTime now = LocalDateTime.now();
+            List<EmailOutbox> due = outboxRepository.lockDueBatch(now, batchSize);
+            for (EmailOutbox email : due) {
+                email.setAttempts(email.getAttempts() + 1);
+                email.setNextAttemptAt(now.plus(leaseMs, ChronoUnit.MILLIS));
+            }
+            return outboxRepository.saveAll(due);
+        });
+    }
+
+    private void deliver(List<EmailOutbox> batch) {
+        Map<SimpleMailMessage, EmailOutbox> byMessage = new IdentityHashMap<>();
+        for (EmailOutbox email : batch) {
+            byMessage.put(emailService.toMessage(email), email);
+        }
+
+        Map<Object, Exception> failed;
+        try {
+            failed = emailService.sendBatch(byMessage.keySet().toArray(new SimpleMailMessage[0]));
+        } catch (Exception e) {
+            // Connection or authentication problem: the whole batch gets retried
+            loggers.warn("SMTP batch of {} failed: {}", batch.size(), e.getMessage());
+            failed = new IdentityHashMap<>();
+            for (SimpleMailMessage message : byMessage.keySet()) {
+                failed.put(message, e);
+            }
+        }
+
+        List<EmailOutbox> sent = new ArrayList<>();
+        List<EmailOutbox> retry = new ArrayList<>();
+        for (Map.Entry<SimpleMailMessage, EmailOutbox> entry : byMessage.entrySet()) {
+            EmailOutbox email = entry.getValue();
+            Exception error = failed.get(entry.getKey());
+            if (error == null) {
+                sent.add(email);
+            } else {
+                reschedule(email, error);
+                retry.add(email);
+            }
+        }
+
+        transactionTemplate.executeWithoutResult(status -> {
+            // Delivered rows hold live verification links, so they are not kept around
+            outboxRepository.deleteAllInBatch(sent);
+            outboxRepository.saveAll(retry);
+        });
+        loggers.debug("Outbox batch: {} sent, {} rescheduled", sent.size(), retry.size());
+    }
+
+    private void reschedule(EmailOutbox email, Exception error) {
+        email.setLastError(error.getMessage());
+        if (email.getAttempts() >= maxAttempts) {
+            email.setStatus(EmailOutbox.STATUS_FAILED);
+            loggers.error("Giving up on email {} to {} after {} attempts", email.getId(), email.getRecipient(), email.getAttempts());
+            return;
+        }
+        // backoff, 2x backoff, 4x backoff ... capped at max-backoff-ms
+        long delay = Math.min(maxBackoffMs, backoffMs << Math.min(email.getAttempts() - 1, 20));
+        email.setNextAttemptAt(LocalDateTime.now().plus(delay, ChronoUnit.MILLIS));
+    }
+}
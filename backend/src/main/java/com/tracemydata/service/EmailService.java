@@ -1,11 +1,25 @@
 package com.tracemydata.service;
 
+import java.util.Map;
+
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.MailSendException;
 import org.springframework.mail.SimpleMailMessage;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.stereotype.Service;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.tracing.Span;
+import io.micrometer.tracing.Tracer;
+
+import com.tracemydata.model.EmailOutbox;
+import com.tracemydata.repository.EmailOutboxRepository;
+import com.tracemydata.util.AuthJfrEvents;
+import com.tracemydata.util.ConnectionHoldTracker;
+
 @Service
 public class EmailService {
 
@@ -14,10 +28,23 @@ public class EmailService {
 
     @Value("${app.frontend.url}")
     private String frontendUrl;
-    
+
     @Autowired
     private JavaMailSender mailSender;
 
+    @Autowired
+    private EmailOutboxRepository outboxRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private ConnectionHoldTracker connectionHolds;
+
+    @Autowired
+    private ObjectProvider<Tracer> tracer; // absent when tracing is disabled
+
+    // Queued in the caller's transaction; EmailOutboxDispatcher delivers it after commit
     public void sendVerificationEmail(String to, String token) {
         String subject = "Verify your email";
         String verificationLink = frontendUrl + "/verify?token=" + token;
@@ -25,14 +52,10 @@ public class EmailService {
               "This link will expire in 24 hours.\n\n" +
               "Thanks,\n TraceMyData Team";
 
-        SimpleMailMessage message = new SimpleMailMessage();
-        message.setTo(to);
-        message.setSubject(subject);
-        message.setText(body);
-        message.setFrom(fromEmail);
-        mailSender.send(message);
+        outboxRepository.save(new EmailOutbox(to, subject, body));
     }
 
+    // Queued in the caller's transaction; EmailOutboxDispatcher delivers it after commit
     public void sendForgotPassword(String to, String token) {
         String subject = "Forgot Password  email";
         String verificationLink = frontendUrl + "/reset-password?token=" + token;
@@ -42,14 +65,67 @@ public class EmailService {
               "If you didn't request a password reset, please ignore this email.\n\n" +
               "Thanks,\n TraceMyData Team";
 
+        outboxRepository.save(new EmailOutbox(to, subject, body));
+    }
+
+    public SimpleMailMessage toMessage(EmailOutbox email) {
         SimpleMailMessage message = new SimpleMailMessage();
-        message.setTo(to);
-        message.setSubject(subject);
-        message.setText(body);
+        message.setTo(email.getRecipient());
+        message.setSubject(email.getSubject());
+        message.setText(email.getBody());
         message.setFrom(fromEmail);
-        mailSender.send(message);
+        return message;
+    }
+
+    /**
+     * Sends all messages over one SMTP connection.
+     *
+     * @return the messages that failed, mapped to their error; empty when all were sent.
+     */
+    public Map<Object, Exception> sendBatch(SimpleMailMessage... messages) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        AuthJfrEvents.EmailSend event = new AuthJfrEvents.EmailSend();
+        event.begin();
+        String outcome = "success";
+        connectionHolds.networkCall("smtp"); // the outbox sends outside transactions; this keeps it that way
+        Tracer currentTracer = tracer.getIfAvailable(() -> Tracer.NOOP);
+        // A span only: the auth.smtp.send timer below is the metric
+        Span span = currentTracer.spanBuilder().name("smtp send").kind(Span.Kind.CLIENT)
+                .tag("messaging.batch.message_count", String.valueOf(messages.length))
+                .start();
+        try (Tracer.SpanInScope scope = currentTracer.withSpan(span)) {
+            mailSender.send(messages);
+            return Map.of();
+        } catch (MailSendException e) {
+            outcome = "failure";
+            span.error(e);
+            // Partial failure: the map keys are the original SimpleMailMessage objects
+            if (!e.getFailedMessages().isEmpty()) {
+                return e.getFailedMessages();
+            }
+            throw e;
+        } catch (RuntimeException e) {
+            outcome = "failure";
+            span.error(e);
+            throw e;
+        } finally {
+            span.tag("outcome", outcome);
+            span.end();
+            sample.stop(Timer.builder("auth.smtp.send")
+                    .description("SMTP round-trip per outbox batch")
+                    .tag("outcome", outcome)
+                    .register(meterRegistry));
+            event.end();
+            if (event.shouldCommit()) {
+                event.messages = messages.length;
+                event.outcome = outcome;
+                for (SimpleMailMessage message : messages) {
+                    event.bodyBytes += message.getText() != null ? message.getText().length() : 0;
+                }
+                event.commit();
+            }
+        }
     }
 
-   
-    
+
 }
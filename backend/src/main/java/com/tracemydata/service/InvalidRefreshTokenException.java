@@ -0,0 +1,11 @@
+package com.tracemydata.service;
+
+import com.tracemydata.util.AuthFailureException;
+
+// Unknown, expired, revoked or already rotated refresh token; the client has to log in again
+public class InvalidRefreshTokenException extends AuthFailureException {
+
+    public InvalidRefreshTokenException(String message) {
+        super(INVALID_REFRESH_TOKEN, message);
+    }
+}
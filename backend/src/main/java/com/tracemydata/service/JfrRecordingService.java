@@ -0,0 +1,71 @@
+package com.tracemydata.service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+
+/**
+ * Time-boxed JDK Flight Recorder recordings on request. One recording at a time;
+ * the caller owns the returned file and deletes it once it has been sent.
+ */
+@Service
+public class JfrRecordingService {
+
+    // The two configurations every JDK ships: "default" (~1% overhead) and "profile" (more detail, ~2%)
+    public static final Set<String> SETTINGS = Set.of("default", "profile");
+
+    private Logger loggers = LoggerFactory.getLogger(JfrRecordingService.class);
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final long maxDurationSeconds;
+
+    public JfrRecordingService(@Value("${app.jfr.max-duration-seconds:300}") long maxDurationSeconds) {
+        this.maxDurationSeconds = maxDurationSeconds;
+    }
+
+    public long getMaxDurationSeconds() {
+        return maxDurationSeconds;
+    }
+
+    // Blocks for the whole duration; throws IllegalStateException while another recording runs
+    public Path record(Duration duration, String settings) throws IOException, ParseException, InterruptedException {
+        if (!SETTINGS.contains(settings)) {
+            throw new IllegalArgumentException("Unknown JFR settings: " + settings);
+        }
+        if (duration.isNegative() || duration.isZero() || duration.getSeconds() > maxDurationSeconds) {
+            throw new IllegalArgumentException("Duration must be between 1 and " + maxDurationSeconds + " seconds");
+        }
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("A JFR recording is already running");
+        }
+        Path file = Files.createTempFile("tracemydata-", ".jfr");
+        try (Recording recording = new Recording(Configuration.getConfiguration(settings))) {
+            recording.setName("tracemydata-on-demand");
+            recording.setToDisk(true);
+            recording.start();
+            loggers.info("JFR recording started: {} for {} s", settings, duration.getSeconds());
+            Thread.sleep(duration.toMillis());
+            recording.stop();
+            recording.dump(file);
+            loggers.info("JFR recording written: {} bytes", Files.size(file));
+            return file;
+        } catch (IOException | ParseException | InterruptedException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        } finally {
+            running.set(false);
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package com.tracemydata.service;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.tracemydata.model.JwtSigningKey;
+import com.tracemydata.repository.JwtSigningKeyRepository;
+import com.tracemydata.util.JwtKeyRing;
+import com.tracemydata.util.JwtKeySource;
+import com.tracemydata.util.ShardContext;
+import com.tracemydata.util.ShardKeys;
+
+/**
+ * ES256 access-token keys with scheduled rotation, shared by all instances
+ * through the jwt_signing_key table.
+ *
+ * Every rotation-period one instance (under a Postgres advisory lock) creates a
+ * new key that activates publish-ahead later; until then it is only published in
+ * the JWKS so downstream caches and the other instances pick it up before any
+ * token carries its kid. The previous key keeps verifying until the last token it
+ * signed has expired. Private keys are stored encrypted under app.jwt.secret.
+ * The keys are global, so with sharding they live on the directory shard.
+ */
+@Service
+public class JwtSigningKeyService implements JwtKeySource {
+
+    // Arbitrary but fixed: every instance must contend for the same advisory lock
+    private static final long ROTATION_LOCK_KEY = 0x6a77745f6b6579L;
+    private static final int GCM_IV_BYTES = 12;
+    private static final int GCM_TAG_BITS = 128;
+    // First start of several instances: the one holding the rotation lock commits the first key
+    // within milliseconds, the others poll for it this long instead of failing every login
+    private static final int FIRST_KEY_ATTEMPTS = 10;
+    private static final long FIRST_KEY_POLL_MS = 200;
+    private static final ShardContext.Binding KEY_SHARD =
+            new ShardContext.Binding(ShardDirectory.DIRECTORY_SHARD, ShardKeys.UNKNOWN);
+
+    private Logger loggers = LoggerFactory.getLogger(JwtSigningKeyService.class);
+
+    private final JwtSigningKeyRepository repository;
+    private final TransactionTemplate transactionTemplate;
+    private final SecretKeySpec wrappingKey;
+    private final SecureRandom random = new SecureRandom();
+    private final long rotationPeriodMs;
+    private final long publishAheadMs;
+    private final long verifyOverlapMs;
+    private final long minReloadIntervalMs;
+
+    private volatile JwtKeyRing ring;
+    private volatile long lastReloadMillis;
+    // A lock rather than synchronized: the reload does database I/O and must not pin a virtual thread's carrier
+    private final ReentrantLock reloadLock = new ReentrantLock();
+
+    public JwtSigningKeyService(JwtSigningKeyRepository repository, PlatformTransactionManager transactionManager,
+            @Value("${app.jwt.secret}") String jwtSecret,
+            @Value("${app.jwt.expirationMs:900000}") long jwtExpirationMs,
+            @Value("${app.jwt.signing.rotation-period-ms:604800000}") long rotationPeriodMs,
+            @Value("${app.jwt.signing.publish-ahead-ms:3600000}") long publishAheadMs,
+            @Value("${app.jwt.signing.clock-skew-ms:300000}") long clockSkewMs,
+            @Value("${app.jwt.signing.min-reload-interval-ms:10000}") long minReloadIntervalMs) {
+        this.repository = repository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        // Reloads can happen inside a request's transaction, which may be bound to another shard
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.wrappingKey = deriveWrappingKey(jwtSecret);
+        this.rotationPeriodMs = rotationPeriodMs;
+        this.publishAheadMs = publishAheadMs;
+        this.verifyOverlapMs = jwtExpirationMs + clockSkewMs;
+        this.minReloadIntervalMs = minReloadIntervalMs;
+    }
+
+    @Override
+    public JwtKeyRing.SigningKey signingKey() {
+        JwtKeyRing current = ring();
+        try {
+            return current.signingKey();
+        } catch (IllegalStateException e) {
+            // Nothing active in our snapshot yet (clock differences with the rotating instance)
+            return reload(current, false).signingKey();
+        }
+    }
+
+    @Override
+    public PublicKey verificationKey(String kid) {
+        JwtKeyRing current = ring();
+        PublicKey key = current.verificationKey(kid);
+        if (key == null && kid != null) {
+            // Another instance may have rotated since our last reload
+            key = reload(current, false).verificationKey(kid);
+        }
+        return key;
+    }
+
+    public JwtKeyRing ring() {
+        JwtKeyRing current = ring;
+        return current != null ? current : reload(null, true);
+    }
+
+    // Loaded on first use rather than at startup, so building the context never needs the database
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady() {
+        try {
+            maintain();
+        } catch (RuntimeException e) {
+            loggers.warn("Could not load JWT signing keys at startup, retrying on first use: {}", e.getMessage());
+        }
+    }
+
+    // Rotates when due, picks up keys rotated by other instances and purges long expired ones
+    @Scheduled(fixedDelayString = "${app.jwt.signing.check-interval-ms:60000}")
+    public void maintain() {
+        try {
+            rotateIfDue();
+            onKeyShard(status -> repository.deleteExpiredBefore(LocalDateTime.now().minusDays(1)));
+        } catch (DataAccessException e) {
+            loggers.warn("JWT signing key rotation check failed: {}", e.getMessage());
+        }
+        reload(ring, true);
+    }
+
+    private JwtKeyRing reload(JwtKeyRing seen, boolean force) {
+        reloadLock.lock();
+        try {
+            if (ring != seen) {
+                return ring; // another thread reloaded while we waited
+            }
+            // Unknown kids are attacker controlled, so they may only trigger a reload now and then
+            if (!force && System.currentTimeMillis() - lastReloadMillis < minReloadIntervalMs) {
+                return seen;
+            }
+            lastReloadMillis = System.currentTimeMillis();
+            try {
+                // Never cached empty: the next use reloads instead of failing until the next maintain()
+                ring = toRing(loadOrCreate());
+            } catch (RuntimeException e) {
+                if (seen == null) {
+                    throw e;
+                }
+                // Keep signing and verifying with the keys we have
+                loggers.warn("JWT signing key reload failed, using cached keys: {}", e.getMessage());
+                return seen;
+            }
+            if (seen == null || seen.size() != ring.size()) {
+                loggers.info("Loaded {} JWT signing key(s)", ring.size());
+            }
+            return ring;
+        } finally {
+            reloadLock.unlock();
+        }
+    }
+
+    private List<JwtSigningKey> loadOrCreate() {
+        List<JwtSigningKey> keys = onKeyShard(status -> repository.findUnexpired(LocalDateTime.now()));
+        for (int attempt = 1; keys.isEmpty(); attempt++) {
+            if (attempt > FIRST_KEY_ATTEMPTS) {
+                throw new IllegalStateException("No JWT signing key has been created yet");
+            }
+            if (attempt > 1) {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(FIRST_KEY_POLL_MS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for the first JWT signing key", e);
+                }
+            }
+            rotateIfDue(); // first start: there is nothing to sign with yet, unless another instance is creating it
+            keys = onKeyShard(status -> repository.findUnexpired(LocalDateTime.now()));
+        }
+        return keys;
+    }
+
+    private void rotateIfDue() {
+        onKeyShard(status -> {
+            if (!repository.tryAdvisoryLock(ROTATION_LOCK_KEY)) {
+                return null; // another instance is rotating right now
+            }
+            JwtSigningKey newest = repository.findFirstByOrderByCreatedAtDesc().orElse(null);
+            LocalDateTime now = LocalDateTime.now();
+            if (newest != null && newest.getCreatedAt().plusNanos(rotationPeriodMs * 1_000_000).isAfter(now)) {
+                return null;
+            }
+            // The very first key has nobody to announce itself to, so it signs straight away
+            LocalDateTime activatesAt = newest == null ? now : now.plusNanos(publishAheadMs * 1_000_000);
+            JwtSigningKey key = generate(activatesAt);
+            repository.save(key);
+            // Predecessors sign until the new key activates, then verify for one more token lifetime
+            repository.expirePredecessors(key.getKid(), activatesAt.plusNanos(verifyOverlapMs * 1_000_000));
+            loggers.info("Created JWT signing key {}, signing from {}", key.getKid(), activatesAt);
+            return key;
+        });
+    }
+
+    private <T> T onKeyShard(TransactionCallback<T> work) {
+        return ShardContext.callOn(KEY_SHARD, () -> transactionTemplate.execute(work));
+    }
+
+    private JwtSigningKey generate(LocalDateTime activatesAt) {
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+            generator.initialize(new ECGenParameterSpec("secp256r1"), random);
+            KeyPair pair = generator.generateKeyPair();
+            String kid = JwtKeyRing.thumbprint((ECPublicKey) pair.getPublic());
+            return new JwtSigningKey(kid, JwtKeyRing.ALGORITHM, pair.getPublic().getEncoded(),
+                    encrypt(pair.getPrivate().getEncoded(), kid), activatesAt);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Could not generate a JWT signing key", e);
+        }
+    }
+
+    private JwtKeyRing toRing(List<JwtSigningKey> keys) {
+        Map<String, PublicKey> verificationKeys = new HashMap<>();
+        List<JwtKeyRing.SigningKey> signingKeys = new ArrayList<>(keys.size());
+        try {
+            KeyFactory keyFactory = KeyFactory.getInstance("EC");
+            for (JwtSigningKey key : keys) {
+                verificationKeys.put(key.getKid(),
+                        keyFactory.generatePublic(new X509EncodedKeySpec(key.getPublicKey())));
+                PrivateKey privateKey = keyFactory.generatePrivate(
+                        new PKCS8EncodedKeySpec(decrypt(key.getPrivateKey(), key.getKid())));
+                signingKeys.add(new JwtKeyRing.SigningKey(key.getKid(), privateKey,
+                        key.getActivatesAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()));
+            }
+        } catch (GeneralSecurityException e) {
+            // Most likely app.jwt.secret changed since the keys were written
+            throw new IllegalStateException("Could not load JWT signing keys", e);
+        }
+        return new JwtKeyRing(verificationKeys, signingKeys);
+    }
+
+    // AES-256-GCM, IV prepended; the kid is authenticated data so a key cannot be swapped into another row
+    private byte[] encrypt(byte[] plain, String kid) throws GeneralSecurityException {
+        byte[] iv = new byte[GCM_IV_BYTES];
+        random.nextBytes(iv);
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE, wrappingKey, new GCMParameterSpec(GCM_TAG_BITS, iv));
+        cipher.updateAAD(kid.getBytes(StandardCharsets.UTF_8));
+        byte[] sealed = cipher.doFinal(plain);
+        return ByteBuffer.allocate(iv.length + sealed.length).put(iv).put(sealed).array();
+    }
+
+    private byte[] decrypt(byte[] stored, String kid) throws GeneralSecurityException {
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.DECRYPT_MODE, wrappingKey, new GCMParameterSpec(GCM_TAG_BITS, stored, 0, GCM_IV_BYTES));
+        cipher.updateAAD(kid.getBytes(StandardCharsets.UTF_8));
+        return cipher.doFinal(stored, GCM_IV_BYTES, stored.length - GCM_IV_BYTES);
+    }
+
+    // HMAC-SHA256 of a fixed label keyed by the secret, so the wrapping key is never the secret itself
+    private static SecretKeySpec deriveWrappingKey(String jwtSecret) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(jwtSecret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+            return new SecretKeySpec(mac.doFinal("tracemydata jwt signing key wrap v1".getBytes(StandardCharsets.UTF_8)), "AES");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Could not derive the JWT key wrapping key", e);
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.tracemydata.service;
+
+// Thrown when the BCrypt pool is saturated; controllers answer 503 with Retry-After
+public class PasswordHashingOverloadedException extends RuntimeException {
+
+    public PasswordHashingOverloadedException(String message) {
+        super(message);
+    }
+}
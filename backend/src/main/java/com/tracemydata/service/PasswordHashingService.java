@@ -0,0 +1,228 @@
+package com.tracemydata.service;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+
+import com.tracemydata.util.AuthJfrEvents;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.observation.annotation.Observed;
+
+/**
+ * Runs BCrypt hashing and verification on a dedicated, size-capped pool so a burst
+ * of logins cannot occupy every Tomcat worker. When the queue is full callers fail
+ * fast with {@link PasswordHashingOverloadedException} instead of waiting.
+ */
+@Service
+public class PasswordHashingService {
+
+    private Logger loggers = LoggerFactory.getLogger(PasswordHashingService.class);
+
+    private final BCryptPasswordEncoder passwordEncoder;
+    private final int strength; // BCrypt cost actually used for new hashes
+    private final ThreadPoolExecutor executor;
+    private final long timeoutMs;
+    private final Timer hashTimer;
+
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder totalHashNanos = new LongAdder();
+    private final AtomicLong maxHashNanos = new AtomicLong();
+
+    public PasswordHashingService(MeterRegistry meterRegistry,
+            @Value("${app.security.hashing.threads:0}") int threads,
+            @Value("${app.security.hashing.queue-capacity:64}") int queueCapacity,
+            @Value("${app.security.hashing.timeout-ms:5000}") long timeoutMs,
+            @Value("${app.security.bcrypt.strength:0}") int fixedStrength,
+            @Value("${app.security.bcrypt.target-ms:100}") long targetMs,
+            @Value("${app.security.bcrypt.min-strength:10}") int minStrength,
+            @Value("${app.security.bcrypt.max-strength:14}") int maxStrength) {
+        // Default to one thread per core: BCrypt is pure CPU work
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.strength = fixedStrength > 0 ? fixedStrength : calibrate(targetMs, minStrength, maxStrength);
+        this.passwordEncoder = new BCryptPasswordEncoder(strength);
+        this.timeoutMs = timeoutMs;
+        this.hashTimer = Timer.builder("auth.bcrypt")
+                .description("Time spent in BCrypt per pool task")
+                .tag("cost", String.valueOf(strength))
+                .register(meterRegistry);
+        AtomicInteger threadIds = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread t = new Thread(r, "bcrypt-" + threadIds.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        loggers.info("Password hashing pool: {} threads, queue capacity {}, cost {}", poolSize, queueCapacity, strength);
+    }
+
+    @Observed(name = "auth.password.hash", contextualName = "bcrypt encode")
+    public String encode(String rawPassword) {
+        return execute(encoder -> encoder.encode(rawPassword));
+    }
+
+    @Observed(name = "auth.password.hash", contextualName = "bcrypt matches")
+    public boolean matches(String rawPassword, String encodedPassword) {
+        return execute(encoder -> encoder.matches(rawPassword, encodedPassword));
+    }
+
+    // True when the stored hash is weaker than this node targets. Never downgrades: nodes calibrate
+    // independently, and a slower node must not undo a faster node's rehash on every login
+    public boolean needsRehash(String encodedPassword) {
+        if (encodedPassword == null || encodedPassword.length() < 7 || encodedPassword.charAt(0) != '$') {
+            return false; // not a BCrypt hash we understand, leave it alone
+        }
+        try {
+            // Format: $2a$10$<salt+hash>, the cost sits between the 2nd and 3rd '$'
+            int cost = Integer.parseInt(encodedPassword.substring(4, 6));
+            return cost < strength;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    public int getStrength() {
+        return strength;
+    }
+
+    // Pick the highest cost whose hash still fits the latency budget on this CPU
+    private int calibrate(long targetMs, int minStrength, int maxStrength) {
+        String sample = "calibration-password";
+        new BCryptPasswordEncoder(minStrength).encode(sample); // warm up the JIT
+        int chosen = minStrength;
+        for (int cost = minStrength; cost <= maxStrength; cost++) {
+            long start = System.nanoTime();
+            new BCryptPasswordEncoder(cost).encode(sample);
+            long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+            loggers.debug("BCrypt cost {} took {} ms", cost, elapsedMs);
+            if (elapsedMs > targetMs) {
+                break; // each step doubles the work, higher costs only get slower
+            }
+            chosen = cost;
+        }
+        loggers.info("BCrypt cost calibrated to {} for a {} ms budget", chosen, targetMs);
+        return chosen;
+    }
+
+    // Runs several hash operations as one queued task, e.g. verify-then-rehash in changePassword
+    @Observed(name = "auth.password.hash", contextualName = "bcrypt")
+    public <T> T execute(Function<PasswordEncoder, T> work) {
+        AuthJfrEvents.PasswordHash event = new AuthJfrEvents.PasswordHash();
+        event.begin();
+        long submitted = System.nanoTime();
+        // Written by the pool thread, read after future.get(); only needed while the event is recorded
+        long[] queueWait = event.isEnabled() ? new long[1] : null;
+        String outcome = "error";
+        try {
+            Future<T> future;
+            try {
+                future = executor.submit(() -> {
+                    long start = System.nanoTime();
+                    if (queueWait != null) {
+                        queueWait[0] = start - submitted;
+                    }
+                    try {
+                        return work.apply(passwordEncoder);
+                    } finally {
+                        recordLatency(System.nanoTime() - start);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                rejected.increment();
+                outcome = "rejected";
+                throw new PasswordHashingOverloadedException("Too many password requests, please retry shortly");
+            }
+            try {
+                T result = future.get(timeoutMs, TimeUnit.MILLISECONDS);
+                outcome = "success";
+                return result;
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                rejected.increment();
+                outcome = "timeout";
+                throw new PasswordHashingOverloadedException("Password check timed out, please retry shortly");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while hashing password", e);
+            } catch (ExecutionException e) {
+                outcome = "failed"; // e.g. the password did not match
+                if (e.getCause() instanceof RuntimeException re) {
+                    throw re;
+                }
+                throw new RuntimeException("Password hashing failed", e.getCause());
+            }
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.outcome = outcome;
+                event.queueWait = queueWait != null ? queueWait[0] : 0;
+                event.cost = strength;
+                event.commit();
+            }
+        }
+    }
+
+    private void recordLatency(long nanos) {
+        completed.increment();
+        totalHashNanos.add(nanos);
+        maxHashNanos.accumulateAndGet(nanos, Math::max);
+        hashTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    // ----- Metrics -----
+
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    public int getPoolSize() {
+        return executor.getMaximumPoolSize();
+    }
+
+    public long getCompletedCount() {
+        return completed.sum();
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    public double getAverageHashMillis() {
+        long count = completed.sum();
+        return count == 0 ? 0.0 : totalHashNanos.sum() / (count * 1_000_000.0);
+    }
+
+    public double getMaxHashMillis() {
+        return maxHashNanos.get() / 1_000_000.0;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
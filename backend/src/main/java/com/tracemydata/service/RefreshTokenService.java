@@ -0,0 +1,117 @@
+package com.tracemydata.service;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.tracemydata.model.RefreshToken;
+import com.tracemydata.model.User;
+import com.tracemydata.repository.RefreshTokenRepository;
+import com.tracemydata.repository.UserRepository;
+import com.tracemydata.util.SecureTokens;
+import com.tracemydata.util.ShardKeys;
+
+/**
+ * Opaque, one-time-use refresh tokens. Each refresh hands out a new token of the
+ * same family and marks the old one used; presenting a used token again means it
+ * was copied, so the whole family is revoked and the user has to log in again.
+ * Tokens start with the account's shard bucket, like verification tokens; an email
+ * change moves the account to another bucket, so it revokes them all.
+ */
+@Service
+public class RefreshTokenService {
+
+    private Logger loggers = LoggerFactory.getLogger(RefreshTokenService.class);
+
+    private final RefreshTokenRepository refreshTokenRepository;
+    private final UserRepository userRepo;
+    private final ShardDirectory shardDirectory;
+    private final TransactionTemplate transactionTemplate;
+
+    // Refresh token lifetime in milliseconds (default = 14 days)
+    @Value("${app.jwt.refresh-expiration-ms:1209600000}")
+    private long refreshExpirationMs;
+
+    public RefreshTokenService(RefreshTokenRepository refreshTokenRepository, UserRepository userRepo,
+            ShardDirectory shardDirectory, PlatformTransactionManager transactionManager) {
+        this.refreshTokenRepository = refreshTokenRepository;
+        this.userRepo = userRepo;
+        this.shardDirectory = shardDirectory;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    public record Rotation(User user, String refreshToken) {
+    }
+
+    // Starts a new family, i.e. a new login
+    @Transactional
+    public String issue(User user) {
+        int bucket = ShardKeys.bucketOf(user.getEmail());
+        shardDirectory.enter(bucket);
+        return issue(user.getId(), UUID.randomUUID(), bucket);
+    }
+
+    @Transactional(noRollbackFor = InvalidRefreshTokenException.class)
+    public Rotation rotate(String token) {
+        int bucket = ShardKeys.bucketOfToken(token);
+        shardDirectory.enter(bucket);
+        RefreshToken current = refreshTokenRepository.findByTokenHash(SecureTokens.hash(token))
+                .orElseThrow(() -> new InvalidRefreshTokenException("Invalid refresh token"));
+        if (current.getRevokedAt() != null || current.isExpired()) {
+            throw new InvalidRefreshTokenException("Refresh token expired");
+        }
+        if (refreshTokenRepository.markUsed(current.getId(), LocalDateTime.now()) == 0) {
+            // Already rotated (or revoked meanwhile): someone else holds a copy of this token.
+            // Kept on purpose when the exception propagates, see noRollbackFor above.
+            refreshTokenRepository.revokeFamily(current.getFamilyId(), LocalDateTime.now());
+            loggers.warn("Refresh token reuse detected for user {}, family {} revoked",
+                    current.getUserId(), current.getFamilyId());
+            throw new InvalidRefreshTokenException("Refresh token already used");
+        }
+        User user = userRepo.findById(current.getUserId())
+                .orElseThrow(() -> new InvalidRefreshTokenException("User not found"));
+        return new Rotation(user, issue(user.getId(), current.getFamilyId(), bucket));
+    }
+
+    // Logout: ends the family the token belongs to; unknown tokens are ignored
+    @Transactional
+    public void revoke(String token) {
+        shardDirectory.enter(ShardKeys.bucketOfToken(token));
+        refreshTokenRepository.findByTokenHash(SecureTokens.hash(token))
+                .ifPresent(t -> refreshTokenRepository.revokeFamily(t.getFamilyId(), LocalDateTime.now()));
+    }
+
+    // Password change/reset and email change: every session of the user has to log in again
+    @Transactional
+    public void revokeAllForUser(UUID userId) {
+        int revoked = refreshTokenRepository.revokeAllForUser(userId, LocalDateTime.now());
+        loggers.info("Revoked {} refresh tokens of user {}", revoked, userId);
+    }
+
+    // Rows are kept a day past expiry so late reuse of a rotated token is still recognised
+    @Scheduled(cron = "${app.jwt.refresh-token.cleanup.cron:0 30 * * * *}")
+    public void purgeExpired() {
+        shardDirectory.forEachShard(shard -> {
+            Integer deleted = transactionTemplate.execute(
+                    status -> refreshTokenRepository.deleteExpiredBefore(LocalDateTime.now().minusDays(1)));
+            if (deleted != null && deleted > 0) {
+                loggers.info("Deleted {} expired refresh tokens on shard {}", deleted, shard);
+            }
+        });
+    }
+
+    private String issue(UUID userId, UUID familyId, int bucket) {
+        String token = ShardKeys.prefixToken(bucket, SecureTokens.newToken());
+        LocalDateTime expiresAt = LocalDateTime.now().plusNanos(refreshExpirationMs * 1_000_000L);
+        refreshTokenRepository.save(new RefreshToken(SecureTokens.hash(token), userId, familyId, expiresAt));
+        return token;
+    }
+}
@@ -0,0 +1,306 @@
+package com.tracemydata.service;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.IntConsumer;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.tracemydata.config.ShardRoutingDataSource;
+import com.tracemydata.util.ShardContext;
+import com.tracemydata.util.ShardKeys;
+
+/**
+ * Which shard holds which bucket of accounts (ShardKeys), from the shard_bucket_map
+ * table on the first shard. Every instance keeps the whole map in memory, so routing
+ * is an array lookup, and re-reads it every refresh-interval-ms to pick up buckets
+ * moved by ShardMover.
+ *
+ * A bucket that is being moved is frozen: work for it waits here until the bucket
+ * has flipped to its new shard. With app.sharding.enabled=false there is one shard
+ * and the table is never read.
+ *
+ * The routing DataSource (ShardDataSourceConfig) is chosen when the context is built,
+ * which an AOT-processed build does at compile time; this class reads the flag at
+ * startup. Enabled without the routing DataSource, everything would silently go to
+ * shard 0, so startup fails instead.
+ */
+@Service
+public class ShardDirectory {
+
+    public static final int DIRECTORY_SHARD = 0;
+
+    private Logger loggers = LoggerFactory.getLogger(ShardDirectory.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    // Directory reads may happen inside a caller's transaction on another shard; they get their own
+    private final TransactionTemplate directoryTx;
+    private final boolean enabled;
+    private final int shardCount;
+    private final boolean evenInitialLayout;
+    private final long freezeWaitMs;
+
+    private volatile Layout layout;
+    private final ReentrantLock reloadLock = new ReentrantLock();
+
+    public ShardDirectory(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+            @Value("${app.sharding.enabled:false}") boolean enabled,
+            @Value("${app.sharding.urls:}") List<String> shardUrls,
+            @Value("${app.sharding.initial-layout:single}") String initialLayout,
+            @Value("${app.sharding.freeze-wait-ms:15000}") long freezeWaitMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.directoryTx = new TransactionTemplate(transactionManager);
+        this.directoryTx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.enabled = enabled;
+        // The configured datasource is shard 0, app.sharding.urls are the shards after it
+        this.shardCount = enabled ? 1 + (int) shardUrls.stream().filter(url -> !url.isBlank()).count() : 1;
+        this.evenInitialLayout = "even".equals(initialLayout);
+        this.freezeWaitMs = freezeWaitMs;
+        if (enabled && !routesShards(jdbcTemplate.getDataSource())) {
+            throw new IllegalStateException("app.sharding.enabled=true but the DataSource is not the shard-routing "
+                    + "one; an AOT (fast-startup) build fixes that when it is built, so build it with sharding enabled");
+        }
+        if (!enabled) {
+            this.layout = new Layout(new int[ShardKeys.BUCKETS], new boolean[ShardKeys.BUCKETS]);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    // Where work for this bucket goes; waits while the bucket is frozen for a move
+    public ShardContext.Binding bindingFor(int bucket) {
+        if (bucket == ShardKeys.UNKNOWN) {
+            return new ShardContext.Binding(DIRECTORY_SHARD, ShardKeys.UNKNOWN); // data from before sharding
+        }
+        Layout current = layout();
+        if (current.frozen()[bucket]) {
+            current = awaitUnfrozen(bucket);
+        }
+        return new ShardContext.Binding(current.shardOf()[bucket], bucket);
+    }
+
+    /**
+     * Binds the current transaction to the bucket's shard, before its first statement.
+     * Everything the transaction touches afterwards must live there too; asking for a
+     * different shard within it is a bug and fails. Outside a transaction this only
+     * checks the bucket; the caller wraps the work in ShardContext.callOn().
+     */
+    public ShardContext.Binding enter(int bucket) {
+        ShardContext.Binding target = bindingFor(bucket);
+        ShardContext.Binding current = ShardContext.current();
+        if (current == null) {
+            if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                ShardContext.bind(target);
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCompletion(int status) {
+                        ShardContext.clear();
+                    }
+                });
+            }
+            return target;
+        }
+        if (current.shard() != target.shard()) {
+            throw new IllegalStateException("Work bound to shard " + current.shard()
+                    + " cannot also use shard " + target.shard() + " (bucket " + bucket + ")");
+        }
+        return current;
+    }
+
+    // Runs the work once per shard with that shard bound (background jobs, exports)
+    public void forEachShard(IntConsumer work) {
+        for (int shard = 0; shard < shardCount; shard++) {
+            int index = shard;
+            ShardContext.runOn(new ShardContext.Binding(shard, ShardKeys.UNKNOWN), () -> work.accept(index));
+        }
+    }
+
+    public int shardOf(int bucket) {
+        return layout().shardOf()[bucket];
+    }
+
+    // Buckets per shard, for the admin layout view and metrics
+    public int[] bucketCounts() {
+        int[] counts = new int[shardCount];
+        for (int shard : layout().shardOf()) {
+            if (shard < shardCount) {
+                counts[shard]++;
+            }
+        }
+        return counts;
+    }
+
+    public int getFrozenCount() {
+        int frozen = 0;
+        for (boolean f : layout().frozen()) {
+            frozen += f ? 1 : 0;
+        }
+        return frozen;
+    }
+
+    // Contiguous [first, last, shard, frozen] runs of the map
+    public List<int[]> ranges() {
+        Layout current = layout();
+        List<int[]> ranges = new ArrayList<>();
+        int start = 0;
+        for (int bucket = 1; bucket <= ShardKeys.BUCKETS; bucket++) {
+            if (bucket == ShardKeys.BUCKETS || current.shardOf()[bucket] != current.shardOf()[start]
+                    || current.frozen()[bucket] != current.frozen()[start]) {
+                ranges.add(new int[] { start, bucket - 1, current.shardOf()[start], current.frozen()[start] ? 1 : 0 });
+                start = bucket;
+            }
+        }
+        return ranges;
+    }
+
+    // ShardMover: stop routing work to the bucket; instances notice within one refresh interval
+    public void freeze(int bucket) {
+        onDirectory(() -> jdbcTemplate.update("UPDATE shard_bucket_map SET frozen_at = now() WHERE bucket = ?", bucket));
+        reload();
+    }
+
+    // ShardMover: the bucket lives on its new shard from now on
+    public void assign(int bucket, int shard) {
+        onDirectory(() -> jdbcTemplate.update("UPDATE shard_bucket_map SET shard = ?, frozen_at = NULL WHERE bucket = ?",
+                shard, bucket));
+        reload();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady() {
+        if (enabled) {
+            try {
+                reload();
+                loggers.info("Sharding across {} shards, buckets per shard: {}", shardCount,
+                        Arrays.toString(bucketCounts()));
+            } catch (RuntimeException e) {
+                loggers.warn("Could not load the shard map at startup, retrying on first use: {}", e.getMessage());
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.sharding.refresh-interval-ms:1000}")
+    public void refresh() {
+        if (enabled) {
+            try {
+                reload();
+            } catch (DataAccessException e) {
+                loggers.warn("Shard map refresh failed, keeping the previous map: {}", e.getMessage());
+            }
+        }
+    }
+
+    private Layout layout() {
+        Layout current = layout;
+        return current != null ? current : reload();
+    }
+
+    private Layout reload() {
+        reloadLock.lock();
+        try {
+            Layout loaded = onDirectory(this::load);
+            if (loaded == null) {
+                seed();
+                loaded = onDirectory(this::load);
+            }
+            layout = loaded;
+            return loaded;
+        } finally {
+            reloadLock.unlock();
+        }
+    }
+
+    private Layout load() {
+        int[] shardOf = new int[ShardKeys.BUCKETS];
+        boolean[] frozen = new boolean[ShardKeys.BUCKETS];
+        int[] rows = { 0 };
+        jdbcTemplate.query("SELECT bucket, shard, frozen_at IS NOT NULL AS frozen FROM shard_bucket_map", rs -> {
+            int bucket = rs.getInt("bucket");
+            int shard = rs.getInt("shard");
+            if (shard >= shardCount) {
+                throw new IllegalStateException("Bucket " + bucket + " is mapped to shard " + shard
+                        + " but only " + shardCount + " shards are configured");
+            }
+            shardOf[bucket] = shard;
+            frozen[bucket] = rs.getBoolean("frozen");
+            rows[0]++;
+        });
+        return rows[0] == ShardKeys.BUCKETS ? new Layout(shardOf, frozen) : null;
+    }
+
+    // First start with sharding: everything on shard 0 (where existing data is), or spread evenly
+    private void seed() {
+        int spread = evenInitialLayout ? shardCount : 1;
+        onDirectory(() -> jdbcTemplate.update("INSERT INTO shard_bucket_map (bucket, shard) "
+                + "SELECT b, (b * ?) / ? FROM generate_series(0, ? - 1) b ON CONFLICT (bucket) DO NOTHING",
+                spread, ShardKeys.BUCKETS, ShardKeys.BUCKETS));
+        loggers.info("Seeded the shard map: {} buckets over {} shard(s)", ShardKeys.BUCKETS, spread);
+    }
+
+    private Layout awaitUnfrozen(int bucket) {
+        long deadline = System.currentTimeMillis() + freezeWaitMs;
+        while (System.currentTimeMillis() < deadline) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            // One waiting thread re-reads the map, the others see its result
+            Layout current = reloadLock.tryLock() ? reloadHeld() : layout;
+            if (!current.frozen()[bucket]) {
+                return current;
+            }
+        }
+        throw new IllegalStateException("Account data is being moved between shards, please retry shortly");
+    }
+
+    private Layout reloadHeld() {
+        try {
+            return reload();
+        } finally {
+            reloadLock.unlock();
+        }
+    }
+
+    private static boolean routesShards(DataSource dataSource) {
+        try {
+            return dataSource != null && dataSource.isWrapperFor(ShardRoutingDataSource.class);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private <T> T onDirectory(java.util.function.Supplier<T> work) {
+        return ShardContext.callOn(new ShardContext.Binding(DIRECTORY_SHARD, ShardKeys.UNKNOWN),
+                () -> directoryTx.execute(status -> work.get()));
+    }
+
+    private record Layout(int[] shardOf, boolean[] frozen) {
+    }
+}
@@ -0,0 +1,383 @@
+package com.tracemydata.service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.tracemydata.util.ShardContext;
+import com.tracemydata.util.ShardKeys;
+
+/**
+ * Online resharding: moves a range of buckets to another shard while the service
+ * keeps running, one bucket at a time.
+ *
+ * For each bucket: freeze it in the shard map, wait until every instance has seen
+ * the freeze and work already bound to the bucket has finished, copy its accounts
+ * (with their pending registrations, verification and refresh tokens and auth
+ * events) in one transaction on the target, flip the bucket to the target, then
+ * delete it from the source. Requests for a frozen bucket wait in ShardDirectory for
+ * the few seconds this takes. A failed copy leaves the bucket on its source.
+ *
+ * The wait is only a bound on how long a late transaction may take, so the source is
+ * fingerprinted around each copy (copied again while it changes) and once more under
+ * row locks before the purge; rows written after the flip are kept, not deleted.
+ *
+ * Queued outbox emails stay where they were written and are still delivered.
+ */
+@Service
+public class ShardMover {
+
+    private static final String USER_COLUMNS = "id, first_name, last_name, email, password_hash, auth_provider, "
+            + "created_at, token_version";
+    private static final String TEMP_USER_COLUMNS = "first_name, last_name, email, password, created_at, expired_at, "
+            + "user_id";
+    private static final String REFRESH_TOKEN_COLUMNS = "token_hash, user_id, family_id, expires_at, used_at, "
+            + "revoked_at, created_at";
+    private static final String AUTH_EVENT_COLUMNS = "user_id, event_type, email, ip, user_agent, occurred_at";
+    private static final int EVENT_PAGE = 1000;
+    private static final int COPY_ATTEMPTS = 3;
+
+    private Logger loggers = LoggerFactory.getLogger(ShardMover.class);
+
+    private final ShardDirectory directory;
+    private final JdbcTemplate jdbcTemplate;
+    // Own transactions throughout: rehoming runs from an afterCommit callback
+    private final TransactionTemplate transactionTemplate;
+    private final long settleMs;
+
+    private volatile Move current;
+
+    public ShardMover(ShardDirectory directory, JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+            @Value("${app.sharding.refresh-interval-ms:1000}") long refreshIntervalMs,
+            @Value("${app.sharding.move-grace-ms:2000}") long graceMs) {
+        this.directory = directory;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        // Two refreshes so every instance has re-read the map, plus time for in-flight transactions
+        this.settleMs = 2 * refreshIntervalMs + graceMs;
+    }
+
+    public record Move(int fromBucket, int toBucket, int shard, int bucket, int bucketsMoved, long accountsMoved,
+            String state, String error, LocalDateTime startedAt, LocalDateTime finishedAt) {
+
+        Move next(int bucket, int moved, long accounts) {
+            return new Move(fromBucket, toBucket, shard, bucket, moved, accounts, "RUNNING", null, startedAt, null);
+        }
+
+        Move finish(String state, String error) {
+            return new Move(fromBucket, toBucket, shard, bucket, bucketsMoved, accountsMoved, state, error, startedAt,
+                    LocalDateTime.now());
+        }
+    }
+
+    // The running or last finished move, null before the first one
+    public Move getCurrent() {
+        return current;
+    }
+
+    // Starts moving buckets fromBucket..toBucket (inclusive) to the shard in the background
+    public synchronized Move start(int fromBucket, int toBucket, int shard) {
+        if (!directory.isEnabled()) {
+            throw new IllegalStateException("Sharding is not enabled");
+        }
+        if (fromBucket < 0 || toBucket >= ShardKeys.BUCKETS || fromBucket > toBucket) {
+            throw new IllegalArgumentException("Buckets must satisfy 0 <= from <= to < " + ShardKeys.BUCKETS);
+        }
+        if (shard < 0 || shard >= directory.getShardCount()) {
+            throw new IllegalArgumentException("Shard must be between 0 and " + (directory.getShardCount() - 1));
+        }
+        if (current != null && "RUNNING".equals(current.state())) {
+            throw new IllegalStateException("A move is already running: buckets " + current.fromBucket() + "-"
+                    + current.toBucket() + " to shard " + current.shard());
+        }
+        Move move = new Move(fromBucket, toBucket, shard, fromBucket, 0, 0, "RUNNING", null, LocalDateTime.now(), null);
+        current = move;
+        Thread.ofPlatform().daemon().name("shard-mover").start(() -> run(move));
+        return move;
+    }
+
+    private void run(Move move) {
+        loggers.info("Moving buckets {}-{} to shard {}", move.fromBucket(), move.toBucket(), move.shard());
+        int moved = 0;
+        long accounts = 0;
+        try {
+            for (int bucket = move.fromBucket(); bucket <= move.toBucket(); bucket++) {
+                current = current.next(bucket, moved, accounts);
+                if (directory.shardOf(bucket) != move.shard()) {
+                    accounts += moveBucket(bucket, move.shard());
+                    moved++;
+                }
+            }
+            current = current.next(move.toBucket(), moved, accounts).finish("DONE", null);
+            loggers.info("Moved {} bucket(s), {} account(s) to shard {}", moved, accounts, move.shard());
+        } catch (RuntimeException e) {
+            current = current.finish("FAILED", e.getMessage());
+            loggers.error("Shard move stopped at bucket {}: {}", current.bucket(), e.getMessage(), e);
+        }
+    }
+
+    private long moveBucket(int bucket, int target) {
+        int source = directory.shardOf(bucket);
+        Selection selection = new Selection("user_bucket(email) = ?", bucket, bucket);
+        directory.freeze(bucket);
+        long accounts;
+        String copied;
+        try {
+            sleep(settleMs);
+            // The settle time is a guess: a transaction bound before the freeze can still be writing.
+            // Copy again while the source keeps changing, give up (and unfreeze) if it does not stop.
+            for (int attempt = 1; ; attempt++) {
+                copied = onShard(source, () -> fingerprint(selection));
+                accounts = copy(source, target, selection);
+                if (copied.equals(onShard(source, () -> fingerprint(selection)))) {
+                    break;
+                }
+                if (attempt == COPY_ATTEMPTS) {
+                    throw new IllegalStateException("Bucket " + bucket + " kept changing on shard " + source
+                            + " while frozen");
+                }
+                loggers.warn("Bucket {} changed on shard {} while frozen, copying again", bucket, source);
+                sleep(settleMs);
+            }
+        } catch (RuntimeException e) {
+            directory.assign(bucket, source); // stays where it was
+            purgeQuietly(target, selection, bucket);
+            throw e;
+        }
+        directory.assign(bucket, target);
+        // A write that still lands on the source after the flip would be deleted with it: keep the source rows
+        if (!purgeIfUnchanged(source, selection, copied)) {
+            throw new IllegalStateException("Bucket " + bucket + " was written on shard " + source
+                    + " after it moved to shard " + target + "; its source rows were kept for reconciliation");
+        }
+        loggers.debug("Bucket {} moved from shard {} to shard {} ({} accounts)", bucket, source, target, accounts);
+        return accounts;
+    }
+
+    private void purgeQuietly(int shard, Selection selection, int bucket) {
+        try {
+            purge(shard, selection);
+        } catch (RuntimeException cleanup) {
+            loggers.error("Could not remove the partial copy of bucket {} from shard {}: {}", bucket, shard,
+                    cleanup.getMessage());
+        }
+    }
+
+    /**
+     * Moves one account to the shard of its new email after an email change, when
+     * the old and new address hash to different shards. Requests already go there by
+     * the new email; until this finishes they do not find the account yet.
+     *
+     * Nothing is frozen for a single account, so requests by id can still write to it
+     * on the source while it is copied. The purge therefore locks the account row and
+     * only deletes when the source is unchanged since the copy began; otherwise the
+     * copy is redone.
+     */
+    public void rehomeAccount(UUID userId, String newEmail, int fromShard) {
+        int target = directory.bindingFor(ShardKeys.bucketOf(newEmail)).shard();
+        if (target == fromShard) {
+            return;
+        }
+        Selection selection = new Selection("id = ?", userId, null);
+        try {
+            for (int attempt = 1; ; attempt++) {
+                String copied = onShard(fromShard, () -> fingerprint(selection));
+                copy(fromShard, target, selection);
+                if (purgeIfUnchanged(fromShard, selection, copied)) {
+                    break;
+                }
+                if (attempt == COPY_ATTEMPTS) {
+                    throw new IllegalStateException("Account kept changing while it was copied");
+                }
+                loggers.debug("Account {} changed on shard {} while it was copied, copying again", userId, fromShard);
+            }
+            loggers.info("Moved account {} from shard {} to shard {} after an email change", userId, fromShard, target);
+        } catch (RuntimeException e) {
+            // Still complete on the source, and found there by id; a stale copy must not be found by email
+            loggers.error("Could not move account {} to shard {}: {}", userId, target, e.getMessage(), e);
+            try {
+                purge(target, selection);
+            } catch (RuntimeException cleanup) {
+                loggers.error("Could not remove the partial copy of account {} from shard {}: {}", userId, target,
+                        cleanup.getMessage());
+            }
+        }
+    }
+
+    // Deletes the selection from the shard unless it changed since the fingerprint was taken
+    private boolean purgeIfUnchanged(int shard, Selection selection, String copied) {
+        return onShard(shard, () -> {
+            // Updates of the account and new rows referencing it (refresh tokens, pending changes) wait
+            // for this lock, then find the account gone. Auth events carry no foreign key and are only
+            // compared; one written between the check and the delete is lost with the source rows.
+            jdbcTemplate.queryForList("SELECT id FROM users WHERE " + selection.users() + " FOR UPDATE",
+                    selection.key());
+            if (!copied.equals(fingerprint(selection))) {
+                return false;
+            }
+            purgeHere(selection);
+            return true;
+        });
+    }
+
+    // Digest of everything copy() moves for the selection, to tell whether it changed in between
+    private String fingerprint(Selection selection) {
+        Object[] args = new Object[selection.pendingArgs().length + 3];
+        args[0] = selection.key();
+        System.arraycopy(selection.pendingArgs(), 0, args, 1, selection.pendingArgs().length);
+        args[args.length - 2] = selection.key();
+        args[args.length - 1] = selection.key();
+        return jdbcTemplate.queryForObject("SELECT concat_ws('|', "
+                + "(SELECT md5(string_agg(u::text, ',' ORDER BY u.id)) FROM users u WHERE " + selection.users() + "), "
+                + "(SELECT md5(string_agg(t::text || coalesce(v::text, ''), ',' ORDER BY t.id)) FROM temp_user t "
+                + "LEFT JOIN verification_token v ON v.temp_user_id = t.id WHERE " + selection.pendingOf("t.") + "), "
+                + "(SELECT md5(string_agg(r::text, ',' ORDER BY r.id)) FROM refresh_token r WHERE "
+                + selection.owned() + "), "
+                + "(SELECT count(*) || ':' || coalesce(max(id), 0) FROM auth_event WHERE " + selection.owned() + "))",
+                String.class, args);
+    }
+
+    private long copy(int source, int target, Selection selection) {
+        List<Map<String, Object>> users = onShard(source, () -> jdbcTemplate.queryForList(
+                "SELECT " + USER_COLUMNS + " FROM users WHERE " + selection.users(), selection.key()));
+        List<Map<String, Object>> pending = onShard(source, () -> jdbcTemplate.queryForList(
+                "SELECT " + prefixed("t.", TEMP_USER_COLUMNS) + ", v.token_hash, v.purpose, "
+                        + "v.created_at AS token_created_at, v.expires_at AS token_expires_at "
+                        + "FROM temp_user t LEFT JOIN verification_token v ON v.temp_user_id = t.id "
+                        + "WHERE " + selection.pendingOf("t."), selection.pendingArgs()));
+        List<Map<String, Object>> refreshTokens = onShard(source, () -> jdbcTemplate.queryForList(
+                "SELECT " + REFRESH_TOKEN_COLUMNS + " FROM refresh_token WHERE " + selection.owned(),
+                selection.key()));
+
+        onShard(target, () -> {
+            purgeHere(selection); // leftovers of an interrupted earlier attempt
+            jdbcTemplate.batchUpdate("INSERT INTO users (" + USER_COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?)",
+                    rows(users, USER_COLUMNS));
+            for (Map<String, Object> row : pending) {
+                // New identity value on the target; the token row follows it
+                Long id = jdbcTemplate.queryForObject("INSERT INTO temp_user (" + TEMP_USER_COLUMNS + ") "
+                        + "VALUES (?, ?, ?, ?, ?, ?, ?) RETURNING id", Long.class, values(row, TEMP_USER_COLUMNS));
+                if (row.get("token_hash") != null) {
+                    jdbcTemplate.update("INSERT INTO verification_token (temp_user_id, token_hash, purpose, "
+                            + "created_at, expires_at) VALUES (?, ?, ?, ?, ?)", id, row.get("token_hash"),
+                            row.get("purpose"), row.get("token_created_at"), row.get("token_expires_at"));
+                }
+            }
+            jdbcTemplate.batchUpdate("INSERT INTO refresh_token (" + REFRESH_TOKEN_COLUMNS + ") "
+                    + "VALUES (?, ?, ?, ?, ?, ?, ?)", rows(refreshTokens, REFRESH_TOKEN_COLUMNS));
+            copyAuthEvents(source, selection);
+            return null;
+        });
+        return users.size();
+    }
+
+    // Keyset pages in partition-key order, so a heavy history never sits in memory at once
+    private void copyAuthEvents(int source, Selection selection) {
+        Object afterOccurredAt = LocalDateTime.of(1970, 1, 1, 0, 0);
+        Object afterId = 0L;
+        while (true) {
+            Object occurredAt = afterOccurredAt;
+            Object id = afterId;
+            List<Map<String, Object>> page = onShard(source, () -> jdbcTemplate.queryForList(
+                    "SELECT id, " + AUTH_EVENT_COLUMNS + " FROM auth_event WHERE " + selection.owned()
+                            + " AND (occurred_at, id) > (?, ?) ORDER BY occurred_at, id LIMIT " + EVENT_PAGE,
+                    selection.key(), occurredAt, id));
+            if (page.isEmpty()) {
+                return;
+            }
+            jdbcTemplate.batchUpdate("INSERT INTO auth_event (" + AUTH_EVENT_COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?)",
+                    rows(page, AUTH_EVENT_COLUMNS));
+            Map<String, Object> last = page.get(page.size() - 1);
+            afterOccurredAt = last.get("occurred_at");
+            afterId = last.get("id");
+            if (page.size() < EVENT_PAGE) {
+                return;
+            }
+        }
+    }
+
+    private void purge(int shard, Selection selection) {
+        onShard(shard, () -> {
+            purgeHere(selection);
+            return null;
+        });
+    }
+
+    // Refresh and verification tokens go with their users and temp_user rows (ON DELETE CASCADE)
+    private void purgeHere(Selection selection) {
+        jdbcTemplate.update("DELETE FROM auth_event WHERE " + selection.owned(), selection.key());
+        jdbcTemplate.update("DELETE FROM temp_user WHERE " + selection.pendingOf(""), selection.pendingArgs());
+        jdbcTemplate.update("DELETE FROM users WHERE " + selection.users(), selection.key());
+    }
+
+    private <T> T onShard(int shard, Supplier<T> work) {
+        return ShardContext.callOn(new ShardContext.Binding(shard, ShardKeys.UNKNOWN),
+                () -> transactionTemplate.execute(status -> work.get()));
+    }
+
+    private static List<Object[]> rows(List<Map<String, Object>> rows, String columns) {
+        List<Object[]> values = new ArrayList<>(rows.size());
+        for (Map<String, Object> row : rows) {
+            values.add(values(row, columns));
+        }
+        return values;
+    }
+
+    private static Object[] values(Map<String, Object> row, String columns) {
+        String[] names = columns.split(", ");
+        Object[] values = new Object[names.length];
+        for (int i = 0; i < names.length; i++) {
+            values[i] = row.get(names[i]);
+        }
+        return values;
+    }
+
+    private static String prefixed(String alias, String columns) {
+        return alias + columns.replace(", ", ", " + alias);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Shard move interrupted", e);
+        }
+    }
+
+    /**
+     * The accounts being moved: a WHERE clause on users with its one argument, and for
+     * a whole bucket also the pending registrations of emails in it (temp_user rows
+     * without a user_id are placed by their own email).
+     */
+    private record Selection(String users, Object key, Integer bucket) {
+
+        String owned() {
+            return "user_id IN (SELECT id FROM users WHERE " + users + ")";
+        }
+
+        String pendingOf(String alias) {
+            String owned = alias + owned();
+            return bucket == null ? owned
+                    : "(" + owned + " OR (" + alias + "user_id IS NULL AND user_bucket(" + alias + "email) = ?))";
+        }
+
+        Object[] pendingArgs() {
+            return bucket == null ? new Object[] { key } : new Object[] { key, bucket };
+        }
+    }
+}
@@ -2,16 +2,20 @@ package com.tracemydata.service;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.transaction.annotation.Propagation;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import com.tracemydata.model.TempUser;
 import com.tracemydata.repository.TempUserRepository;
-
-import org.springframework.transaction.annotation.Transactional;
+import com.tracemydata.repository.TempUserRepository.ExpiredRow;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 @Service
@@ -19,21 +23,122 @@ public class TempUserCleanupJob {
 
     private Logger logger = LoggerFactory.getLogger(TempUserCleanupJob.class);
 
+    // Cursor start for the first page; older than any real expiry
+    private static final LocalDateTime CURSOR_START = LocalDateTime.of(1970, 1, 1, 0, 0);
 
     private final TempUserRepository tempUserRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ShardDirectory shardDirectory;
+
+    @Value("${app.temp-user.cleanup.batch-size:500}")
+    private int batchSize;
+
+    // Gives other writers a chance at the table between batches
+    @Value("${app.temp-user.cleanup.pause-ms:50}")
+    private long pauseMs;
 
-    public TempUserCleanupJob(TempUserRepository tempUserRepository) {
+    // Per-run metrics of the last completed purge
+    private final AtomicLong lastRunDeleted = new AtomicLong();
+    private final AtomicLong lastRunBatches = new AtomicLong();
+    private final AtomicLong lastRunDurationMs = new AtomicLong();
+    private final AtomicLong totalDeleted = new AtomicLong();
+
+    public TempUserCleanupJob(TempUserRepository tempUserRepository, PlatformTransactionManager transactionManager,
+            ShardDirectory shardDirectory) {
         this.tempUserRepository = tempUserRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.shardDirectory = shardDirectory;
     }
 
     // Runs every hour (can change to once a day if preferred)
-    @Scheduled(cron = "0 0 * * * *") // At minute 0 of every hour
-    @Transactional
+    @Scheduled(cron = "${app.temp-user.cleanup.cron:0 0 * * * *}") // At minute 0 of every hour
     public void deleteExpiredTempUsers() {
-        LocalDateTime now = LocalDateTime.now();
-        tempUserRepository.deleteByExpiresAtBefore(now);
-        logger.info("Deleted expired temp users at: " + now);
+        long start = System.currentTimeMillis();
+        LocalDateTime cutoff = LocalDateTime.now();
+        long[] totals = new long[2]; // deleted, batches
+        shardDirectory.forEachShard(shard -> {
+            long[] run = purgeShard(cutoff);
+            totals[0] += run[0];
+            totals[1] += run[1];
+        });
+        long deleted = totals[0];
+        long batches = totals[1];
+
+        long duration = System.currentTimeMillis() - start;
+        lastRunDeleted.set(deleted);
+        lastRunBatches.set(batches);
+        lastRunDurationMs.set(duration);
+        totalDeleted.addAndGet(deleted);
+        logger.info("Deleted {} expired temp users in {} batches ({} ms)", deleted, batches, duration);
     }
 
-    
+    // Walks the expired rows of the bound shard; returns {deleted, batches}
+    private long[] purgeShard(LocalDateTime cutoff) {
+        LocalDateTime afterExpiresAt = CURSOR_START;
+        Long afterId = 0L;
+        long deleted = 0;
+        int batches = 0;
+
+        while (true) {
+            // Each batch is its own short transaction, so row locks are held for one batch only
+            LocalDateTime cursorExpiresAt = afterExpiresAt;
+            Long cursorId = afterId;
+            List<ExpiredRow> rows = transactionTemplate.execute(status -> {
+                List<ExpiredRow> page = tempUserRepository.findExpiredAfter(
+                        cutoff, cursorExpiresAt, cursorId, PageRequest.of(0, batchSize));
+                if (!page.isEmpty()) {
+                    List<Long> ids = new ArrayList<>(page.size());
+                    for (ExpiredRow row : page) {
+                        ids.add(row.getId());
+                    }
+                    tempUserRepository.deleteAllByIdIn(ids);
+                }
+                return page;
+            });
+            if (rows == null || rows.isEmpty()) {
+                break;
+            }
+            batches++;
+            deleted += rows.size();
+            ExpiredRow last = rows.get(rows.size() - 1);
+            afterExpiresAt = last.getExpiresAt();
+            afterId = last.getId();
+            if (rows.size() < batchSize) {
+                break;
+            }
+            if (!pause()) {
+                break;
+            }
+        }
+        return new long[] { deleted, batches };
+    }
+
+    private boolean pause() {
+        if (pauseMs <= 0) {
+            return true;
+        }
+        try {
+            Thread.sleep(pauseMs);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    public long getLastRunDeleted() {
+        return lastRunDeleted.get();
+    }
+
+    public long getLastRunBatches() {
+        return lastRunBatches.get();
+    }
+
+    public long getLastRunDurationMs() {
+        return lastRunDurationMs.get();
+    }
+
+    public long getTotalDeleted() {
+        return totalDeleted.get();
+    }
 }
@@ -0,0 +1,458 @@
+package com.tracemydata.service;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.tracemydata.dto.UserImportReport;
+import com.tracemydata.dto.UserTransferRecord;
+import com.tracemydata.model.User;
+import com.tracemydata.repository.UserRepository;
+import com.tracemydata.util.CsvRecords;
+import com.tracemydata.util.RecordTooLongException;
+import com.tracemydata.util.ShardContext;
+import com.tracemydata.util.ShardKeys;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+/**
+ * Bulk account import and export for tenant migrations, as NDJSON or CSV.
+ *
+ * Both directions stream: export walks a server-side cursor and writes each user
+ * as it arrives, import parses one row at a time and inserts batches with a
+ * single unnest() statement each. Memory stays flat whatever the row count.
+ * Passwords travel as BCrypt hashes; nothing is hashed or emailed here. With
+ * sharding, export walks the shards one after another and import batches are
+ * split by the shard of each email.
+ */
+@Service
+public class UserBulkService {
+
+    public static final Set<String> FORMATS = Set.of("ndjson", "csv");
+
+    private static final String[] CSV_COLUMNS = { "id", "email", "first_name", "last_name", "auth_provider", "password_hash",
+            "created_at" };
+
+    private static final Set<String> AUTH_PROVIDERS = Set.of("local", "google", "outlook");
+    private static final Pattern BCRYPT_HASH = Pattern.compile("^\\$2[aby]?\\$\\d{2}\\$[./A-Za-z0-9]{53}$");
+    private static final Pattern EMAIL = Pattern.compile("^[^@\\s]+@[^@\\s]+\\.[^@\\s]+$");
+
+    // ON CONFLICT DO NOTHING covers both a taken email and a taken id; RETURNING tells which rows went in
+    private static final String INSERT_SQL = "INSERT INTO users (id, email, first_name, last_name, password_hash, "
+            + "auth_provider, created_at, token_version) "
+            + "SELECT t.id, t.email, t.first_name, t.last_name, t.password_hash, t.auth_provider, t.created_at, 0 "
+            + "FROM unnest(?::uuid[], ?::varchar[], ?::varchar[], ?::varchar[], ?::text[], ?::varchar[], ?::timestamp[]) "
+            + "AS t(id, email, first_name, last_name, password_hash, auth_provider, created_at) "
+            + "ON CONFLICT DO NOTHING RETURNING email";
+
+    private Logger loggers = LoggerFactory.getLogger(UserBulkService.class);
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final UserRepository userRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final ShardDirectory shardDirectory;
+    private final TransactionTemplate readOnlyTx;
+    private final ObjectReader recordReader;
+    private final ObjectWriter recordWriter;
+    private final int batchSize;
+    private final int maxReportedErrors;
+    private final int maxFieldLength;
+    private final int maxFields;
+    private final int maxLineLength;
+
+    public UserBulkService(UserRepository userRepository, JdbcTemplate jdbcTemplate, ObjectMapper objectMapper,
+            ShardDirectory shardDirectory, PlatformTransactionManager transactionManager,
+            @Value("${app.admin.import.batch-size:1000}") int batchSize,
+            @Value("${app.admin.import.max-reported-errors:1000}") int maxReportedErrors,
+            @Value("${app.admin.import.max-field-length:1024}") int maxFieldLength,
+            @Value("${app.admin.import.max-fields:64}") int maxFields,
+            @Value("${app.admin.import.max-line-length:8192}") int maxLineLength) {
+        this.userRepository = userRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.shardDirectory = shardDirectory;
+        this.readOnlyTx = new TransactionTemplate(transactionManager);
+        this.readOnlyTx.setReadOnly(true);
+        this.recordReader = objectMapper.readerFor(UserTransferRecord.class);
+        this.recordWriter = objectMapper.writerFor(UserTransferRecord.class);
+        this.batchSize = batchSize;
+        this.maxReportedErrors = maxReportedErrors;
+        this.maxFieldLength = maxFieldLength;
+        this.maxFields = maxFields;
+        this.maxLineLength = maxLineLength;
+    }
+
+    public long export(String format, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+        boolean csv = "csv".equals(format);
+        if (csv) {
+            writer.write(CsvRecords.format((Object[]) CSV_COLUMNS));
+        }
+        long[] count = { 0 };
+        try {
+            shardDirectory.forEachShard(shard -> count[0] += readOnlyTx.execute(status -> exportShard(writer, csv)));
+        } catch (UncheckedIOException e) {
+            throw e.getCause(); // the client went away
+        }
+        writer.flush();
+        loggers.info("Exported {} users as {}", count[0], format);
+        return count[0];
+    }
+
+    // Read-only: runs on a replica when one is configured, and the cursor needs the transaction open
+    private long exportShard(Writer writer, boolean csv) {
+        long count = 0;
+        try (Stream<User> users = userRepository.streamAll()) {
+            for (User user : (Iterable<User>) users::iterator) {
+                if (csv) {
+                    writer.write(CsvRecords.format(user.getId(), user.getEmail(), user.getFirstName(),
+                            user.getLastName(), user.getAuthProvider(), user.getPasswordHash(), user.getCreatedAt()));
+                } else {
+                    writer.write(recordWriter.writeValueAsString(toRecord(user)));
+                    writer.write('\n');
+                }
+                entityManager.detach(user); // otherwise the persistence context grows with every row
+                count++;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return count;
+    }
+
+    // Each batch commits on its own, so a failure late in a large file keeps what went in before it
+    public UserImportReport importUsers(String format, InputStream in) throws IOException {
+        Import state = new Import();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 64 * 1024);
+        try {
+            if ("csv".equals(format)) {
+                readCsv(reader, state);
+            } else {
+                readNdjson(reader, state);
+            }
+        } catch (IOException e) {
+            // Malformed framing (an unterminated quote) ends the upload; rows before it are kept
+            state.error(state.lastLine, null, e.getMessage());
+        }
+        flush(state);
+        loggers.info("Imported {} of {} users ({} failed)", state.imported, state.read, state.failed);
+        return new UserImportReport(state.read, state.imported, state.failed, state.errors,
+                state.failed > state.errors.size());
+    }
+
+    private void readNdjson(BufferedReader reader, Import state) throws IOException {
+        long lineNumber = 0;
+        while (true) {
+            lineNumber++;
+            state.lastLine = lineNumber;
+            String line;
+            try {
+                line = readLine(reader, lineNumber);
+            } catch (RecordTooLongException e) {
+                state.read++;
+                state.error(lineNumber, null, e.getMessage());
+                continue;
+            }
+            if (line == null) {
+                break;
+            }
+            if (line.isBlank()) {
+                continue;
+            }
+            state.read++;
+            UserTransferRecord record;
+            try {
+                record = recordReader.readValue(line);
+            } catch (JsonProcessingException e) {
+                state.error(lineNumber, null, "Invalid JSON: " + e.getOriginalMessage());
+                continue;
+            }
+            accept(state, lineNumber, record);
+        }
+    }
+
+    // BufferedReader.readLine() with a cap: a longer line is skipped to its end, never held in memory
+    private String readLine(BufferedReader reader, long lineNumber) throws IOException {
+        StringBuilder line = new StringBuilder();
+        boolean tooLong = false;
+        int c;
+        while ((c = reader.read()) != -1 && c != '\n') {
+            if (line.length() < maxLineLength) {
+                line.append((char) c);
+            } else if (c != '\r') {
+                tooLong = true;
+            }
+        }
+        if (tooLong) {
+            throw new RecordTooLongException(lineNumber, "Line over " + maxLineLength + " characters");
+        }
+        if (c == -1 && line.length() == 0) {
+            return null;
+        }
+        int end = line.length();
+        if (end > 0 && line.charAt(end - 1) == '\r') {
+            line.setLength(end - 1);
+        }
+        return line.toString();
+    }
+
+    private void readCsv(BufferedReader reader, Import state) throws IOException {
+        CsvRecords records = new CsvRecords(reader, maxFieldLength, maxFields);
+        List<String> header = records.next();
+        if (header == null) {
+            return;
+        }
+        Map<String, Integer> columns = new HashMap<>();
+        for (int i = 0; i < header.size(); i++) {
+            columns.put(header.get(i).trim().toLowerCase(), i);
+        }
+        if (!columns.containsKey("email")) {
+            throw new IOException("CSV header must contain an email column");
+        }
+        while (true) {
+            List<String> fields;
+            try {
+                fields = records.next();
+            } catch (RecordTooLongException e) {
+                // Only this record is dropped; the reader is already at the start of the next one
+                state.lastLine = e.getLine();
+                state.read++;
+                state.error(e.getLine(), null, e.getMessage());
+                continue;
+            }
+            if (fields == null) {
+                break;
+            }
+            long lineNumber = records.getRecordLine();
+            state.lastLine = lineNumber;
+            if (fields.size() == 1 && fields.get(0).isBlank()) {
+                continue;
+            }
+            state.read++;
+            UserTransferRecord record = new UserTransferRecord();
+            try {
+                String id = field(fields, columns, "id");
+                record.setId(id == null ? null : UUID.fromString(id));
+                record.setEmail(field(fields, columns, "email"));
+                record.setFirstName(field(fields, columns, "first_name"));
+                record.setLastName(field(fields, columns, "last_name"));
+                record.setAuthProvider(field(fields, columns, "auth_provider"));
+                record.setPasswordHash(field(fields, columns, "password_hash"));
+                String createdAt = field(fields, columns, "created_at");
+                record.setCreatedAt(createdAt == null ? null : LocalDateTime.parse(createdAt));
+            } catch (RuntimeException e) {
+                state.error(lineNumber, field(fields, columns, "email"), "Invalid value: " + e.getMessage());
+                continue;
+            }
+            accept(state, lineNumber, record);
+        }
+    }
+
+    // Empty CSV fields are nulls
+    private static String field(List<String> fields, Map<String, Integer> columns, String name) {
+        Integer index = columns.get(name);
+        if (index == null || index >= fields.size()) {
+            return null;
+        }
+        String value = fields.get(index).trim();
+        return value.isEmpty() ? null : value;
+    }
+
+    private void accept(Import state, long lineNumber, UserTransferRecord record) {
+        String error = validate(record);
+        if (error != null) {
+            state.error(lineNumber, record.getEmail(), error);
+            return;
+        }
+        if (!state.batchEmails.add(record.getEmail())) {
+            // Flush first, so the database rejects the repeat as already existing
+            flush(state);
+            state.batchEmails.add(record.getEmail());
+        }
+        state.batch.add(new Row(lineNumber, record));
+        if (state.batch.size() >= batchSize) {
+            flush(state);
+        }
+    }
+
+    // Normalizes the record in place; returns the problem, or null when it can be inserted
+    private static String validate(UserTransferRecord record) {
+        String email = record.getEmail() == null ? null : record.getEmail().trim();
+        if (email == null || email.isEmpty()) {
+            return "Email is required";
+        }
+        if (email.length() > 255 || !EMAIL.matcher(email).matches()) {
+            return "Invalid email";
+        }
+        record.setEmail(email);
+        if (length(record.getFirstName()) > 500 || length(record.getLastName()) > 500) {
+            return "Name longer than 500 characters";
+        }
+        String hash = record.getPasswordHash();
+        if (hash != null && !BCRYPT_HASH.matcher(hash).matches()) {
+            return "Password hash is not a BCrypt hash";
+        }
+        String provider = record.getAuthProvider();
+        if (provider == null) {
+            provider = hash != null ? "local" : "google";
+        }
+        if (!AUTH_PROVIDERS.contains(provider)) {
+            return "Unknown auth provider: " + provider;
+        }
+        if ("local".equals(provider) && hash == null) {
+            return "Local accounts need a password hash";
+        }
+        record.setAuthProvider(provider);
+        if (record.getId() == null) {
+            record.setId(ShardKeys.newUserId(record.getEmail()));
+        }
+        if (record.getCreatedAt() == null) {
+            record.setCreatedAt(LocalDateTime.now());
+        }
+        return null;
+    }
+
+    private static int length(String value) {
+        return value == null ? 0 : value.length();
+    }
+
+    private void flush(Import state) {
+        List<Row> batch = state.batch;
+        if (batch.isEmpty()) {
+            return;
+        }
+        if (shardDirectory.isEnabled()) {
+            Map<Integer, List<Row>> byShard = new TreeMap<>();
+            for (Row row : batch) {
+                try {
+                    int shard = shardDirectory.bindingFor(ShardKeys.bucketOf(row.record().getEmail())).shard();
+                    byShard.computeIfAbsent(shard, key -> new ArrayList<>()).add(row);
+                } catch (RuntimeException e) {
+                    state.error(row.line(), row.record().getEmail(), e.getMessage()); // bucket being moved
+                }
+            }
+            byShard.forEach((shard, rows) -> ShardContext.runOn(
+                    new ShardContext.Binding(shard, ShardKeys.UNKNOWN), () -> insert(rows, state)));
+        } else {
+            insert(batch, state);
+        }
+        batch.clear();
+        state.batchEmails.clear();
+    }
+
+    // One round trip per batch, whatever its size: the rows travel as seven arrays
+    private void insert(List<Row> batch, Import state) {
+        try {
+            Set<String> inserted = new HashSet<>(jdbcTemplate.query(connection -> {
+                PreparedStatement ps = connection.prepareStatement(INSERT_SQL);
+                int n = batch.size();
+                Object[] ids = new Object[n];
+                Object[] emails = new Object[n];
+                Object[] firstNames = new Object[n];
+                Object[] lastNames = new Object[n];
+                Object[] hashes = new Object[n];
+                Object[] providers = new Object[n];
+                Object[] createdAts = new Object[n];
+                for (int i = 0; i < n; i++) {
+                    UserTransferRecord record = batch.get(i).record();
+                    ids[i] = record.getId();
+                    emails[i] = record.getEmail();
+                    firstNames[i] = record.getFirstName();
+                    lastNames[i] = record.getLastName();
+                    hashes[i] = record.getPasswordHash();
+                    providers[i] = record.getAuthProvider();
+                    createdAts[i] = Timestamp.valueOf(record.getCreatedAt());
+                }
+                ps.setArray(1, array(connection, "uuid", ids));
+                ps.setArray(2, array(connection, "varchar", emails));
+                ps.setArray(3, array(connection, "varchar", firstNames));
+                ps.setArray(4, array(connection, "varchar", lastNames));
+                ps.setArray(5, array(connection, "text", hashes));
+                ps.setArray(6, array(connection, "varchar", providers));
+                ps.setArray(7, array(connection, "timestamp", createdAts));
+                return ps;
+            }, (rs, rowNum) -> rs.getString(1)));
+            for (Row row : batch) {
+                if (inserted.contains(row.record().getEmail())) {
+                    state.imported++;
+                } else {
+                    state.error(row.line(), row.record().getEmail(), "An account with this email or id already exists");
+                }
+            }
+        } catch (DataAccessException e) {
+            // Rows are validated up front, so this is the database itself; the batch is reported, the rest goes on
+            loggers.warn("User import batch of {} failed: {}", batch.size(), e.getMessage());
+            for (Row row : batch) {
+                state.error(row.line(), row.record().getEmail(), "Insert failed: " + e.getMostSpecificCause().getMessage());
+            }
+        }
+    }
+
+    private static Array array(Connection connection, String type, Object[] values) throws SQLException {
+        return connection.createArrayOf(type, values);
+    }
+
+    private static UserTransferRecord toRecord(User user) {
+        return new UserTransferRecord(user.getId(), user.getEmail(), user.getFirstName(), user.getLastName(),
+                user.getAuthProvider(), user.getPasswordHash(), user.getCreatedAt());
+    }
+
+    private record Row(long line, UserTransferRecord record) {
+    }
+
+    // Progress of one upload; only the current batch and the reported errors are kept
+    private final class Import {
+        final List<Row> batch = new ArrayList<>(batchSize);
+        final Set<String> batchEmails = new HashSet<>();
+        final List<UserImportReport.RowError> errors = new ArrayList<>();
+        long read;
+        long imported;
+        long failed;
+        long lastLine;
+
+        void error(long line, String email, String message) {
+            failed++;
+            if (errors.size() < maxReportedErrors) {
+                errors.add(new UserImportReport.RowError(line, email, message));
+            }
+        }
+    }
+}
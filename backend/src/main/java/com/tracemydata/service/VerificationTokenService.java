@@ -0,0 +1,64 @@
+package com.tracemydata.service;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.Set;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.tracemydata.model.VerificationToken;
+import com.tracemydata.repository.VerificationTokenRepository;
+import com.tracemydata.util.SecureTokens;
+import com.tracemydata.util.ShardKeys;
+
+/**
+ * Single-use tokens for the links in verification, email-change and password-reset
+ * emails. Each belongs to one temp_user row and one purpose; only its SHA-256 is
+ * stored, so the table holds nothing a reader could click. The token starts with
+ * the account's shard bucket, so claiming it goes straight to the right shard.
+ */
+@Service
+public class VerificationTokenService {
+
+    private final VerificationTokenRepository verificationTokenRepository;
+    private final ShardDirectory shardDirectory;
+
+    public VerificationTokenService(VerificationTokenRepository verificationTokenRepository,
+            ShardDirectory shardDirectory) {
+        this.verificationTokenRepository = verificationTokenRepository;
+        this.shardDirectory = shardDirectory;
+    }
+
+    // Returns the token for the email link; accountEmail is the email the row is placed by
+    @Transactional
+    public String issue(Long tempUserId, String accountEmail, String purpose, LocalDateTime expiresAt) {
+        int bucket = ShardKeys.bucketOf(accountEmail);
+        shardDirectory.enter(bucket);
+        String token = ShardKeys.prefixToken(bucket, SecureTokens.newToken());
+        verificationTokenRepository.upsert(tempUserId, SecureTokens.hash(token), purpose, LocalDateTime.now(),
+                expiresAt);
+        return token;
+    }
+
+    // The token when it exists for one of the purposes, left in place; only claim() uses it up
+    @Transactional
+    public Optional<VerificationToken> find(String token, Set<String> purposes) {
+        if (token == null || token.isEmpty()) {
+            return Optional.empty();
+        }
+        shardDirectory.enter(ShardKeys.bucketOfToken(token));
+        return verificationTokenRepository.findByTokenHash(SecureTokens.hash(token), purposes);
+    }
+
+    // Deletes and returns the token when it exists for one of the purposes; expiry is the caller's check
+    @Transactional
+    public Optional<VerificationToken> claim(String token, Set<String> purposes) {
+        if (token == null || token.isEmpty()) {
+            return Optional.empty();
+        }
+        // Links sent before sharding have no bucket and resolve on the first shard
+        shardDirectory.enter(ShardKeys.bucketOfToken(token));
+        return verificationTokenRepository.deleteByTokenHashReturning(SecureTokens.hash(token), purposes);
+    }
+}
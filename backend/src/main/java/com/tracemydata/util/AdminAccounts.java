@@ -0,0 +1,40 @@
+package com.tracemydata.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.tracemydata.model.User;
+
+// Accounts listed in app.admin.emails get the ADMIN authority on top of USER, in tokens and user lookups alike
+@Component
+public class AdminAccounts {
+
+    private final Set<String> adminEmails;
+
+    public AdminAccounts(@Value("${app.admin.emails:}") String adminEmails) {
+        this.adminEmails = Arrays.stream(adminEmails.split(","))
+                .map(email -> email.trim().toLowerCase(Locale.ROOT))
+                .filter(email -> !email.isEmpty())
+                .collect(Collectors.toUnmodifiableSet());
+    }
+
+    public boolean isAdmin(String email) {
+        return email != null && adminEmails.contains(email.toLowerCase(Locale.ROOT));
+    }
+
+    public List<String> authoritiesFor(User user) {
+        if (!isAdmin(user.getEmail())) {
+            return user.getAuthorities();
+        }
+        List<String> authorities = new ArrayList<>(user.getAuthorities());
+        authorities.add("ADMIN");
+        return authorities;
+    }
+}
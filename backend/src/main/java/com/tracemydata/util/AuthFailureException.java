@@ -0,0 +1,31 @@
+package com.tracemydata.util;
+
+/**
+ * An expected authentication failure with a fixed reason code, which the auth.endpoint
+ * metrics are tagged with. The message goes to the client and may contain user input;
+ * the reason is one of the constants below, so the tag values stay few.
+ */
+public class AuthFailureException extends RuntimeException {
+
+    public static final String UNKNOWN_ACCOUNT = "unknown_account";
+    public static final String UNVERIFIED = "unverified";
+    public static final String BAD_CREDENTIALS = "bad_credentials";
+    public static final String WRONG_PROVIDER = "wrong_provider";
+    public static final String EXPIRED_TOKEN = "expired_token";
+    public static final String INVALID_REFRESH_TOKEN = "invalid_refresh_token";
+    public static final String ALREADY_REGISTERED = "already_registered";
+    public static final String ALREADY_PENDING = "already_pending";
+    public static final String SAME_PASSWORD = "same_password";
+    public static final String CONCURRENT_CHANGE = "concurrent_change";
+
+    private final String reason;
+
+    public AuthFailureException(String reason, String message) {
+        super(message);
+        this.reason = reason;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+}
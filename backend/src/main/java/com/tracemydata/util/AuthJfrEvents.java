@@ -0,0 +1,125 @@
+package com.tracemydata.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.HexFormat;
+import java.util.Locale;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * JDK Flight Recorder events for the auth hot path, in the "TraceMyData / Auth"
+ * category of JMC. Callers follow the begin / end / shouldCommit pattern and fill
+ * the fields only when shouldCommit() is true, so with no recording running the
+ * event object is scalar-replaced by the JIT and nothing is computed or stored.
+ */
+public final class AuthJfrEvents {
+
+    // Per-JVM salt: hashes correlate one user within a recording but cannot be looked up by email
+    private static final byte[] SALT = new SecureRandom().generateSeed(16);
+
+    private AuthJfrEvents() {
+    }
+
+    @Name("com.tracemydata.JwtFilter")
+    @Label("JWT Filter")
+    @Description("Bearer token authentication in JwtAuthFilter")
+    @Category({ "TraceMyData", "Auth" })
+    @StackTrace(false)
+    public static class JwtFilter extends Event {
+        @Label("Outcome")
+        public String outcome;
+
+        @Label("User Hash")
+        public String userHash;
+
+        @Label("Principal Cache Hit")
+        public boolean cacheHit;
+    }
+
+    @Name("com.tracemydata.JwtToken")
+    @Label("JWT Sign/Verify")
+    @Category({ "TraceMyData", "Auth" })
+    @StackTrace(false)
+    public static class JwtToken extends Event {
+        @Label("Operation")
+        public String operation;
+
+        @Label("Outcome")
+        public String outcome;
+
+        @Label("User Hash")
+        public String userHash;
+    }
+
+    @Name("com.tracemydata.PasswordHash")
+    @Label("BCrypt Task")
+    @Description("One task on the BCrypt pool, measured from the caller: queueing plus hashing")
+    @Category({ "TraceMyData", "Auth" })
+    @StackTrace(false)
+    public static class PasswordHash extends Event {
+        @Label("Outcome")
+        public String outcome;
+
+        @Label("Queue Wait")
+        @Timespan(Timespan.NANOSECONDS)
+        public long queueWait;
+
+        @Label("Cost")
+        public int cost;
+    }
+
+    @Name("com.tracemydata.RepositoryCall")
+    @Label("Repository Call")
+    @Category({ "TraceMyData", "Database" })
+    public static class RepositoryCall extends Event {
+        @Label("Repository")
+        public String repository;
+
+        @Label("Method")
+        public String method;
+
+        @Label("Outcome")
+        public String outcome;
+    }
+
+    @Name("com.tracemydata.EmailSend")
+    @Label("SMTP Batch")
+    @Category({ "TraceMyData", "Email" })
+    @StackTrace(false)
+    public static class EmailSend extends Event {
+        @Label("Messages")
+        public int messages;
+
+        @Label("Outcome")
+        public String outcome;
+
+        @Label("Body Size")
+        @DataAmount
+        public long bodyBytes;
+    }
+
+    // Only call inside shouldCommit(): hashing is the expensive part of an event
+    public static String userHash(String email) {
+        if (email == null) {
+            return null;
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(SALT);
+            byte[] hash = digest.digest(email.toLowerCase(Locale.ROOT).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash, 0, 8);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.tracemydata.util;
+
+import org.springframework.stereotype.Component;
+
+import io.jsonwebtoken.JwtException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Latency and outcome of every /api/auth endpoint, published as the "auth.endpoint"
+ * timer tagged with endpoint, outcome (success/failure) and a failure reason code:
+ * the AuthFailureException reason, one of the codes below, or "error" for anything
+ * unexpected. The timer's count doubles as the per-reason success/failure counter.
+ */
+@Component
+public class AuthMetrics {
+
+    public static final String RATE_LIMITED = "rate_limited";
+    public static final String INVALID_TOKEN = "invalid_token";
+    public static final String ERROR = "error";
+
+    private final MeterRegistry registry;
+
+    public AuthMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    public Timer.Sample start() {
+        return Timer.start(registry);
+    }
+
+    public void success(String endpoint, Timer.Sample sample) {
+        sample.stop(timer(endpoint, "success", "none"));
+    }
+
+    public void failure(String endpoint, Timer.Sample sample, Throwable error) {
+        sample.stop(timer(endpoint, "failure", reason(error)));
+    }
+
+    // For requests rejected before reaching the service, e.g. a missing field
+    public void failure(String endpoint, Timer.Sample sample, String reason) {
+        sample.stop(timer(endpoint, "failure", reason));
+    }
+
+    private Timer timer(String endpoint, String outcome, String reason) {
+        return Timer.builder("auth.endpoint")
+                .description("Latency of /api/auth endpoints by outcome")
+                .tag("endpoint", endpoint)
+                .tag("outcome", outcome)
+                .tag("reason", reason)
+                .register(registry);
+    }
+
+    // Messages are never used: they carry emails and other user input
+    static String reason(Throwable error) {
+        if (error instanceof AuthFailureException failure) {
+            return failure.getReason();
+        }
+        if (error instanceof JwtException) {
+            return INVALID_TOKEN;
+        }
+        return ERROR;
+    }
+}
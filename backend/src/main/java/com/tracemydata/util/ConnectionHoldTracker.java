@@ -0,0 +1,228 @@
+package com.tracemydata.util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Measures how long JDBC connections stay checked out, per call site, and notices
+ * outbound network calls (SMTP, HTTP) made while the calling thread holds one.
+ *
+ * The site is the first application frame above the checkout: for a transaction
+ * that is the @Transactional method's proxy, so one site is one transaction
+ * boundary; for repository calls outside a transaction it is the calling method.
+ * Connections come from ConnectionHoldProfiler, network calls are reported by the
+ * RestTemplate interceptor and EmailService.
+ */
+@Component
+public class ConnectionHoldTracker {
+
+    private static final String OTHER_SITE = "other";
+    private static final StackWalker WALKER = StackWalker.getInstance();
+
+    private Logger loggers = LoggerFactory.getLogger(ConnectionHoldTracker.class);
+
+    // Open holds of the current thread, innermost last; null until the thread first checks out
+    private final ThreadLocal<ArrayDeque<Hold>> held = new ThreadLocal<>();
+    private final ConcurrentHashMap<String, SiteStats> sites = new ConcurrentHashMap<>();
+    private final int maxSites;
+    private volatile MeterRegistry registry;
+
+    public ConnectionHoldTracker(@Value("${app.db.hold-profiler.max-sites:200}") int maxSites) {
+        this.maxSites = maxSites;
+    }
+
+    // Wraps a freshly checked-out connection; the hold ends when it is closed
+    public Connection track(Connection connection) {
+        ArrayDeque<Hold> holds = held.get();
+        if (holds == null) {
+            holds = new ArrayDeque<>(2);
+            held.set(holds);
+        }
+        Hold hold = new Hold(callSite(), holds, System.nanoTime());
+        holds.addLast(hold);
+        InvocationHandler handler = (proxy, method, args) -> {
+            if (method.getName().equals("close")) {
+                release(hold);
+            }
+            try {
+                return method.invoke(connection, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        };
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[] { Connection.class }, handler);
+    }
+
+    // Called before an outbound network call; a no-op unless this thread holds a connection
+    public void networkCall(String target) {
+        ArrayDeque<Hold> holds = held.get();
+        if (holds == null || holds.isEmpty()) {
+            return;
+        }
+        for (Hold hold : holds) {
+            hold.networkCalls++;
+            hold.target = target;
+        }
+        SiteStats stats = stats(holds.peekFirst().site);
+        stats.networkCalls.increment();
+        if (stats.networkTargets.size() < 8 && stats.networkTargets.add(target)) {
+            // First time this site did it: worth a warning, later ones only show in the report
+            loggers.warn("{} call while holding a JDBC connection, from {} (transaction {})", target,
+                    holds.peekFirst().site, TransactionSynchronizationManager.getCurrentTransactionName());
+        }
+    }
+
+    private void release(Hold hold) {
+        if (hold.released) {
+            return; // close() is allowed more than once
+        }
+        hold.released = true;
+        hold.owner.remove(hold);
+        long nanos = System.nanoTime() - hold.startNanos;
+        SiteStats stats = stats(hold.site);
+        stats.holds.increment();
+        stats.totalNanos.add(nanos);
+        stats.maxNanos.accumulateAndGet(nanos, Math::max);
+        if (hold.networkCalls > 0) {
+            stats.holdsWithNetwork.increment();
+            stats.maxNetworkHoldNanos.accumulateAndGet(nanos, Math::max);
+            loggers.debug("{} held a connection {} ms across {} network call(s) to {}", hold.site,
+                    TimeUnit.NANOSECONDS.toMillis(nanos), hold.networkCalls, hold.target);
+        }
+    }
+
+    private String callSite() {
+        return WALKER.walk(frames -> frames
+                .filter(frame -> frame.getClassName().startsWith("com.tracemydata.")
+                        && !frame.getClassName().startsWith("com.tracemydata.config.ConnectionHoldProfiler")
+                        && !frame.getClassName().startsWith(ConnectionHoldTracker.class.getName()))
+                .findFirst()
+                .map(frame -> simpleName(frame.getClassName()) + "." + frame.getMethodName())
+                .orElse(OTHER_SITE));
+    }
+
+    // "com.tracemydata.service.AuthService$$SpringCGLIB$$0" -> "AuthService"
+    private static String simpleName(String className) {
+        int proxySuffix = className.indexOf("$$");
+        String name = proxySuffix > 0 ? className.substring(0, proxySuffix) : className;
+        return name.substring(name.lastIndexOf('.') + 1);
+    }
+
+    private SiteStats stats(String site) {
+        SiteStats stats = sites.get(site);
+        if (stats != null) {
+            return stats;
+        }
+        if (sites.size() >= maxSites) {
+            site = OTHER_SITE; // keeps memory and metric tags bounded
+        }
+        return sites.computeIfAbsent(site, this::newSite);
+    }
+
+    private SiteStats newSite(String site) {
+        SiteStats stats = new SiteStats(site);
+        MeterRegistry current = registry;
+        if (current != null) {
+            register(current, stats);
+        }
+        return stats;
+    }
+
+    // Registers the sites seen so far and every later one (MetricsConfig)
+    public void bindTo(MeterRegistry meterRegistry) {
+        registry = meterRegistry;
+        for (SiteStats stats : sites.values()) {
+            register(meterRegistry, stats);
+        }
+    }
+
+    private static void register(MeterRegistry registry, SiteStats stats) {
+        FunctionTimer.builder("db.connection.hold", stats, s -> s.holds.sum(), s -> s.totalNanos.sum(), TimeUnit.NANOSECONDS)
+                .description("Time from connection checkout to close, per call site")
+                .tag("site", stats.site)
+                .register(registry);
+        Gauge.builder("db.connection.hold.max", stats, s -> s.maxNanos.get() / 1_000_000.0)
+                .baseUnit("milliseconds")
+                .tag("site", stats.site)
+                .register(registry);
+        FunctionCounter.builder("db.connection.hold.network", stats, s -> s.holdsWithNetwork.sum())
+                .description("Connection holds during which the thread made a network call")
+                .tag("site", stats.site)
+                .register(registry);
+    }
+
+    // Worst offenders first: holds spanning network I/O, then the longest single hold
+    public List<SiteReport> report(int limit) {
+        List<SiteReport> reports = new ArrayList<>(sites.size());
+        for (SiteStats stats : sites.values()) {
+            long holds = stats.holds.sum();
+            reports.add(new SiteReport(stats.site, holds,
+                    holds == 0 ? 0 : stats.totalNanos.sum() / holds / 1_000_000.0,
+                    stats.maxNanos.get() / 1_000_000.0,
+                    stats.holdsWithNetwork.sum(),
+                    stats.networkCalls.sum(),
+                    stats.maxNetworkHoldNanos.get() / 1_000_000.0,
+                    Set.copyOf(stats.networkTargets)));
+        }
+        reports.sort(Comparator.comparingLong(SiteReport::holdsWithNetworkIo).reversed()
+                .thenComparing(Comparator.comparingDouble(SiteReport::maxMs).reversed()));
+        return reports.size() > limit ? reports.subList(0, limit) : reports;
+    }
+
+    public record SiteReport(String site, long holds, double avgMs, double maxMs, long holdsWithNetworkIo,
+            long networkCalls, double maxNetworkHoldMs, Set<String> networkTargets) {
+    }
+
+    private static final class Hold {
+        final String site;
+        final ArrayDeque<Hold> owner;
+        final long startNanos;
+        int networkCalls;
+        String target;
+        boolean released;
+
+        Hold(String site, ArrayDeque<Hold> owner, long startNanos) {
+            this.site = site;
+            this.owner = owner;
+            this.startNanos = startNanos;
+        }
+    }
+
+    private static final class SiteStats {
+        final String site;
+        final LongAdder holds = new LongAdder();
+        final LongAdder totalNanos = new LongAdder();
+        final AtomicLong maxNanos = new AtomicLong();
+        final LongAdder holdsWithNetwork = new LongAdder();
+        final LongAdder networkCalls = new LongAdder();
+        final AtomicLong maxNetworkHoldNanos = new AtomicLong();
+        final Set<String> networkTargets = ConcurrentHashMap.newKeySet();
+
+        SiteStats(String site) {
+            this.site = site;
+        }
+    }
+}
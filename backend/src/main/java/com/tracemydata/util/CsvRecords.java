@@ -0,0 +1,137 @@
+package com.tracemydata.util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Minimal RFC 4180 CSV: reads one record at a time from a stream, so an upload
+ * of any size is never held in memory, and formats records for export. Quoted
+ * fields may contain commas, doubled quotes and line breaks.
+ *
+ * Fields and field counts are capped while reading: past a limit the rest of the
+ * record is parsed but not kept, and next() throws RecordTooLongException once the
+ * record has ended, so the caller can report it and carry on with the next one.
+ */
+public final class CsvRecords {
+
+    private final BufferedReader reader;
+    private final int maxFieldLength;
+    private final int maxFields;
+    private long line = 1;
+    private long recordLine;
+
+    public CsvRecords(BufferedReader reader, int maxFieldLength, int maxFields) {
+        this.reader = reader;
+        this.maxFieldLength = maxFieldLength;
+        this.maxFields = maxFields;
+    }
+
+    // Fields of the next record, or null at the end of the input
+    public List<String> next() throws IOException {
+        List<String> fields = new ArrayList<>();
+        Field field = new Field();
+        boolean quoted = false;
+        boolean any = false;
+        recordLine = line;
+        int c;
+        while ((c = reader.read()) != -1) {
+            any = true;
+            if (quoted) {
+                if (c == '"') {
+                    reader.mark(1);
+                    int next = reader.read();
+                    if (next == '"') {
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                        if (next != -1) {
+                            reader.reset();
+                        }
+                    }
+                } else {
+                    if (c == '\n') {
+                        line++;
+                    }
+                    field.append((char) c);
+                }
+            } else if (c == '"' && field.isEmpty()) {
+                quoted = true;
+            } else if (c == ',') {
+                field.endInto(fields);
+            } else if (c == '\n') {
+                line++;
+                return field.endRecord(fields);
+            } else if (c != '\r') {
+                field.append((char) c);
+            }
+        }
+        if (quoted) {
+            throw new IOException("Unterminated quoted field in the record starting at line " + recordLine);
+        }
+        if (!any) {
+            return null;
+        }
+        return field.endRecord(fields);
+    }
+
+    // Line the record last returned by next() started on
+    public long getRecordLine() {
+        return recordLine;
+    }
+
+    // One formatted record including the line break; null is written as an empty field
+    public static String format(Object... values) {
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                out.append(',');
+            }
+            String value = values[i] == null ? "" : values[i].toString();
+            if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0 || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+                out.append('"').append(value.replace("\"", "\"\"")).append('"');
+            } else {
+                out.append(value);
+            }
+        }
+        return out.append('\n').toString();
+    }
+
+    // The field being read, plus whether this record has gone over a limit
+    private final class Field {
+
+        private final StringBuilder value = new StringBuilder();
+        private boolean tooLong;
+
+        void append(char c) {
+            if (value.length() < maxFieldLength) {
+                value.append(c);
+            } else {
+                tooLong = true; // keep parsing for the record's end, stop keeping characters
+            }
+        }
+
+        boolean isEmpty() {
+            return value.length() == 0 && !tooLong;
+        }
+
+        void endInto(List<String> fields) {
+            if (fields.size() < maxFields) {
+                fields.add(value.toString());
+            } else {
+                tooLong = true;
+            }
+            value.setLength(0);
+        }
+
+        List<String> endRecord(List<String> fields) throws RecordTooLongException {
+            endInto(fields);
+            if (tooLong) {
+                throw new RecordTooLongException(recordLine, "Record over " + maxFields + " fields or with a field over "
+                        + maxFieldLength + " characters");
+            }
+            return fields;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.tracemydata.util;
+
+import java.security.Key;
+import java.security.PublicKey;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.LocatorAdapter;
+
+/**
+ * Verifies Google ID tokens locally: RS256 signature against Google's cached
+ * signing keys, then "aud", "iss" and "exp". Keys are reloaded when their
+ * Cache-Control lifetime ends or when a token names a "kid" we have not seen.
+ */
+@Component
+public class GoogleIdTokenVerifier {
+
+    private static final Set<String> ISSUERS = Set.of("accounts.google.com", "https://accounts.google.com");
+
+    private Logger loggers = LoggerFactory.getLogger(GoogleIdTokenVerifier.class);
+
+    private final GoogleKeySource keySource;
+    private final String clientId;
+    private final long minRefreshIntervalMs;
+    private final JwtParser parser;
+
+    private volatile GoogleKeySource.GoogleKeySet keySet;
+    private volatile long lastRefreshMillis;
+    private volatile long lastFailedRefreshMillis;
+    // A lock rather than synchronized: the refresh does HTTP I/O and must not pin a virtual thread's carrier
+    private final ReentrantLock refreshLock = new ReentrantLock();
+
+    public GoogleIdTokenVerifier(GoogleKeySource keySource,
+            @Value("${oauth.google.client-id}") String clientId,
+            @Value("${oauth.google.jwks-min-refresh-interval-ms:60000}") long minRefreshIntervalMs) {
+        this.keySource = keySource;
+        this.clientId = clientId;
+        this.minRefreshIntervalMs = minRefreshIntervalMs;
+        this.parser = Jwts.parser()
+                .keyLocator(new LocatorAdapter<Key>() {
+                    @Override
+                    protected Key locate(JwsHeader header) {
+                        return signingKey(header.getKeyId());
+                    }
+                })
+                .clockSkewSeconds(60)
+                .build();
+    }
+
+    // Returns the verified claims (email, given_name, family_name, ...)
+    public Claims verify(String idToken) {
+        Claims claims = parser.parseSignedClaims(idToken).getPayload();
+        if (!ISSUERS.contains(claims.getIssuer())) {
+            throw new JwtException("Unexpected Google token issuer: " + claims.getIssuer());
+        }
+        if (claims.getAudience() == null || !claims.getAudience().contains(clientId)) {
+            throw new JwtException("Google token was issued for a different client");
+        }
+        // An unverified address must not be able to sign into an existing account with that email
+        if (!Boolean.parseBoolean(String.valueOf(claims.get("email_verified")))) {
+            throw new JwtException("Google account email is not verified");
+        }
+        return claims;
+    }
+
+    private PublicKey signingKey(String kid) {
+        GoogleKeySource.GoogleKeySet current = keySet;
+        if (current == null || current.expiresAtMillis() <= System.currentTimeMillis()) {
+            current = refresh(current, true);
+        }
+        PublicKey key = current.keys().get(kid);
+        if (key == null) {
+            // Google may have rotated keys before our copy expired
+            current = refresh(current, false);
+            key = current.keys().get(kid);
+        }
+        if (key == null) {
+            throw new JwtException("Unknown Google signing key: " + kid);
+        }
+        return key;
+    }
+
+    private GoogleKeySource.GoogleKeySet refresh(GoogleKeySource.GoogleKeySet seen, boolean expired) {
+        refreshLock.lock();
+        try {
+            if (keySet != seen) {
+                return keySet; // another thread refreshed while we waited
+            }
+            // After a failed download nobody retries for a while, expired keys or not; otherwise
+            // every Google login during an outage would make its own call to the endpoint
+            if (System.currentTimeMillis() - lastFailedRefreshMillis < minRefreshIntervalMs) {
+                if (seen == null) {
+                    throw new JwtException("Google signing keys are unavailable");
+                }
+                return seen;
+            }
+            // Unknown kids are attacker controlled, so they may only trigger a download now and then
+            if (!expired && System.currentTimeMillis() - lastRefreshMillis < minRefreshIntervalMs) {
+                return seen;
+            }
+            lastRefreshMillis = System.currentTimeMillis();
+            try {
+                keySet = keySource.fetchKeys();
+            } catch (RuntimeException e) {
+                lastFailedRefreshMillis = System.currentTimeMillis();
+                if (seen == null) {
+                    throw e;
+                }
+                // Keep verifying with the keys we have rather than failing every Google login
+                loggers.warn("Google key refresh failed, using cached keys: {}", e.getMessage());
+                return seen;
+            }
+            loggers.info("Refreshed Google signing keys: {}", keySet.keys().keySet());
+            return keySet;
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.tracemydata.util;
+
+import java.security.PublicKey;
+import java.util.Map;
+
+/**
+ * Where Google's ID-token signing keys come from. The default implementation
+ * downloads Google's JWKS document; tests can register their own {@code @Primary}
+ * bean that serves a locally generated key set instead.
+ */
+public interface GoogleKeySource {
+
+    GoogleKeySet fetchKeys();
+
+    // Signing keys by "kid", valid until expiresAtMillis (from the Cache-Control max-age)
+    record GoogleKeySet(Map<String, PublicKey> keys, long expiresAtMillis) {
+    }
+}
@@ -0,0 +1,81 @@
+package com.tracemydata.util;
+
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.spec.RSAPublicKeySpec;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+// Downloads Google's public JWKS and honours its Cache-Control max-age
+@Component
+public class HttpGoogleKeySource implements GoogleKeySource {
+
+    private static final Pattern MAX_AGE = Pattern.compile("max-age=(\\d+)");
+
+    private Logger loggers = LoggerFactory.getLogger(HttpGoogleKeySource.class);
+
+    @Value("${oauth.google.jwks-uri:https://www.googleapis.com/oauth2/v3/certs}")
+    private String jwksUri;
+
+    // Used when Google sends no max-age
+    @Value("${oauth.google.jwks-default-ttl-ms:3600000}")
+    private long defaultTtlMs;
+
+    private final RestTemplate restTemplate;
+    private final ObjectMapper objectMapper;
+
+    public HttpGoogleKeySource(RestTemplate restTemplate, ObjectMapper objectMapper) {
+        this.restTemplate = restTemplate;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public GoogleKeySet fetchKeys() {
+        ResponseEntity<String> response = restTemplate.getForEntity(jwksUri, String.class);
+        if (!response.getStatusCode().is2xxSuccessful() || response.getBody() == null) {
+            throw new RuntimeException("Could not load Google signing keys");
+        }
+        try {
+            Map<String, PublicKey> keys = new HashMap<>();
+            KeyFactory rsa = KeyFactory.getInstance("RSA");
+            for (JsonNode jwk : objectMapper.readTree(response.getBody()).path("keys")) {
+                if (!"RSA".equals(jwk.path("kty").asText())) {
+                    continue;
+                }
+                BigInteger modulus = new BigInteger(1, Base64.getUrlDecoder().decode(jwk.path("n").asText()));
+                BigInteger exponent = new BigInteger(1, Base64.getUrlDecoder().decode(jwk.path("e").asText()));
+                keys.put(jwk.path("kid").asText(), rsa.generatePublic(new RSAPublicKeySpec(modulus, exponent)));
+            }
+            long ttlMs = maxAgeMs(response.getHeaders().getCacheControl());
+            loggers.debug("Loaded {} Google signing keys, valid for {} ms", keys.size(), ttlMs);
+            return new GoogleKeySet(keys, System.currentTimeMillis() + ttlMs);
+        } catch (GeneralSecurityException | com.fasterxml.jackson.core.JsonProcessingException e) {
+            throw new RuntimeException("Invalid Google JWKS document", e);
+        }
+    }
+
+    private long maxAgeMs(String cacheControl) {
+        if (cacheControl != null) {
+            Matcher m = MAX_AGE.matcher(cacheControl);
+            if (m.find()) {
+                return Long.parseLong(m.group(1)) * 1000;
+            }
+        }
+        return defaultTtlMs;
+    }
+}
@@ -0,0 +1,120 @@
+package com.tracemydata.util;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.interfaces.ECPublicKey;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable snapshot of the access-token keys: every verifiable public key by
+ * "kid" (one hash lookup per token, however many keys overlap), the signing keys
+ * ordered newest activation first, and the JWKS document that publishes them.
+ * A rotation builds a new ring and swaps the reference.
+ */
+public final class JwtKeyRing implements JwtKeySource {
+
+    public static final String ALGORITHM = "ES256";
+
+    private static final Base64.Encoder BASE64URL = Base64.getUrlEncoder().withoutPadding();
+
+    private final Map<String, PublicKey> verificationKeys;
+    private final List<SigningKey> signingKeys;
+    private final Map<String, Object> jwks;
+    private final String etag;
+
+    public JwtKeyRing(Map<String, PublicKey> verificationKeys, List<SigningKey> signingKeys) {
+        this.verificationKeys = Map.copyOf(verificationKeys);
+        List<SigningKey> sorted = new ArrayList<>(signingKeys);
+        sorted.sort(Comparator.comparingLong(SigningKey::activatesAtMillis).reversed());
+        this.signingKeys = List.copyOf(sorted);
+
+        List<Map<String, Object>> keys = new ArrayList<>(verificationKeys.size());
+        verificationKeys.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .forEach(entry -> keys.add(toJwk(entry.getKey(), (ECPublicKey) entry.getValue())));
+        this.jwks = Map.of("keys", List.copyOf(keys));
+        // Same key set, same tag: lets JWKS clients revalidate with If-None-Match
+        this.etag = "\"" + sha256(String.join(",", verificationKeys.keySet().stream().sorted().toList())) + "\"";
+    }
+
+    // The newest key that has activated; a key published ahead of time is skipped until then
+    @Override
+    public SigningKey signingKey() {
+        long now = System.currentTimeMillis();
+        for (SigningKey key : signingKeys) {
+            if (key.activatesAtMillis() <= now) {
+                return key;
+            }
+        }
+        throw new IllegalStateException("No active JWT signing key");
+    }
+
+    @Override
+    public PublicKey verificationKey(String kid) {
+        return kid == null ? null : verificationKeys.get(kid);
+    }
+
+    public Map<String, Object> getJwks() {
+        return jwks;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public int size() {
+        return verificationKeys.size();
+    }
+
+    public record SigningKey(String kid, PrivateKey privateKey, long activatesAtMillis) {
+    }
+
+    // RFC 7638 thumbprint: SHA-256 over the required members in lexicographic order
+    public static String thumbprint(ECPublicKey key) {
+        String json = "{\"crv\":\"P-256\",\"kty\":\"EC\",\"x\":\"" + coordinate(key.getW().getAffineX())
+                + "\",\"y\":\"" + coordinate(key.getW().getAffineY()) + "\"}";
+        return sha256(json);
+    }
+
+    private static Map<String, Object> toJwk(String kid, ECPublicKey key) {
+        Map<String, Object> jwk = new LinkedHashMap<>();
+        jwk.put("kty", "EC");
+        jwk.put("crv", "P-256");
+        jwk.put("kid", kid);
+        jwk.put("use", "sig");
+        jwk.put("alg", ALGORITHM);
+        jwk.put("x", coordinate(key.getW().getAffineX()));
+        jwk.put("y", coordinate(key.getW().getAffineY()));
+        return jwk;
+    }
+
+    // Unsigned big-endian, left-padded to the 32 bytes of a P-256 coordinate
+    private static String coordinate(BigInteger value) {
+        byte[] bytes = value.toByteArray();
+        byte[] fixed = new byte[32];
+        if (bytes.length > 32) {
+            bytes = Arrays.copyOfRange(bytes, bytes.length - 32, bytes.length); // drop the sign byte
+        }
+        System.arraycopy(bytes, 0, fixed, 32 - bytes.length, bytes.length);
+        return BASE64URL.encodeToString(fixed);
+    }
+
+    private static String sha256(String value) {
+        try {
+            return BASE64URL.encodeToString(MessageDigest.getInstance("SHA-256")
+                    .digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
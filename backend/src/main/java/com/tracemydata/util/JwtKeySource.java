@@ -0,0 +1,17 @@
+package com.tracemydata.util;
+
+import java.security.PublicKey;
+
+/**
+ * Where JwtUtil gets its access-token keys. The default implementation
+ * (JwtSigningKeyService) keeps rotating ES256 keys in the database; benchmarks
+ * pass a fixed key ring.
+ */
+public interface JwtKeySource {
+
+    // The key new tokens are signed with right now
+    JwtKeyRing.SigningKey signingKey();
+
+    // Public key for a token's "kid" header, or null when the kid is unknown
+    PublicKey verificationKey(String kid);
+}
@@ -0,0 +1,69 @@
+package com.tracemydata.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Date;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Component;
+
+/**
+ * Remembers tokens that already passed signature verification together with the
+ * principal they resolved to, so repeat requests with the same JWT skip both the
+ * HMAC check and the user lookup. Entries expire with the token's own "exp" claim.
+ * The token's "jti", "uid" and "ver" are kept next to the principal so revocation
+ * and token versions are still checked on cache hits.
+ */
+@Component
+public class JwtPrincipalCache {
+
+    private final ExpiringLruCache<String, Principal> cache;
+
+    public record Principal(UserDetails userDetails, String tokenId, String userId, Integer tokenVersion) {
+    }
+
+    public JwtPrincipalCache(@Value("${app.jwt.principal-cache.max-entries:10000}") int maxEntries) {
+        this.cache = new ExpiringLruCache<>(maxEntries);
+    }
+
+    public Principal get(String token) {
+        return cache.get(digest(token));
+    }
+
+    public void put(String token, Principal principal, Date expiresAt) {
+        if (expiresAt == null) {
+            return; // never cache tokens without an expiry
+        }
+        cache.put(digest(token), principal, expiresAt.getTime());
+    }
+
+    // Drops every cached token of this user, e.g. after the account changed
+    public void invalidateUser(String username) {
+        cache.removeIf((key, principal) -> principal.userDetails().getUsername().equalsIgnoreCase(username));
+    }
+
+    // Expired tokens are otherwise only dropped when read again or pushed out by newer ones
+    @Scheduled(fixedDelayString = "${app.jwt.principal-cache.purge-interval-ms:60000}")
+    public void purgeExpired() {
+        cache.purgeExpired();
+    }
+
+    public ExpiringLruCache<String, Principal> getCache() {
+        return cache;
+    }
+
+    // Key by SHA-256 of the token so raw bearer tokens are never held as map keys
+    private static String digest(String token) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            byte[] hash = md.digest(token.getBytes(StandardCharsets.US_ASCII));
+            return Base64.getEncoder().withoutPadding().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -8,10 +8,11 @@ import io.jsonwebtoken.security.Keys;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Component;
-import org.springframework.web.client.RestTemplate;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 
 import javax.annotation.PostConstruct;
 import javax.crypto.SecretKey;
@@ -19,54 +20,105 @@ import javax.crypto.SecretKey;
 import java.nio.charset.StandardCharsets;
 import java.security.Key;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.UUID;
 
 @Component
 public class JwtUtil {
 
     private Logger loggers = LoggerFactory.getLogger(JwtUtil.class);
 
-    // JWT secret key (should be at least 256 bits, stored in .env or properties)
+    // JWT secret key (should be at least 256 bits, stored in .env or properties); tokens are
+    // signed with ES256 keys from JwtKeySource, the secret only verifies pre-rotation HS384 tokens
     @Value("${app.jwt.secret}")
     private String jwtSecret;
 
-    // JWT expiration time in milliseconds (default = 24 hrs)
-    @Value("${app.jwt.expirationMs:86400000}")
-    private long jwtExpirationMs;
+    // Accept HS384 tokens without a "kid"; only needed for one access-token lifetime after the switch to ES256
+    @Value("${app.jwt.signing.accept-legacy-hmac:false}")
+    private boolean acceptLegacyHmac;
 
-    // Google OAuth token verification endpoint
-    @Value("${oauth.google.tokeninfo:https://oauth2.googleapis.com/tokeninfo?id_token=}")
-    private String googleTokenInfoUrl;
+    // Access token lifetime in milliseconds (default = 15 min); clients renew it with their refresh token
+    @Value("${app.jwt.expirationMs:900000}")
+    private long jwtExpirationMs;
 
     // Microsoft Graph profile endpoint
     @Value("${oauth.outlook.profile:https://graph.microsoft.com/v1.0/me}")
     private String outlookProfileUrl;
 
-    private SecretKey key; // Symmetric key for signing and verifying tokens
-    private final RestTemplate restTemplate = new RestTemplate(); // For REST API calls
+    private SecretKey legacyKey; // HS384 key of tokens issued before asymmetric signing
+    private JwtParser parser; // Immutable and thread-safe, built once in init()
+    private final GoogleIdTokenVerifier googleVerifier; // Local ID-token checks against cached Google keys
+    private final AdminAccounts adminAccounts;
+    private final JwtKeySource keySource; // Rotating ES256 keys, also published at /.well-known/jwks.json
+    private final MeterRegistry meterRegistry;
+
+    public JwtUtil(GoogleIdTokenVerifier googleVerifier, AdminAccounts adminAccounts, JwtKeySource keySource,
+            MeterRegistry meterRegistry) {
+        this.googleVerifier = googleVerifier;
+        this.adminAccounts = adminAccounts;
+        this.keySource = keySource;
+        this.meterRegistry = meterRegistry;
+    }
 
     @PostConstruct
     public void init() {
-        // Initialize the signing key using HS384 algorithm
-        this.key = Keys.hmacShaKeyFor(jwtSecret.getBytes(StandardCharsets.UTF_8));
-        //this.key = Jwts.SIG.HS384.key().build();
+        this.legacyKey = Keys.hmacShaKeyFor(jwtSecret.getBytes(StandardCharsets.UTF_8));
+        // The "kid" header picks the key with one map lookup. jjwt checks the header's "alg"
+        // against the key type, so an HS384 token naming an EC kid is rejected
+        this.parser = Jwts.parser()
+                .keyLocator(new LocatorAdapter<Key>() {
+                    @Override
+                    protected Key locate(JwsHeader header) {
+                        return verificationKey(header.getKeyId());
+                    }
+                })
+                .build();
+    }
+
+    private Key verificationKey(String kid) {
+        if (kid == null) {
+            if (acceptLegacyHmac) {
+                return legacyKey;
+            }
+            throw new JwtException("Token has no key id");
+        }
+        Key key = keySource.verificationKey(kid);
+        if (key == null) {
+            throw new JwtException("Unknown token signing key: " + kid);
+        }
+        return key;
     }
 
    
     // Generate JWT with user data as claims
     public String generateToken(User user) {
-        Map<String, Object> claims = new HashMap<>();
-        claims.put("email", user.getEmail());
-        claims.put("authProvider", user.getAuthProvider());
-
-        return Jwts.builder()
-                .claims(claims) // custom claims
+        AuthJfrEvents.JwtToken event = new AuthJfrEvents.JwtToken();
+        event.begin();
+        long now = System.currentTimeMillis();
+        JwtKeyRing.SigningKey signingKey = keySource.signingKey();
+        // Claims go straight onto the builder: no intermediate map per token
+        String token = Jwts.builder()
+                .header().keyId(signingKey.kid()).and()
+                .claim("email", user.getEmail())
+                .claim("authProvider", user.getAuthProvider())
+                // Enough to authenticate from the token alone (app.jwt.stateless-auth)
+                .claim("uid", user.getId() != null ? user.getId().toString() : null)
+                .claim("roles", adminAccounts.authoritiesFor(user))
+                .claim("ver", user.getTokenVersion())
                 .subject(user.getEmail()) // subject is user ID
-                .issuedAt(new Date()) // token creation time
-                .expiration(new Date(System.currentTimeMillis() + jwtExpirationMs)) // token expiration time
-                .signWith(key, Jwts.SIG.HS384) // sign token using HMAC SHA-384
+                .id(UUID.randomUUID().toString()) // "jti", lets logout revoke this one token
+                .issuedAt(new Date(now)) // token creation time
+                .expiration(new Date(now + jwtExpirationMs)) // token expiration time
+                .signWith(signingKey.privateKey(), Jwts.SIG.ES256) // ECDSA P-256; verifiers fetch the public key by kid
                 .compact();
+        event.end();
+        if (event.shouldCommit()) {
+            event.operation = "sign";
+            event.outcome = "success";
+            event.userHash = AuthJfrEvents.userHash(user.getEmail());
+            event.commit();
+        }
+        return token;
     }
 
     // Validate the JWT (signature + expiration)
@@ -76,32 +128,58 @@ public class JwtUtil {
 
       public String extractUsername(String token) {
         String email =  getUserIdFromToken(token);
-        loggers.info("Extracted email from token: " + email);
+        loggers.debug("Extracted email from token: {}", email);
         return email; // 'sub' in JWT is email
     }
 
     
 
+    // Verify signature + expiration once and return all claims of the token
+    public Claims parseClaims(String token) {
+        AuthJfrEvents.JwtToken event = new AuthJfrEvents.JwtToken();
+        event.begin();
+        Claims claims = null;
+        try {
+            claims = parser.parseSignedClaims(token).getPayload();
+            return claims;
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.operation = "verify";
+                event.outcome = claims != null ? "valid" : "invalid";
+                event.userHash = claims != null ? AuthJfrEvents.userHash(claims.getSubject()) : null;
+                event.commit();
+            }
+        }
+    }
+
     // Extract user ID (subject) from token
     public String getUserIdFromToken(String token) {
-        return Jwts.parser()
-                .verifyWith(key)
-                .build()
+        return parser
                 .parseSignedClaims(token)
                 .getPayload()
                 .get("email", String.class); // subject is user ID
     }
 
-    // Verify Google ID token using official Google OAuth API
+    // Verify Google ID token locally (signature, aud, iss, exp) without calling Google per login
     public Map<String, Object> verifyGoogleToken(String idToken) {
-        String url = googleTokenInfoUrl + idToken;
-        loggers.info("Google Url: "+url);
-        ResponseEntity<Map> response = restTemplate.getForEntity(url, Map.class);
-        loggers.info((String) response.getBody().get("given_name"));
-        if (!response.getStatusCode().is2xxSuccessful() || response.getBody() == null) {
-            throw new RuntimeException("Invalid Google ID token");
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "success";
+        try {
+            return googleVerifier.verify(idToken); // contains email, name, etc.
+        } catch (JwtException e) {
+            outcome = "invalid";
+            loggers.warn("Rejected Google ID token: {}", e.getMessage());
+            throw new RuntimeException("Invalid Google ID token", e);
+        } catch (RuntimeException e) {
+            outcome = "error"; // e.g. Google keys could not be loaded
+            throw e;
+        } finally {
+            sample.stop(Timer.builder("auth.google.verify")
+                    .description("Google ID-token verification, including key refreshes")
+                    .tag("outcome", outcome)
+                    .register(meterRegistry));
         }
-        return response.getBody(); // contains email, name, etc.
     }
 
 }
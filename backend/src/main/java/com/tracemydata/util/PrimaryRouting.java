@@ -0,0 +1,27 @@
+package com.tracemydata.util;
+
+/**
+ * Read-your-writes for replica routing: once the current request has run a
+ * read-write transaction, its later read-only transactions also go to the primary
+ * instead of a replica that may not have the change yet. Cleared per request by
+ * PrimaryPinFilter. A no-op when replicas are not configured.
+ */
+public final class PrimaryRouting {
+
+    private static final ThreadLocal<Boolean> PINNED = new ThreadLocal<>();
+
+    private PrimaryRouting() {
+    }
+
+    public static void pin() {
+        PINNED.set(Boolean.TRUE);
+    }
+
+    public static boolean isPinned() {
+        return PINNED.get() != null;
+    }
+
+    public static void clear() {
+        PINNED.remove();
+    }
+}
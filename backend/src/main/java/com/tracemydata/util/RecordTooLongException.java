@@ -0,0 +1,18 @@
+package com.tracemydata.util;
+
+import java.io.IOException;
+
+// An import record over the reader's size limit; it has been skipped, so reading can go on
+public class RecordTooLongException extends IOException {
+
+    private final long line;
+
+    public RecordTooLongException(long line, String message) {
+        super(message);
+        this.line = line;
+    }
+
+    public long getLine() {
+        return line;
+    }
+}
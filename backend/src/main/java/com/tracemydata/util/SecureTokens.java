@@ -0,0 +1,49 @@
+package com.tracemydata.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * Opaque bearer tokens (refresh, verification, password reset): 256 random bits,
+ * base64url encoded, of which only the SHA-256 digest is ever stored.
+ *
+ * Randomness comes from a small pool of SecureRandom instances picked by thread
+ * id: one shared instance serializes every caller on its lock, and a ThreadLocal
+ * would seed a new generator for every virtual thread.
+ */
+public final class SecureTokens {
+
+    private static final Base64.Encoder BASE64URL = Base64.getUrlEncoder().withoutPadding();
+    private static final SecureRandom[] POOL;
+    private static final int MASK;
+
+    static {
+        int size = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 2 - 1);
+        POOL = new SecureRandom[size];
+        for (int i = 0; i < size; i++) {
+            POOL[i] = new SecureRandom();
+        }
+        MASK = size - 1;
+    }
+
+    private SecureTokens() {
+    }
+
+    public static String newToken() {
+        byte[] bytes = new byte[32];
+        POOL[(int) Thread.currentThread().threadId() & MASK].nextBytes(bytes);
+        return BASE64URL.encodeToString(bytes);
+    }
+
+    // 256 random bits need no salt or slow hash; SHA-256 keeps a DB leak from yielding usable tokens
+    public static byte[] hash(String token) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.tracemydata.util;
+
+import java.util.function.Supplier;
+
+/**
+ * The shard the current thread's database work goes to, read by
+ * ShardRoutingDataSource when a transaction (or a bare statement) first needs a
+ * connection. Unbound work goes to the first shard, which also holds the global
+ * tables. Bound per transaction by ShardRoutingPostProcessor, or around a block
+ * with callOn() by jobs that visit every shard.
+ */
+public final class ShardContext {
+
+    private static final ThreadLocal<Binding> CURRENT = new ThreadLocal<>();
+
+    private ShardContext() {
+    }
+
+    // bucket is ShardKeys.UNKNOWN when the work is for a whole shard rather than an account
+    public record Binding(int shard, int bucket) {
+    }
+
+    public static Binding current() {
+        return CURRENT.get();
+    }
+
+    public static void bind(Binding binding) {
+        CURRENT.set(binding);
+    }
+
+    public static void clear() {
+        CURRENT.remove();
+    }
+
+    public static <T> T callOn(Binding binding, Supplier<T> work) {
+        Binding previous = CURRENT.get();
+        CURRENT.set(binding);
+        try {
+            return work.get();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    public static void runOn(Binding binding, Runnable work) {
+        callOn(binding, () -> {
+            work.run();
+            return null;
+        });
+    }
+}
@@ -0,0 +1,16 @@
+package com.tracemydata.util;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks the repository method parameter that says which account's shard the call
+ * goes to: an email (routed by its hash) or a user id (routed by the bucket encoded
+ * in it). See ShardRoutingPostProcessor.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.PARAMETER)
+public @interface ShardKey {
+}
@@ -0,0 +1,102 @@
+package com.tracemydata.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Shard keys of an account. The stable key is the bucket: a hash of the normalized
+ * email into BUCKETS slots, which ShardDirectory maps to shards. Buckets move
+ * between shards, the bucket of an account does not, so ids and tokens record the
+ * bucket rather than the shard.
+ *
+ * User ids are version 8 (custom) UUIDs with the bucket in the top ten bits; ids
+ * from before sharding are version 4 and carry no bucket. Tokens for email links and
+ * refresh get a "bucket." prefix (base64url never contains a dot).
+ */
+public final class ShardKeys {
+
+    public static final int BUCKETS = 1024;
+    public static final int UNKNOWN = -1;
+
+    private static final int BUCKET_SHIFT = 54; // top ten bits of the most significant half
+
+    private ShardKeys() {
+    }
+
+    // Spaces trimmed, ASCII lower-cased; the same as user_bucket() in V9 (lower() with COLLATE "C")
+    public static String normalize(String email) {
+        int start = 0;
+        int end = email.length();
+        while (start < end && email.charAt(start) == ' ') {
+            start++;
+        }
+        while (end > start && email.charAt(end - 1) == ' ') {
+            end--;
+        }
+        StringBuilder out = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            char c = email.charAt(i);
+            out.append(c >= 'A' && c <= 'Z' ? (char) (c + 32) : c);
+        }
+        return out.toString();
+    }
+
+    public static int bucketOf(String email) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(normalize(email).getBytes(StandardCharsets.UTF_8));
+            long value = ((digest[0] & 0xffL) << 24) | ((digest[1] & 0xffL) << 16)
+                    | ((digest[2] & 0xffL) << 8) | (digest[3] & 0xffL);
+            return (int) (value % BUCKETS);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    // Random version 8 UUID with the bucket in the top bits; 112 random bits remain
+    public static UUID newUserId(int bucket) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long msb = random.nextLong();
+        long lsb = random.nextLong();
+        msb = (msb & ~(0x3FFL << BUCKET_SHIFT)) | ((long) bucket << BUCKET_SHIFT);
+        msb = (msb & ~0xF000L) | 0x8000L; // version 8
+        lsb = (lsb & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L; // IETF variant
+        return new UUID(msb, lsb);
+    }
+
+    public static UUID newUserId(String email) {
+        return newUserId(bucketOf(email));
+    }
+
+    // UNKNOWN for ids minted before sharding
+    public static int bucketOf(UUID id) {
+        if (id == null || id.version() != 8) {
+            return UNKNOWN;
+        }
+        return (int) (id.getMostSignificantBits() >>> BUCKET_SHIFT);
+    }
+
+    public static String prefixToken(int bucket, String token) {
+        return bucket == UNKNOWN ? token : bucket + "." + token;
+    }
+
+    // UNKNOWN for tokens without a valid prefix (issued before sharding, or garbage)
+    public static int bucketOfToken(String token) {
+        int dot = token == null ? -1 : token.indexOf('.');
+        if (dot < 1 || dot > 4) {
+            return UNKNOWN;
+        }
+        int bucket = 0;
+        for (int i = 0; i < dot; i++) {
+            char c = token.charAt(i);
+            if (c < '0' || c > '9') {
+                return UNKNOWN;
+            }
+            bucket = bucket * 10 + (c - '0');
+        }
+        return bucket < BUCKETS ? bucket : UNKNOWN;
+    }
+}
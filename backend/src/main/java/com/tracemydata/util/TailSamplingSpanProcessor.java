@@ -0,0 +1,204 @@
+package com.tracemydata.util;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.trace.SpanContext;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.ReadWriteSpan;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.SpanProcessor;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+
+/**
+ * Keeps traces the head sampler passed on when they turn out slow or failed.
+ *
+ * TracingConfig's sampler marks unsampled traces RECORD_ONLY instead of dropping
+ * them, so their spans still end here. Only spans that failed (error status or HTTP
+ * 5xx) or took at least the slow threshold are kept, buffered per trace until the
+ * local root span ends; everything else is dropped as it ends. When the root ends,
+ * the trace's kept spans are exported together with the root if there are any or
+ * the root itself is slow or failed. Head-sampled traces are left to Boot's batch
+ * processor. The buffer is bounded in traces and spans per trace, and traces whose
+ * root never ends time out.
+ */
+public class TailSamplingSpanProcessor implements SpanProcessor {
+
+    private static final AttributeKey<String> STATUS = AttributeKey.stringKey("status");
+    private static final AttributeKey<Long> HTTP_STATUS_CODE = AttributeKey.longKey("http.response.status_code");
+
+    private Logger loggers = LoggerFactory.getLogger(TailSamplingSpanProcessor.class);
+
+    private final SpanExporter exporter;
+    private final long slowThresholdNanos;
+    private final int maxPendingTraces;
+    private final int maxSpansPerTrace;
+    private final long pendingTimeoutNanos;
+
+    private final Map<String, PendingTrace> pending = new ConcurrentHashMap<>();
+    private final AtomicLong lastSweepNanos = new AtomicLong(System.nanoTime());
+    // Exports run off the thread that ended the root span, usually a request thread
+    private final ExecutorService exportExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "tail-sampling-export");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final LongAdder keptTraces = new LongAdder();
+    private final LongAdder discardedTraces = new LongAdder();
+    private final LongAdder overflowSpans = new LongAdder();
+
+    public TailSamplingSpanProcessor(SpanExporter exporter, long slowThresholdMs, int maxPendingTraces,
+            int maxSpansPerTrace, long pendingTimeoutMs) {
+        this.exporter = exporter;
+        this.slowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowThresholdMs);
+        this.maxPendingTraces = maxPendingTraces;
+        this.maxSpansPerTrace = maxSpansPerTrace;
+        this.pendingTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(pendingTimeoutMs);
+    }
+
+    @Override
+    public void onStart(Context parentContext, ReadWriteSpan span) {
+    }
+
+    @Override
+    public boolean isStartRequired() {
+        return false;
+    }
+
+    @Override
+    public void onEnd(ReadableSpan span) {
+        SpanContext context = span.getSpanContext();
+        if (context.isSampled()) {
+            return; // exported by the regular batch processor
+        }
+        SpanData data = span.toSpanData();
+        // Fast, successful spans are the bulk of unsampled traffic; they are let go right here
+        boolean keep = failed(data) || span.getLatencyNanos() >= slowThresholdNanos;
+        String traceId = context.getTraceId();
+        boolean root = !span.getParentSpanContext().isValid() || span.getParentSpanContext().isRemote();
+        if (!root) {
+            if (keep) {
+                buffer(traceId, data);
+            }
+            sweep();
+            return;
+        }
+
+        PendingTrace trace = pending.remove(traceId);
+        if (keep || trace != null) {
+            List<SpanData> spans = new ArrayList<>();
+            if (trace != null) {
+                synchronized (trace) {
+                    spans.addAll(trace.spans);
+                }
+            }
+            spans.add(data);
+            keptTraces.increment();
+            exportExecutor.execute(() -> exporter.export(spans));
+        } else {
+            discardedTraces.increment();
+        }
+        sweep();
+    }
+
+    // Holds a failed or slow span until its root ends
+    private void buffer(String traceId, SpanData data) {
+        PendingTrace trace = pending.get(traceId);
+        if (trace == null) {
+            if (pending.size() >= maxPendingTraces) {
+                overflowSpans.increment();
+                sweep();
+                return;
+            }
+            trace = pending.computeIfAbsent(traceId, id -> new PendingTrace());
+        }
+        synchronized (trace) {
+            if (trace.spans.size() < maxSpansPerTrace) {
+                trace.spans.add(data);
+            } else {
+                overflowSpans.increment();
+            }
+        }
+    }
+
+    private static boolean failed(SpanData span) {
+        if (span.getStatus().getStatusCode() == StatusCode.ERROR) {
+            return true;
+        }
+        Long code = span.getAttributes().get(HTTP_STATUS_CODE);
+        if (code != null) {
+            return code >= 500;
+        }
+        String status = span.getAttributes().get(STATUS); // Micrometer's http.server.requests tag
+        return status != null && status.length() == 3 && status.charAt(0) == '5';
+    }
+
+    // Drops traces whose root span never ended here, at most once per second
+    private void sweep() {
+        long now = System.nanoTime();
+        long last = lastSweepNanos.get();
+        if (now - last < TimeUnit.SECONDS.toNanos(1) || !lastSweepNanos.compareAndSet(last, now)) {
+            return;
+        }
+        for (Iterator<PendingTrace> it = pending.values().iterator(); it.hasNext();) {
+            if (now - it.next().createdNanos > pendingTimeoutNanos) {
+                it.remove();
+                discardedTraces.increment();
+            }
+        }
+    }
+
+    @Override
+    public boolean isEndRequired() {
+        return true;
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+        exportExecutor.shutdown();
+        try {
+            exportExecutor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        loggers.info("Tail sampling kept {} traces, discarded {}", keptTraces.sum(), discardedTraces.sum());
+        return CompletableResultCode.ofSuccess();
+    }
+
+    public int getPendingTraces() {
+        return pending.size();
+    }
+
+    public long getKeptTraces() {
+        return keptTraces.sum();
+    }
+
+    public long getDiscardedTraces() {
+        return discardedTraces.sum();
+    }
+
+    public long getOverflowSpans() {
+        return overflowSpans.sum();
+    }
+
+    private static final class PendingTrace {
+        final long createdNanos = System.nanoTime();
+        final List<SpanData> spans = new ArrayList<>();
+    }
+}
@@ -0,0 +1,101 @@
+package com.tracemydata.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Token buckets per key (client IP, email, ...), lock-free and bounded in memory.
+ *
+ * Each bucket is a single AtomicLong holding its "theoretical arrival time" (the
+ * GCRA form of a token bucket): a request is allowed while that time is at most
+ * one burst ahead of now, and pushes it one refill interval further. Updates are
+ * one CAS, so concurrent requests for the same key never block each other.
+ *
+ * A bucket whose arrival time is in the past is full again and carries no state,
+ * so idle keys can be dropped at any time. When the table still holds maxKeys
+ * entries, new keys share one overflow bucket instead of growing the map.
+ */
+public class TokenBucketRateLimiter {
+
+    private final String name;
+    private final long intervalNanos; // time to refill one token
+    private final long burstNanos; // (capacity - 1) tokens worth of refill time
+    private final int maxKeys;
+
+    private final ConcurrentHashMap<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private final AtomicLong overflow;
+    private final AtomicLong lastSweepNanos;
+
+    private final LongAdder rejected = new LongAdder();
+
+    public TokenBucketRateLimiter(String name, int capacity, double refillPerMinute, int maxKeys) {
+        if (capacity < 1 || refillPerMinute <= 0 || maxKeys < 1) {
+            throw new IllegalArgumentException("Invalid rate limit for " + name);
+        }
+        this.name = name;
+        this.intervalNanos = (long) (60_000_000_000L / refillPerMinute);
+        this.burstNanos = (capacity - 1) * intervalNanos;
+        this.maxKeys = maxKeys;
+        this.overflow = new AtomicLong(System.nanoTime());
+        this.lastSweepNanos = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * Takes one token for the key.
+     *
+     * @return 0 when allowed, otherwise the nanoseconds until a token is available.
+     */
+    public long tryAcquire(String key) {
+        long now = System.nanoTime();
+        AtomicLong bucket = buckets.get(key);
+        if (bucket == null) {
+            if (buckets.size() >= maxKeys && !sweepWhenFull(now)) {
+                bucket = overflow; // table full of active keys: share one bucket, keep memory bounded
+            } else {
+                bucket = buckets.computeIfAbsent(key, k -> new AtomicLong(now));
+            }
+        }
+        while (true) {
+            long tat = bucket.get();
+            long start = Math.max(tat, now);
+            if (start - now > burstNanos) {
+                rejected.increment();
+                return start - now - burstNanos;
+            }
+            if (bucket.compareAndSet(tat, start + intervalNanos)) {
+                return 0;
+            }
+        }
+    }
+
+    // A full scan per new key would hand an attacker with many IPs a CPU amplifier, so at most one per second
+    private boolean sweepWhenFull(long now) {
+        long last = lastSweepNanos.get();
+        if (now - last < 1_000_000_000L || !lastSweepNanos.compareAndSet(last, now)) {
+            return false;
+        }
+        return evictIdle() > 0;
+    }
+
+    // Drops keys whose bucket has refilled completely; they would start out the same way again.
+    // A request racing with the removal may go uncounted, which only ever errs by one token.
+    public int evictIdle() {
+        long now = System.nanoTime();
+        int before = buckets.size();
+        buckets.entrySet().removeIf(e -> e.getValue().get() - now <= 0);
+        return before - buckets.size();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int size() {
+        return buckets.size();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+}
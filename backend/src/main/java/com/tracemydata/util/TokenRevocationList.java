@@ -0,0 +1,130 @@
+package com.tracemydata.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Access tokens revoked before their "exp" (logout), keyed by their "jti".
+ *
+ * Lookups run on every authenticated request, so a Bloom filter answers the
+ * common "not revoked" case with a few bit reads and only possible hits go to the
+ * exact map. Access tokens live for one TTL at most, so the filter keeps two
+ * generations and drops the older one every TTL: an entry survives at least one
+ * full TTL, and the filter never fills up with long-dead ids.
+ *
+ * The list is per node. With several backend nodes a token revoked on one node
+ * stays usable on the others until it expires, which the short access TTL bounds.
+ */
+@Component
+public class TokenRevocationList {
+
+    private static final int HASHES = 4;
+
+    private final int bitMask;
+    private volatile AtomicLongArray current;
+    private volatile AtomicLongArray previous;
+
+    // jti -> the token's exp in millis; the authority for every Bloom filter hit
+    private final Map<String, Long> revoked = new ConcurrentHashMap<>();
+
+    private final LongAdder bloomNegatives = new LongAdder();
+    private final LongAdder falsePositives = new LongAdder();
+
+    public TokenRevocationList(@Value("${app.jwt.revocation.bloom-bits:1048576}") int bloomBits) {
+        if (Integer.bitCount(bloomBits) != 1 || bloomBits < 64) {
+            throw new IllegalArgumentException("app.jwt.revocation.bloom-bits must be a power of two >= 64");
+        }
+        this.bitMask = bloomBits - 1;
+        this.current = new AtomicLongArray(bloomBits / 64);
+        this.previous = new AtomicLongArray(bloomBits / 64);
+    }
+
+    public void revoke(String tokenId, Date expiresAt) {
+        if (tokenId == null || expiresAt == null || expiresAt.getTime() <= System.currentTimeMillis()) {
+            return; // nothing to do for tokens that cannot be used anyway
+        }
+        revoked.put(tokenId, expiresAt.getTime());
+        long hash = hash(tokenId);
+        AtomicLongArray bits = current;
+        for (int i = 0; i < HASHES; i++) {
+            int bit = bitIndex(hash, i);
+            bits.getAndUpdate(bit >>> 6, word -> word | (1L << bit));
+        }
+    }
+
+    public boolean isRevoked(String tokenId) {
+        if (tokenId == null) {
+            return false;
+        }
+        long hash = hash(tokenId);
+        if (!mightContain(current, hash) && !mightContain(previous, hash)) {
+            bloomNegatives.increment();
+            return false;
+        }
+        Long expiresAt = revoked.get(tokenId);
+        if (expiresAt == null) {
+            falsePositives.increment();
+            return false;
+        }
+        return expiresAt > System.currentTimeMillis();
+    }
+
+    // One generation per access-token lifetime
+    @Scheduled(fixedDelayString = "${app.jwt.expirationMs:900000}", initialDelayString = "${app.jwt.expirationMs:900000}")
+    public void rotate() {
+        previous = current;
+        current = new AtomicLongArray(previous.length());
+        long now = System.currentTimeMillis();
+        revoked.values().removeIf(expiresAt -> expiresAt <= now);
+    }
+
+    public int size() {
+        return revoked.size();
+    }
+
+    public long getBloomNegatives() {
+        return bloomNegatives.sum();
+    }
+
+    public long getFalsePositives() {
+        return falsePositives.sum();
+    }
+
+    private boolean mightContain(AtomicLongArray bits, long hash) {
+        for (int i = 0; i < HASHES; i++) {
+            int bit = bitIndex(hash, i);
+            if ((bits.get(bit >>> 6) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Double hashing (Kirsch-Mitzenmacher): h1 + i * h2 from the two halves of one 64-bit hash
+    private int bitIndex(long hash, int i) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        return (h1 + i * h2) & bitMask;
+    }
+
+    // FNV-1a, then a final mix so similar ids spread over the whole filter
+    private static long hash(String tokenId) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : tokenId.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,55 @@
+package com.tracemydata.util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Latest token version of users whose version was bumped recently (password change
+ * or reset, verified email change). An access token whose "ver" is lower is stale.
+ *
+ * Only bumps from the last access-token lifetime are kept: any token issued before
+ * an older bump has expired by itself. So the map holds a handful of entries and is
+ * checked without touching the database. Like TokenRevocationList it is per node.
+ */
+@Component
+public class TokenVersionRegistry {
+
+    private record Bump(int version, long atMillis) {
+    }
+
+    private final Map<String, Bump> bumps = new ConcurrentHashMap<>();
+    private final long accessTokenTtlMs;
+
+    public TokenVersionRegistry(@Value("${app.jwt.expirationMs:900000}") long accessTokenTtlMs) {
+        this.accessTokenTtlMs = accessTokenTtlMs;
+    }
+
+    public void recordBump(String userId, int version) {
+        long now = System.currentTimeMillis();
+        bumps.merge(userId, new Bump(version, now),
+                (old, bump) -> old.version() >= bump.version() ? old : bump);
+    }
+
+    // Tokens without "uid"/"ver" predate versioning and are left to their "exp"
+    public boolean isStale(String userId, Integer version) {
+        if (userId == null || version == null) {
+            return false;
+        }
+        Bump bump = bumps.get(userId);
+        return bump != null && version < bump.version();
+    }
+
+    @Scheduled(fixedDelayString = "${app.jwt.principal-cache.purge-interval-ms:60000}")
+    public void purgeExpired() {
+        long cutoff = System.currentTimeMillis() - accessTokenTtlMs;
+        bumps.values().removeIf(bump -> bump.atMillis() < cutoff);
+    }
+
+    public int size() {
+        return bumps.size();
+    }
+}
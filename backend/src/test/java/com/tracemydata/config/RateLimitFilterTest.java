@@ -0,0 +1,172 @@
+package com.tracemydata.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReference;
+
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.DelegatingServletInputStream;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.tracemydata.util.AuthMetrics;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class RateLimitFilterTest {
+
+    // 100 requests per IP, 2 per email
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final RateLimitFilter filter = new RateLimitFilter(new ObjectMapper(), new AuthMetrics(registry), true, false,
+            100, 1, 2, 1, 1000);
+
+    @Test
+    void limitsPerEmailAndReplaysTheBody() throws Exception {
+        String json = "{\"email\":\" Alice@Example.com \",\"password\":\"x\"}";
+        assertThat(post(json).getStatus()).isEqualTo(200);
+        assertThat(post(json.replace(" Alice@Example.com ", "alice@example.com")).getStatus()).isEqualTo(200);
+
+        MockHttpServletResponse third = post(json);
+        assertThat(third.getStatus()).isEqualTo(429);
+        assertThat(third.getHeader("Retry-After")).isNotBlank();
+        assertThat(registry.get("auth.endpoint").tag("endpoint", "login").tag("reason", "rate_limited").timer().count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    void chunkedBodiesAreReadUnderTheSameCap() throws Exception {
+        String small = "{\"email\":\"carol@example.com\"}";
+        assertThat(chunked(small).getStatus()).isEqualTo(200);
+        assertThat(chunked(small).getStatus()).isEqualTo(200);
+        assertThat(chunked(small).getStatus()).isEqualTo(429);
+
+        String padded = "{\"email\":\"dave@example.com\",\"pad\":\"" + "x".repeat(17 * 1024) + "\"}";
+        assertThat(chunked(padded).getStatus()).isEqualTo(413);
+    }
+
+    @Test
+    void encodedPathsAndContextPathsAreStillLimited() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            assertThat(send(at("/api/auth/%6cogin", "", "{\"email\":\"erin@example.com\"}")).getStatus())
+                    .isEqualTo(200);
+        }
+        assertThat(send(at("/api/auth/%6cogin", "", "{\"email\":\"erin@example.com\"}")).getStatus())
+                .isEqualTo(429);
+        assertThat(send(at("/app/api/auth/login", "/app", "{\"email\":\"erin@example.com\"}")).getStatus())
+                .isEqualTo(429);
+    }
+
+    @Test
+    void otherRequestsAreNotLimited() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            assertThat(send(at("/api/auth/refresh", "", "{\"email\":\"frank@example.com\"}")).getStatus())
+                    .isEqualTo(200);
+        }
+        MockHttpServletRequest get = at("/api/auth/login", "", "");
+        get.setMethod("GET");
+        for (int i = 0; i < 5; i++) {
+            assertThat(send(get).getStatus()).isEqualTo(200);
+        }
+    }
+
+    @Test
+    void paddedBodiesAreRefusedInsteadOfSkippingTheEmailLimiter() throws Exception {
+        String padded = "{\"email\":\"alice@example.com\",\"pad\":\"" + "x".repeat(17 * 1024) + "\"}";
+        for (int i = 0; i < 5; i++) {
+            assertThat(post(padded).getStatus()).isEqualTo(413);
+        }
+    }
+
+    @Test
+    void bodiesWithoutEmailStillGoThroughALimiter() throws Exception {
+        assertThat(post("{\"token\":\"abc\",\"newPassword\":\"x\"}").getStatus()).isEqualTo(200);
+        assertThat(post("{\"token\":\"abc\",\"newPassword\":\"y\"}").getStatus()).isEqualTo(200);
+        assertThat(post("{\"token\":\"abc\",\"newPassword\":\"z\"}").getStatus()).isEqualTo(429);
+    }
+
+    @Test
+    void replayedStreamSupportsReadListeners() throws Exception {
+        MockHttpServletRequest request = request("{\"email\":\"bob@example.com\"}");
+        MockFilterChain chain = new MockFilterChain();
+        filter.doFilter(request, new MockHttpServletResponse(), chain);
+
+        ServletInputStream in = chain.getRequest().getInputStream();
+        StringBuilder read = new StringBuilder();
+        AtomicReference<Boolean> done = new AtomicReference<>(false);
+        in.setReadListener(new ReadListener() {
+            @Override
+            public void onDataAvailable() throws IOException {
+                while (in.isReady() && !in.isFinished()) {
+                    read.append((char) in.read());
+                }
+            }
+
+            @Override
+            public void onAllDataRead() {
+                done.set(true);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                throw new AssertionError(t);
+            }
+        });
+
+        assertThat(read.toString()).isEqualTo("{\"email\":\"bob@example.com\"}");
+        assertThat(done.get()).isTrue();
+    }
+
+    private MockHttpServletResponse post(String json) throws Exception {
+        MockHttpServletRequest request = request(json);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+        filter.doFilter(request, response, chain);
+        if (chain.getRequest() != null) {
+            // The controller must still see the exact body
+            assertThat(chain.getRequest().getInputStream().readAllBytes()).isEqualTo(json.getBytes(StandardCharsets.UTF_8));
+        }
+        return response;
+    }
+
+    private MockHttpServletResponse chunked(String json) throws Exception {
+        // No content set, so no Content-Length: only the capped read can tell the size
+        ByteArrayInputStream body = new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/auth/login") {
+            @Override
+            public ServletInputStream getInputStream() {
+                return new DelegatingServletInputStream(body);
+            }
+        };
+        request.setContentType("application/json");
+        request.addHeader("Transfer-Encoding", "chunked");
+        return send(request);
+    }
+
+    private MockHttpServletResponse send(MockHttpServletRequest request) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, new MockFilterChain());
+        return response;
+    }
+
+    private static MockHttpServletRequest at(String requestUri, String contextPath, String json) {
+        MockHttpServletRequest request = request(json);
+        request.setRequestURI(requestUri);
+        request.setContextPath(contextPath);
+        return request;
+    }
+
+    private static MockHttpServletRequest request(String json) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/auth/login");
+        request.setContentType("application/json");
+        request.setContent(json.getBytes(StandardCharsets.UTF_8));
+        return request;
+    }
+}
@@ -0,0 +1,190 @@
+package com.tracemydata.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.tracemydata.util.PrimaryRouting;
+
+/**
+ * Two H2 databases stand in for the primary and a replica, wired like
+ * ReplicaDataSourceConfig does (routing behind a LazyConnectionDataSourceProxy).
+ * Each holds one row naming itself, so a query shows where it was routed. The
+ * replica gets stand-ins for the pg_* functions the lag probe calls.
+ */
+class ReplicaRoutingDataSourceTest {
+
+    private static final long MAX_LAG_MS = 1000;
+
+    private EmbeddedDatabase primaryDb;
+    private EmbeddedDatabase replicaDb;
+    private SwitchableDataSource replica;
+    private ReplicaRoutingDataSource routing;
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate readWrite;
+    private TransactionTemplate readOnly;
+
+    @BeforeEach
+    void setUp() {
+        PgStandIns.lagMs = 0;
+        primaryDb = database("primary");
+        replicaDb = database("replica");
+        JdbcTemplate replicaJdbc = new JdbcTemplate(replicaDb);
+        for (String function : List.of("pg_is_in_recovery", "pg_last_wal_receive_lsn", "pg_last_wal_replay_lsn",
+                "pg_last_xact_replay_timestamp")) {
+            String method = function.substring("pg_".length());
+            replicaJdbc.execute("CREATE ALIAS " + function + " FOR '" + PgStandIns.class.getName() + "." + method + "'");
+        }
+        replica = new SwitchableDataSource(replicaDb);
+
+        routing = new ReplicaRoutingDataSource(primaryDb, List.of(replica), MAX_LAG_MS);
+        routing.afterPropertiesSet();
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(routing);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(dataSource);
+        readWrite = new TransactionTemplate(transactionManager);
+        readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        PrimaryRouting.clear();
+        primaryDb.shutdown();
+        replicaDb.shutdown();
+    }
+
+    @Test
+    void readOnlyTransactionsGoToAFreshReplicaEverythingElseToThePrimary() {
+        assertThat(readOnlyNode()).as("before the first lag probe").isEqualTo("primary");
+
+        routing.probeReplicas();
+
+        assertThat(routing.isUsable(0)).isTrue();
+        assertThat(readOnlyNode()).isEqualTo("replica");
+        assertThat(jdbcTemplate.queryForObject("SELECT name FROM node", String.class)).isEqualTo("primary");
+        assertThat(readWriteNode()).isEqualTo("primary");
+    }
+
+    @Test
+    void readsAfterAWriteStayOnThePrimaryForTheRestOfTheRequest() throws Exception {
+        routing.probeReplicas();
+        PrimaryPinFilter filter = new PrimaryPinFilter();
+        String[] seen = new String[3];
+
+        filter.doFilter(new MockHttpServletRequest(), new MockHttpServletResponse(), (request, response) -> {
+            seen[0] = readOnlyNode();
+            readWrite.executeWithoutResult(status -> jdbcTemplate.update("UPDATE node SET name = name"));
+            seen[1] = readOnlyNode();
+        });
+        // Same thread, next request: the pin was not carried over
+        filter.doFilter(new MockHttpServletRequest(), new MockHttpServletResponse(),
+                (request, response) -> seen[2] = readOnlyNode());
+
+        assertThat(seen).containsExactly("replica", "primary", "replica");
+        assertThat(PrimaryRouting.isPinned()).isFalse();
+    }
+
+    @Test
+    void laggingOrUnreachableReplicasFallBackToThePrimary() {
+        routing.probeReplicas();
+        assertThat(readOnlyNode()).isEqualTo("replica");
+
+        PgStandIns.lagMs = 5 * MAX_LAG_MS;
+        routing.probeReplicas();
+        assertThat(routing.getLagMs(0)).isGreaterThan(MAX_LAG_MS);
+        assertThat(readOnlyNode()).isEqualTo("primary");
+
+        PgStandIns.lagMs = 0;
+        routing.probeReplicas();
+        assertThat(readOnlyNode()).isEqualTo("replica");
+
+        // Down between two probes: this read is served by the primary and the replica leaves the rotation
+        replica.down = true;
+        assertThat(readOnlyNode()).isEqualTo("primary");
+        assertThat(routing.isUsable(0)).isFalse();
+        routing.probeReplicas();
+        assertThat(routing.getLagMs(0)).isEqualTo(-1);
+
+        replica.down = false;
+        routing.probeReplicas();
+        assertThat(readOnlyNode()).isEqualTo("replica");
+    }
+
+    private String readOnlyNode() {
+        return readOnly.execute(status -> node());
+    }
+
+    private String readWriteNode() {
+        return readWrite.execute(status -> node());
+    }
+
+    private String node() {
+        return jdbcTemplate.queryForObject("SELECT name FROM node", String.class);
+    }
+
+    private static EmbeddedDatabase database(String name) {
+        EmbeddedDatabase database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true).build();
+        JdbcTemplate jdbc = new JdbcTemplate(database);
+        jdbc.execute("CREATE TABLE node (name VARCHAR(20))");
+        jdbc.update("INSERT INTO node (name) VALUES (?)", name);
+        return database;
+    }
+
+    // Replication as a Postgres standby would report it, lagMs behind the primary
+    public static class PgStandIns {
+
+        static volatile long lagMs;
+
+        public static boolean is_in_recovery() {
+            return true;
+        }
+
+        public static String last_wal_receive_lsn() {
+            return lagMs == 0 ? "0/3000000" : "0/3000100";
+        }
+
+        public static String last_wal_replay_lsn() {
+            return "0/3000000";
+        }
+
+        public static Timestamp last_xact_replay_timestamp() {
+            return new Timestamp(System.currentTimeMillis() - lagMs);
+        }
+    }
+
+    private static final class SwitchableDataSource extends DelegatingDataSource {
+
+        volatile boolean down;
+
+        SwitchableDataSource(EmbeddedDatabase target) {
+            super(target);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            if (down) {
+                throw new SQLException("Connection refused");
+            }
+            return super.getConnection();
+        }
+    }
+}
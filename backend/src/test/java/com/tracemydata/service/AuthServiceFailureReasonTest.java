@@ -0,0 +1,157 @@
+package com.tracemydata.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Function;
+
+import org.assertj.core.api.ThrowableAssert.ThrowingCallable;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.web.client.RestTemplate;
+
+import com.tracemydata.dto.LoginRequest;
+import com.tracemydata.model.TempUser;
+import com.tracemydata.model.User;
+import com.tracemydata.model.VerificationToken;
+import com.tracemydata.repository.TempUserRepository;
+import com.tracemydata.repository.UserRepository;
+import com.tracemydata.util.AuthMetrics;
+import com.tracemydata.util.JwtUtil;
+import com.tracemydata.util.TokenRevocationList;
+import com.tracemydata.util.TokenVersionRegistry;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * The failures AuthService raises, run through AuthMetrics the way AuthController
+ * records them: each must land under its own reason tag, not the exception type.
+ */
+class AuthServiceFailureReasonTest {
+
+    private static final PasswordEncoder ENCODER = new BCryptPasswordEncoder(4);
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final AuthMetrics metrics = new AuthMetrics(registry);
+
+    private UserRepository userRepo;
+    private TempUserRepository tempUserRepository;
+    private VerificationTokenService verificationTokens;
+    private RefreshTokenService refreshTokenService;
+    private AuthService authService;
+
+    private User alice;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        userRepo = mock(UserRepository.class);
+        tempUserRepository = mock(TempUserRepository.class);
+        verificationTokens = mock(VerificationTokenService.class);
+        refreshTokenService = mock(RefreshTokenService.class);
+        PasswordHashingService passwordHasher = mock(PasswordHashingService.class);
+        when(passwordHasher.execute(any())).thenAnswer(
+                invocation -> ((Function<PasswordEncoder, Object>) invocation.getArgument(0)).apply(ENCODER));
+        authService = new AuthService(userRepo, mock(TempUserCleanupJob.class), tempUserRepository,
+                mock(EmailService.class), mock(JwtUtil.class), mock(RestTemplate.class),
+                mock(CustomUserDetailsService.class), passwordHasher, refreshTokenService,
+                mock(TokenRevocationList.class), mock(TokenVersionRegistry.class), mock(AuthEventJournal.class),
+                verificationTokens, mock(ShardMover.class), mock(PlatformTransactionManager.class));
+
+        alice = new User();
+        alice.setId(UUID.randomUUID());
+        alice.setEmail("alice@example.com");
+        alice.setAuthProvider("local");
+        alice.setPasswordHash(ENCODER.encode("correct horse"));
+        when(userRepo.findByEmail("alice@example.com")).thenReturn(Optional.of(alice));
+        when(userRepo.findById(alice.getId())).thenReturn(Optional.of(alice));
+    }
+
+    @Test
+    void loginFailuresAreToldApart() {
+        when(tempUserRepository.existsByEmail("pending@example.com")).thenReturn(true);
+        User google = new User();
+        google.setEmail("gina@example.com");
+        google.setAuthProvider("google");
+        when(userRepo.findByEmail("gina@example.com")).thenReturn(Optional.of(google));
+
+        assertThat(reason("login-unknown", () -> authService.login(login("nobody@example.com", "x"))))
+                .isEqualTo("unknown_account");
+        assertThat(reason("login-unverified", () -> authService.login(login("pending@example.com", "x"))))
+                .isEqualTo("unverified");
+        assertThat(reason("login-google", () -> authService.login(login("gina@example.com", "x"))))
+                .isEqualTo("wrong_provider");
+        assertThat(reason("login-password", () -> authService.login(login("alice@example.com", "wrong"))))
+                .isEqualTo("bad_credentials");
+    }
+
+    @Test
+    void resetFailuresAreToldApartAndLeaveTheLinkUnclaimed() {
+        when(verificationTokens.find(anyString(), any())).thenReturn(Optional.empty());
+        assertThat(reason("reset-token", () -> authService.resetPassword("25.unknown", "new password")))
+                .isEqualTo("expired_token");
+
+        VerificationToken token = new VerificationToken();
+        ReflectionTestUtils.setField(token, "tempUserId", 7L);
+        ReflectionTestUtils.setField(token, "expiresAt", LocalDateTime.now().plusMinutes(30));
+        TempUser pending = new TempUser();
+        pending.setId(7L);
+        pending.setEmail("alice@example.com");
+        pending.setPassword(alice.getPasswordHash());
+        pending.setUser_id(alice.getId());
+        when(verificationTokens.find(anyString(), any())).thenReturn(Optional.of(token));
+        when(tempUserRepository.findById(7L)).thenReturn(Optional.of(pending));
+
+        assertThat(reason("reset-same", () -> authService.resetPassword("25.link", "correct horse")))
+                .isEqualTo("same_password");
+        verify(verificationTokens, never()).claim(anyString(), any());
+    }
+
+    @Test
+    void changePasswordFailuresAreToldApart() {
+        assertThat(reason("change-old", () -> authService.changePassword("alice@example.com", "wrong", "new one")))
+                .isEqualTo("bad_credentials");
+        assertThat(reason("change-same",
+                () -> authService.changePassword("alice@example.com", "correct horse", "correct horse")))
+                .isEqualTo("same_password");
+        assertThat(reason("change-unknown", () -> authService.changePassword("nobody@example.com", "a", "b")))
+                .isEqualTo("unknown_account");
+    }
+
+    @Test
+    void refreshAndUnexpectedFailures() {
+        when(refreshTokenService.rotate("stale")).thenThrow(new InvalidRefreshTokenException("Refresh token expired"));
+        when(refreshTokenService.rotate("broken")).thenThrow(new IllegalStateException("connection reset"));
+
+        assertThat(reason("refresh-stale", () -> authService.refresh("stale"))).isEqualTo("invalid_refresh_token");
+        assertThat(reason("refresh-broken", () -> authService.refresh("broken"))).isEqualTo("error");
+    }
+
+    // Records the failure like AuthController does and returns the reason tag it got
+    private String reason(String endpoint, ThrowingCallable call) {
+        Throwable error = catchThrowable(call);
+        assertThat(error).as(endpoint).isNotNull();
+        metrics.failure(endpoint, metrics.start(), error);
+        return registry.get("auth.endpoint").tag("endpoint", endpoint).timer().getId().getTag("reason");
+    }
+
+    private static LoginRequest login(String email, String password) {
+        LoginRequest request = new LoginRequest();
+        request.setEmail(email);
+        request.setPassword(password);
+        return request;
+    }
+}
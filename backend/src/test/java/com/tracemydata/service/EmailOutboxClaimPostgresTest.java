@@ -0,0 +1,91 @@
+package com.tracemydata.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.tracemydata.repository.EmailOutboxRepository;
+
+/**
+ * Runs the outbox claim query from EmailOutboxRepository against a real Postgres, since
+ * FOR UPDATE SKIP LOCKED cannot be faked. Set TEST_POSTGRES_URL (plus TEST_POSTGRES_USER
+ * and TEST_POSTGRES_PASSWORD) to a scratch database to run it; it uses a temp table.
+ */
+@EnabledIfEnvironmentVariable(named = "TEST_POSTGRES_URL", matches = ".+")
+class EmailOutboxClaimPostgresTest {
+
+    private DriverManagerDataSource dataSource;
+    private String claimSql;
+
+    @BeforeEach
+    void setUp() throws NoSuchMethodException {
+        dataSource = newDataSource();
+        claimSql = EmailOutboxRepository.class.getMethod("lockDueBatch", LocalDateTime.class, int.class)
+                .getAnnotation(Query.class).value().replace("email_outbox", "email_outbox_claim_test");
+
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+        jdbc.execute("DROP TABLE IF EXISTS email_outbox_claim_test");
+        jdbc.execute("CREATE TABLE email_outbox_claim_test (id BIGSERIAL PRIMARY KEY, status VARCHAR(16) NOT NULL, "
+                + "next_attempt_at TIMESTAMP NOT NULL)");
+        // Timestamps from this JVM, like the entity writes them, so the database time zone does not matter
+        Timestamp due = Timestamp.valueOf(LocalDateTime.now().minusMinutes(1));
+        String insert = "INSERT INTO email_outbox_claim_test (status, next_attempt_at) VALUES (?, ?)";
+        for (int i = 0; i < 6; i++) {
+            jdbc.update(insert, "PENDING", due);
+        }
+        jdbc.update(insert, "FAILED", due);
+        jdbc.update(insert, "PENDING", Timestamp.valueOf(LocalDateTime.now().plusHours(1)));
+    }
+
+    @AfterEach
+    void tearDown() {
+        new JdbcTemplate(dataSource).execute("DROP TABLE IF EXISTS email_outbox_claim_test");
+    }
+
+    @Test
+    void concurrentClaimsNeverOverlap() {
+        // Two data sources, so the nested transaction gets its own connection instead of joining
+        DriverManagerDataSource otherNode = newDataSource();
+        TransactionTemplate first = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        TransactionTemplate second = new TransactionTemplate(new DataSourceTransactionManager(otherNode));
+
+        List<Long> claimedFirst = new ArrayList<>();
+        List<Long> claimedSecond = new ArrayList<>();
+        first.executeWithoutResult(outer -> {
+            claimedFirst.addAll(claim(dataSource, 4));
+            // The first batch's row locks are still held here
+            claimedSecond.addAll(second.execute(inner -> claim(otherNode, 4)));
+        });
+
+        assertThat(claimedFirst).hasSize(4);
+        assertThat(claimedSecond).hasSize(2).doesNotContainAnyElementsOf(claimedFirst);
+    }
+
+    private static DriverManagerDataSource newDataSource() {
+        return new DriverManagerDataSource(System.getenv("TEST_POSTGRES_URL"),
+                System.getenv("TEST_POSTGRES_USER"), System.getenv("TEST_POSTGRES_PASSWORD"));
+    }
+
+    private List<Long> claim(DataSource source, int limit) {
+        return new NamedParameterJdbcTemplate(source).queryForList(claimSql,
+                Map.of("now", Timestamp.valueOf(LocalDateTime.now()), "limit", limit))
+                .stream().map(row -> ((Number) row.get("id")).longValue()).toList();
+    }
+}
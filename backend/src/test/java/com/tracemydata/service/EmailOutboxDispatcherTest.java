@@ -0,0 +1,117 @@
+package com.tracemydata.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.tracemydata.model.EmailOutbox;
+import com.tracemydata.repository.EmailOutboxRepository;
+
+class EmailOutboxDispatcherTest {
+
+    private EmailOutboxRepository outboxRepository;
+    private EmailService emailService;
+    private EmailOutboxDispatcher dispatcher;
+
+    @BeforeEach
+    void setUp() {
+        outboxRepository = mock(EmailOutboxRepository.class);
+        emailService = mock(EmailService.class);
+        when(outboxRepository.saveAll(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(emailService.toMessage(any())).thenAnswer(invocation -> {
+            SimpleMailMessage message = new SimpleMailMessage();
+            message.setTo(invocation.<EmailOutbox>getArgument(0).getRecipient());
+            return message;
+        });
+
+        PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+        ShardDirectory shards = new ShardDirectory(null, transactionManager, false, List.of(), "single", 0);
+        dispatcher = new EmailOutboxDispatcher(outboxRepository, emailService, transactionManager, shards);
+        ReflectionTestUtils.setField(dispatcher, "batchSize", 10);
+        ReflectionTestUtils.setField(dispatcher, "maxAttempts", 3);
+        ReflectionTestUtils.setField(dispatcher, "backoffMs", 1000L);
+        ReflectionTestUtils.setField(dispatcher, "maxBackoffMs", 60000L);
+        ReflectionTestUtils.setField(dispatcher, "leaseMs", 300000L);
+    }
+
+    @Test
+    void deletesSentRowsAndReschedulesFailedOnes() {
+        EmailOutbox sent = row("alice@example.com", 0);
+        EmailOutbox bounced = row("bounce@example.com", 0);
+        when(outboxRepository.lockDueBatch(any(), anyInt())).thenReturn(new ArrayList<>(List.of(sent, bounced)));
+        when(emailService.sendBatch(any(SimpleMailMessage[].class))).thenAnswer(invocation -> {
+            for (SimpleMailMessage message : (SimpleMailMessage[]) invocation.getRawArguments()[0]) {
+                if (message.getTo()[0].startsWith("bounce")) {
+                    return Map.of(message, new MailSendException("550 no such user"));
+                }
+            }
+            return Map.of();
+        });
+
+        LocalDateTime before = LocalDateTime.now();
+        dispatcher.dispatch();
+
+        verify(outboxRepository).deleteAllInBatch(List.of(sent));
+        assertThat(sent.getAttempts()).isEqualTo(1);
+        assertThat(bounced.getAttempts()).isEqualTo(1);
+        assertThat(bounced.getStatus()).isEqualTo(EmailOutbox.STATUS_PENDING);
+        assertThat(bounced.getLastError()).contains("550");
+        // First retry waits backoff-ms, not the claim lease
+        assertThat(bounced.getNextAttemptAt()).isBetween(before.plusSeconds(1), LocalDateTime.now().plusSeconds(1));
+    }
+
+    @Test
+    void claimTakesALeaseBeforeSending() {
+        EmailOutbox email = row("alice@example.com", 0);
+        when(outboxRepository.lockDueBatch(any(), anyInt())).thenReturn(new ArrayList<>(List.of(email)));
+        LocalDateTime[] leaseAtSend = new LocalDateTime[1];
+        when(emailService.sendBatch(any(SimpleMailMessage[].class))).thenAnswer(invocation -> {
+            leaseAtSend[0] = email.getNextAttemptAt();
+            return Map.of();
+        });
+
+        dispatcher.dispatch();
+
+        // Another node's SKIP LOCKED query skips the row only while locked; the lease covers the send
+        assertThat(leaseAtSend[0]).isAfter(LocalDateTime.now().plusMinutes(4));
+    }
+
+    @Test
+    void givesUpAfterMaxAttempts() {
+        EmailOutbox email = row("alice@example.com", 2);
+        when(outboxRepository.lockDueBatch(any(), anyInt())).thenReturn(new ArrayList<>(List.of(email)));
+        when(emailService.sendBatch(any(SimpleMailMessage[].class))).thenThrow(new MailSendException("connection refused"));
+
+        dispatcher.dispatch();
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<EmailOutbox>> retried = ArgumentCaptor.forClass(List.class);
+        verify(outboxRepository, times(2)).saveAll(retried.capture());
+        assertThat(retried.getValue()).containsExactly(email);
+        assertThat(email.getStatus()).isEqualTo(EmailOutbox.STATUS_FAILED);
+        assertThat(email.getAttempts()).isEqualTo(3);
+    }
+
+    private static EmailOutbox row(String recipient, int attempts) {
+        EmailOutbox email = new EmailOutbox(recipient, "Verify your email", "body");
+        email.setAttempts(attempts);
+        return email;
+    }
+}
@@ -0,0 +1,162 @@
+package com.tracemydata.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.tracing.Tracer;
+
+import com.tracemydata.model.EmailOutbox;
+import com.tracemydata.util.ConnectionHoldTracker;
+
+// The outbox send path against an in-process SMTP server, no mail container needed
+class EmailServiceSmtpTest {
+
+    private SmtpStub smtp;
+    private SimpleMeterRegistry meterRegistry;
+    private EmailService emailService;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        smtp = new SmtpStub();
+        meterRegistry = new SimpleMeterRegistry();
+
+        JavaMailSenderImpl mailSender = new JavaMailSenderImpl();
+        mailSender.setHost("127.0.0.1");
+        mailSender.setPort(smtp.port());
+
+        emailService = new EmailService();
+        ReflectionTestUtils.setField(emailService, "fromEmail", "noreply@tracemydata.test");
+        ReflectionTestUtils.setField(emailService, "frontendUrl", "http://localhost:5173");
+        ReflectionTestUtils.setField(emailService, "mailSender", mailSender);
+        ReflectionTestUtils.setField(emailService, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(emailService, "connectionHolds", new ConnectionHoldTracker(10));
+        ReflectionTestUtils.setField(emailService, "tracer", new DefaultListableBeanFactory().getBeanProvider(Tracer.class));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        smtp.close();
+    }
+
+    @Test
+    void sendsWholeBatchOverOneConnection() {
+        SimpleMailMessage first = emailService.toMessage(new EmailOutbox("alice@example.com", "Verify your email", "link one"));
+        SimpleMailMessage second = emailService.toMessage(new EmailOutbox("bob@example.com", "Verify your email", "link two"));
+
+        Map<Object, Exception> failed = emailService.sendBatch(first, second);
+
+        assertThat(failed).isEmpty();
+        assertThat(smtp.connections.get()).isEqualTo(1);
+        assertThat(smtp.recipients).containsExactly("alice@example.com", "bob@example.com");
+        assertThat(smtp.messages).hasSize(2);
+        assertThat(smtp.messages.get(0)).contains("From: noreply@tracemydata.test").contains("link one");
+        assertThat(meterRegistry.get("auth.smtp.send").tag("outcome", "success").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void reportsOnlyTheRejectedMessageAsFailed() {
+        SimpleMailMessage good = emailService.toMessage(new EmailOutbox("alice@example.com", "Verify your email", "ok"));
+        SimpleMailMessage bounced = emailService.toMessage(new EmailOutbox("bounce@example.com", "Verify your email", "no"));
+
+        Map<Object, Exception> failed = emailService.sendBatch(good, bounced);
+
+        // The dispatcher matches failures back to outbox rows by message identity
+        assertThat(failed).containsOnlyKeys(bounced);
+        assertThat(smtp.messages).hasSize(1);
+        assertThat(meterRegistry.get("auth.smtp.send").tag("outcome", "failure").timer().count()).isEqualTo(1);
+    }
+
+    // Just enough SMTP for JavaMail: accepts everything except recipients starting with "bounce"
+    private static final class SmtpStub implements AutoCloseable {
+
+        final List<String> recipients = new CopyOnWriteArrayList<>();
+        final List<String> messages = new CopyOnWriteArrayList<>();
+        final AtomicInteger connections = new AtomicInteger();
+        private final ServerSocket server;
+
+        SmtpStub() throws IOException {
+            server = new ServerSocket(0, 10, InetAddress.getLoopbackAddress());
+            Thread acceptor = new Thread(this::serve, "smtp-stub");
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        int port() {
+            return server.getLocalPort();
+        }
+
+        private void serve() {
+            while (!server.isClosed()) {
+                try (Socket socket = server.accept()) {
+                    connections.incrementAndGet();
+                    converse(socket);
+                } catch (IOException e) {
+                    // closed by the test
+                }
+            }
+        }
+
+        private void converse(Socket socket) throws IOException {
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+            PrintWriter out = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.US_ASCII);
+            reply(out, "220 stub ESMTP");
+            String line;
+            while ((line = in.readLine()) != null) {
+                String command = line.toUpperCase();
+                if (command.startsWith("RCPT TO:")) {
+                    String address = line.substring(line.indexOf('<') + 1, line.indexOf('>'));
+                    if (address.startsWith("bounce")) {
+                        reply(out, "550 no such user");
+                    } else {
+                        recipients.add(address);
+                        reply(out, "250 ok");
+                    }
+                } else if (command.equals("DATA")) {
+                    reply(out, "354 go ahead");
+                    StringBuilder data = new StringBuilder();
+                    while ((line = in.readLine()) != null && !line.equals(".")) {
+                        data.append(line).append('\n');
+                    }
+                    messages.add(data.toString());
+                    reply(out, "250 queued");
+                } else if (command.equals("QUIT")) {
+                    reply(out, "221 bye");
+                    return;
+                } else {
+                    reply(out, "250 ok"); // EHLO, MAIL FROM, RSET, NOOP
+                }
+            }
+        }
+
+        private static void reply(PrintWriter out, String line) {
+            out.print(line + "\r\n");
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            server.close();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.tracemydata.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.tracemydata.model.JwtSigningKey;
+import com.tracemydata.repository.JwtSigningKeyRepository;
+
+/**
+ * Several instances starting on an empty jwt_signing_key table: one wins the
+ * rotation lock and creates the first key, the others must wait for it rather than
+ * cache an empty ring.
+ */
+class JwtSigningKeyServiceTest {
+
+    private static final String SECRET = "test-secret-test-secret-test-secret-0123456789";
+
+    @Test
+    void instanceThatLosesTheFirstRotationWaitsForTheWinnersKey() {
+        JwtSigningKey first = firstKeyCreatedByAnotherInstance();
+        JwtSigningKeyRepository repository = mock(JwtSigningKeyRepository.class);
+        when(repository.tryAdvisoryLock(anyLong())).thenReturn(false);
+        // The winner commits while we poll
+        when(repository.findUnexpired(any())).thenReturn(List.of(), List.of(), List.of(), List.of(first));
+
+        assertThat(service(repository).signingKey().kid()).isEqualTo(first.getKid());
+    }
+
+    @Test
+    void noKeyAfterTheBoundedWaitFailsWithoutCachingAnEmptyRing() {
+        JwtSigningKey first = firstKeyCreatedByAnotherInstance();
+        JwtSigningKeyRepository repository = mock(JwtSigningKeyRepository.class);
+        when(repository.tryAdvisoryLock(anyLong())).thenReturn(false);
+        when(repository.findUnexpired(any())).thenReturn(List.of());
+        JwtSigningKeyService service = service(repository);
+
+        assertThatThrownBy(service::signingKey).isInstanceOf(IllegalStateException.class);
+
+        when(repository.findUnexpired(any())).thenReturn(List.of(first));
+        assertThat(service.signingKey().kid()).isEqualTo(first.getKid());
+    }
+
+    private static JwtSigningKey firstKeyCreatedByAnotherInstance() {
+        List<JwtSigningKey> table = new ArrayList<>();
+        JwtSigningKeyRepository repository = mock(JwtSigningKeyRepository.class);
+        when(repository.tryAdvisoryLock(anyLong())).thenReturn(true);
+        when(repository.findFirstByOrderByCreatedAtDesc()).thenReturn(Optional.empty());
+        when(repository.save(any())).thenAnswer(invocation -> {
+            table.add(invocation.getArgument(0));
+            return invocation.getArgument(0);
+        });
+        when(repository.findUnexpired(any())).thenAnswer(invocation -> List.copyOf(table));
+
+        String kid = service(repository).signingKey().kid();
+        assertThat(table).extracting(JwtSigningKey::getKid).containsExactly(kid);
+        return table.get(0);
+    }
+
+    private static JwtSigningKeyService service(JwtSigningKeyRepository repository) {
+        return new JwtSigningKeyService(repository, mock(PlatformTransactionManager.class), SECRET, 900_000,
+                604_800_000, 3_600_000, 300_000, 10_000);
+    }
+}
@@ -0,0 +1,97 @@
+package com.tracemydata.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.tracemydata.model.RefreshToken;
+import com.tracemydata.model.User;
+import com.tracemydata.repository.RefreshTokenRepository;
+import com.tracemydata.repository.UserRepository;
+import com.tracemydata.util.SecureTokens;
+
+class RefreshTokenServiceTest {
+
+    private RefreshTokenRepository refreshTokenRepository;
+    private UserRepository userRepo;
+    private RefreshTokenService service;
+
+    private final UUID userId = UUID.randomUUID();
+    private final UUID familyId = UUID.randomUUID();
+
+    @BeforeEach
+    void setUp() {
+        refreshTokenRepository = mock(RefreshTokenRepository.class);
+        userRepo = mock(UserRepository.class);
+        PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+        ShardDirectory shards = new ShardDirectory(null, transactionManager, false, List.of(), "single", 0);
+        service = new RefreshTokenService(refreshTokenRepository, userRepo, shards, transactionManager);
+        ReflectionTestUtils.setField(service, "refreshExpirationMs", 60_000L);
+
+        User user = new User();
+        user.setId(userId);
+        user.setEmail("alice@example.com");
+        when(userRepo.findById(userId)).thenReturn(Optional.of(user));
+    }
+
+    @Test
+    void rotationMarksTheOldTokenUsedAndKeepsTheFamily() {
+        stored("token-1", LocalDateTime.now().plusMinutes(1));
+        when(refreshTokenRepository.markUsed(any(), any())).thenReturn(1);
+
+        RefreshTokenService.Rotation rotation = service.rotate("token-1");
+
+        ArgumentCaptor<RefreshToken> saved = ArgumentCaptor.forClass(RefreshToken.class);
+        verify(refreshTokenRepository).save(saved.capture());
+        assertThat(saved.getValue().getFamilyId()).isEqualTo(familyId);
+        assertThat(saved.getValue().getTokenHash()).isEqualTo(SecureTokens.hash(rotation.refreshToken()));
+        assertThat(rotation.refreshToken()).isNotEqualTo("token-1");
+        assertThat(rotation.user().getId()).isEqualTo(userId);
+        verify(refreshTokenRepository, never()).revokeFamily(any(), any());
+    }
+
+    @Test
+    void reusingARotatedTokenRevokesTheFamily() {
+        stored("token-1", LocalDateTime.now().plusMinutes(1));
+        // The conditional UPDATE found the row already used: another holder rotated it first
+        when(refreshTokenRepository.markUsed(any(), any())).thenReturn(0);
+
+        assertThatThrownBy(() -> service.rotate("token-1"))
+                .isInstanceOf(InvalidRefreshTokenException.class)
+                .hasMessageContaining("already used");
+        verify(refreshTokenRepository).revokeFamily(eq(familyId), any());
+        verify(refreshTokenRepository, never()).save(any());
+    }
+
+    @Test
+    void expiredOrUnknownTokensAreRejectedWithoutSideEffects() {
+        stored("token-1", LocalDateTime.now().minusSeconds(1));
+
+        assertThatThrownBy(() -> service.rotate("token-1")).isInstanceOf(InvalidRefreshTokenException.class);
+        assertThatThrownBy(() -> service.rotate("unknown")).isInstanceOf(InvalidRefreshTokenException.class);
+        verify(refreshTokenRepository, never()).markUsed(any(), any());
+        verify(refreshTokenRepository, never()).revokeFamily(any(), any());
+    }
+
+    private void stored(String token, LocalDateTime expiresAt) {
+        RefreshToken row = new RefreshToken(SecureTokens.hash(token), userId, familyId, expiresAt);
+        ReflectionTestUtils.setField(row, "id", 7L);
+        when(refreshTokenRepository.findByTokenHash(SecureTokens.hash(token))).thenReturn(Optional.of(row));
+    }
+}
@@ -0,0 +1,46 @@
+package com.tracemydata.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.tracemydata.config.ShardRoutingDataSource;
+
+class ShardDirectoryTest {
+
+    private final PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+
+    @Test
+    void enabledWithoutTheRoutingDataSourceFailsAtStartup() {
+        JdbcTemplate plain = new JdbcTemplate(mock(DataSource.class));
+
+        assertThatThrownBy(() -> directory(plain, true))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("shard-routing");
+        assertThat(directory(plain, false).getShardCount()).isEqualTo(1);
+    }
+
+    @Test
+    void enabledBehindTheRoutingDataSourceStarts() {
+        ShardRoutingDataSource routing = new ShardRoutingDataSource(
+                List.of(mock(DataSource.class), mock(DataSource.class)));
+        routing.afterPropertiesSet();
+        JdbcTemplate sharded = new JdbcTemplate(new LazyConnectionDataSourceProxy(routing));
+
+        assertThat(directory(sharded, true).getShardCount()).isEqualTo(2);
+    }
+
+    private ShardDirectory directory(JdbcTemplate jdbcTemplate, boolean enabled) {
+        return new ShardDirectory(jdbcTemplate, transactionManager, enabled, List.of("jdbc:postgresql://shard1/db"),
+                "single", 1000);
+    }
+}
@@ -0,0 +1,34 @@
+package com.tracemydata.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+import io.jsonwebtoken.MalformedJwtException;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class AuthMetricsTest {
+
+    @Test
+    void reasonTagIsTheReasonCodeNeverTheMessage() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        AuthMetrics metrics = new AuthMetrics(registry);
+
+        metrics.failure("login", metrics.start(),
+                new AuthFailureException(AuthFailureException.UNKNOWN_ACCOUNT, "User not found"));
+        metrics.failure("login", metrics.start(),
+                new AuthFailureException(AuthFailureException.BAD_CREDENTIALS, "Invalid credentials"));
+        metrics.failure("login", metrics.start(),
+                new AuthFailureException(AuthFailureException.BAD_CREDENTIALS, "Invalid credentials"));
+        metrics.failure("google", metrics.start(), new MalformedJwtException("bad token for bob@example.com"));
+        metrics.failure("login", metrics.start(), new RuntimeException("OAuth login failed for carol@example.com"));
+        metrics.failure("login", metrics.start(), AuthMetrics.RATE_LIMITED);
+
+        assertThat(registry.find("auth.endpoint").timers()).extracting(timer -> timer.getId().getTag("reason"))
+                .containsExactlyInAnyOrder("unknown_account", "bad_credentials", "invalid_token", "error",
+                        "rate_limited");
+        Timer badCredentials = registry.get("auth.endpoint").tag("reason", "bad_credentials").timer();
+        assertThat(badCredentials.count()).isEqualTo(2);
+    }
+}
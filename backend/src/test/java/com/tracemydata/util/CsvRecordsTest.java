@@ -0,0 +1,64 @@
+package com.tracemydata.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class CsvRecordsTest {
+
+    private static CsvRecords records(String csv) {
+        return new CsvRecords(new BufferedReader(new StringReader(csv)), 10, 3);
+    }
+
+    @Test
+    void parsesQuotedFieldsWithCommasQuotesAndLineBreaks() throws IOException {
+        CsvRecords records = records("a,\"b,c\"\n\"say \"\"hi\"\"\",\"x\ny\"\nlast,row");
+
+        assertThat(records.next()).containsExactly("a", "b,c");
+        assertThat(records.next()).containsExactly("say \"hi\"", "x\ny");
+        assertThat(records.getRecordLine()).isEqualTo(2);
+        assertThat(records.next()).containsExactly("last", "row");
+        assertThat(records.getRecordLine()).isEqualTo(4);
+        assertThat(records.next()).isNull();
+    }
+
+    @Test
+    void skipsARecordWithAFieldOverTheLimitAndGoesOn() throws IOException {
+        CsvRecords records = records("ok,1\n\"" + "x".repeat(10_000) + "\",2\nnext,3\n");
+
+        assertThat(records.next()).containsExactly("ok", "1");
+        assertThatThrownBy(records::next).isInstanceOf(RecordTooLongException.class)
+                .satisfies(e -> assertThat(((RecordTooLongException) e).getLine()).isEqualTo(2));
+        assertThat(records.next()).containsExactly("next", "3");
+        assertThat(records.getRecordLine()).isEqualTo(3);
+    }
+
+    @Test
+    void skipsARecordWithTooManyFields() throws IOException {
+        CsvRecords records = records("1,2,3,4\n5,6,7\n");
+
+        assertThatThrownBy(records::next).isInstanceOf(RecordTooLongException.class);
+        List<String> next = records.next();
+        assertThat(next).containsExactly("5", "6", "7");
+    }
+
+    @Test
+    void failsOnAnUnterminatedQuote() throws IOException {
+        CsvRecords records = records("a,\"open\nnever closed");
+
+        assertThatThrownBy(records::next).isInstanceOf(IOException.class)
+                .isNotInstanceOf(RecordTooLongException.class)
+                .hasMessageContaining("line 1");
+    }
+
+    @Test
+    void formatsWithQuotingOnlyWhereNeeded() {
+        assertThat(CsvRecords.format("plain", "a,b", "q\"", null)).isEqualTo("plain,\"a,b\",\"q\"\"\",\n");
+    }
+}
@@ -0,0 +1,105 @@
+package com.tracemydata.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class ExpiringLruCacheTest {
+
+    private static final long LATER = System.currentTimeMillis() + 60_000;
+
+    @Test
+    void evictsLeastRecentlyUsedWhenFull() {
+        ExpiringLruCache<String, String> cache = new ExpiringLruCache<>(2);
+        cache.put("a", "1", LATER);
+        cache.put("b", "2", LATER);
+        cache.get("a"); // b is now the eldest
+        cache.put("c", "3", LATER);
+
+        assertThat(cache.get("b")).isNull();
+        assertThat(cache.get("a")).isEqualTo("1");
+        assertThat(cache.get("c")).isEqualTo("3");
+        assertThat(cache.getEvictions()).isEqualTo(1);
+    }
+
+    @Test
+    void expiredEntriesAreMissesAndGetDropped() throws InterruptedException {
+        ExpiringLruCache<String, String> cache = new ExpiringLruCache<>(10);
+        cache.put("soon", "x", System.currentTimeMillis() + 20);
+        cache.put("past", "y", System.currentTimeMillis() - 1);
+        assertThat(cache.size()).isEqualTo(1); // already-expired puts are ignored
+
+        TimeUnit.MILLISECONDS.sleep(40);
+
+        assertThat(cache.get("soon")).isNull();
+        assertThat(cache.size()).isZero();
+        assertThat(cache.getMisses()).isEqualTo(1);
+    }
+
+    @Test
+    void purgeExpiredAndRemoveIf() throws InterruptedException {
+        ExpiringLruCache<String, Integer> cache = new ExpiringLruCache<>(10);
+        cache.put("short", 1, System.currentTimeMillis() + 20);
+        cache.put("even", 2, LATER);
+        cache.put("odd", 3, LATER);
+        TimeUnit.MILLISECONDS.sleep(40);
+
+        assertThat(cache.purgeExpired()).isEqualTo(1);
+        assertThat(cache.removeIf((key, value) -> value % 2 == 0)).isEqualTo(1);
+        assertThat(cache.get("odd")).isEqualTo(3);
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    void rejectsNonPositiveCapacity() {
+        assertThatThrownBy(() -> new ExpiringLruCache<>(0)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void concurrentUseNeverExceedsCapacity() throws Exception {
+        int threads = 8;
+        int capacity = 64;
+        ExpiringLruCache<Integer, Integer> cache = new ExpiringLruCache<>(capacity);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<?>> work = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int offset = t * 1000;
+                work.add(pool.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < 5_000; i++) {
+                        int key = offset + (i % 200);
+                        Integer value = cache.get(key);
+                        if (value != null) {
+                            assertThat(value).isEqualTo(key); // never another thread's value
+                        }
+                        cache.put(key, key, LATER);
+                        if (i % 50 == 0) {
+                            cache.remove(key);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : work) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertThat(cache.size()).isLessThanOrEqualTo(capacity);
+        assertThat(cache.getHits() + cache.getMisses()).isEqualTo(threads * 5_000L);
+    }
+}
@@ -0,0 +1,99 @@
+package com.tracemydata.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+import io.opentelemetry.sdk.trace.samplers.Sampler;
+
+class FileSpanExporterTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void writesOneJsonLinePerSpan() throws Exception {
+        Path file = dir.resolve("traces/spans.jsonl"); // the directory does not exist yet
+        SdkTracerProvider provider = provider(new FileSpanExporter(file, objectMapper));
+        Tracer tracer = provider.get("test");
+
+        Span root = tracer.spanBuilder("POST /api/auth/login").setNoParent().startSpan();
+        Span child = tracer.spanBuilder("bcrypt").setParent(Context.current().with(root)).startSpan();
+        child.setAttribute("cost", 12L);
+        child.addEvent("rehash");
+        child.setStatus(StatusCode.ERROR);
+        child.end();
+        root.end();
+        provider.shutdown().join(5, TimeUnit.SECONDS);
+
+        List<JsonNode> lines = read(file);
+        assertThat(lines).hasSize(2);
+        JsonNode first = lines.get(0);
+        JsonNode second = lines.get(1);
+        assertThat(first.get("name").asText()).isEqualTo("bcrypt");
+        assertThat(first.get("traceId").asText()).isEqualTo(second.get("traceId").asText());
+        assertThat(first.get("parentSpanId").asText()).isEqualTo(second.get("spanId").asText());
+        assertThat(first.get("status").asText()).isEqualTo("ERROR");
+        assertThat(first.get("attributes").get("cost").asLong()).isEqualTo(12);
+        assertThat(first.get("events").get(0).asText()).isEqualTo("rehash");
+        assertThat(first.get("sampled").asBoolean()).isTrue();
+        assertThat(second.get("parentSpanId").isNull()).isTrue();
+        assertThat(second.has("events")).isFalse();
+        assertThat(second.get("durationMs").asDouble()).isGreaterThanOrEqualTo(0);
+    }
+
+    @Test
+    void appendsAcrossRestartsAndFailsAfterShutdown() throws Exception {
+        Path file = dir.resolve("spans.jsonl");
+        for (int run = 0; run < 2; run++) {
+            SdkTracerProvider provider = provider(new FileSpanExporter(file, objectMapper));
+            provider.get("test").spanBuilder("run " + run).startSpan().end();
+            provider.shutdown().join(5, TimeUnit.SECONDS);
+        }
+        assertThat(read(file)).extracting(line -> line.get("name").asText()).containsExactly("run 0", "run 1");
+
+        FileSpanExporter closed = new FileSpanExporter(file, objectMapper);
+        closed.shutdown();
+        SdkTracerProvider provider = SdkTracerProvider.builder().setSampler(Sampler.alwaysOn()).build();
+        Span span = provider.get("test").spanBuilder("late").startSpan();
+        span.end();
+        assertThat(closed.export(List.of(((ReadableSpan) span).toSpanData())).isSuccess())
+                .isFalse();
+        provider.shutdown();
+    }
+
+    private static SdkTracerProvider provider(FileSpanExporter exporter) {
+        return SdkTracerProvider.builder()
+                .setSampler(Sampler.alwaysOn())
+                .addSpanProcessor(SimpleSpanProcessor.create(exporter))
+                .build();
+    }
+
+    private List<JsonNode> read(Path file) throws Exception {
+        return Files.readAllLines(file).stream().map(line -> {
+            try {
+                return objectMapper.readTree(line);
+            } catch (Exception e) {
+                throw new AssertionError("Not JSON: " + line, e);
+            }
+        }).toList();
+    }
+}
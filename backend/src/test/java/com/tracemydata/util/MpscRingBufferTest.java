@@ -0,0 +1,95 @@
+package com.tracemydata.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class MpscRingBufferTest {
+
+    @Test
+    void fifoUntilFullAndAcrossLaps() {
+        MpscRingBuffer<Integer> buffer = new MpscRingBuffer<>(4);
+        for (int lap = 0; lap < 3; lap++) {
+            for (int i = 0; i < 4; i++) {
+                assertThat(buffer.offer(lap * 10 + i)).isTrue();
+            }
+            assertThat(buffer.offer(-1)).isFalse();
+            assertThat(buffer.size()).isEqualTo(4);
+            for (int i = 0; i < 4; i++) {
+                assertThat(buffer.poll()).isEqualTo(lap * 10 + i);
+            }
+            assertThat(buffer.poll()).isNull();
+        }
+    }
+
+    @Test
+    void rejectsCapacitiesThatAreNotPowersOfTwo() {
+        assertThatThrownBy(() -> new MpscRingBuffer<>(6)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new MpscRingBuffer<>(1)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void manyProducersOneConsumerLoseNothing() throws Exception {
+        // Never more threads than cores would allow to run, but always more than one producer
+        int producers = Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors()));
+        int perProducer = 20_000;
+        MpscRingBuffer<long[]> buffer = new MpscRingBuffer<>(256);
+        ExecutorService pool = Executors.newFixedThreadPool(producers);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> work = new ArrayList<>();
+        try {
+            for (int p = 0; p < producers; p++) {
+                long producer = p;
+                work.add(pool.submit(() -> {
+                    start.await();
+                    for (long i = 0; i < perProducer; i++) {
+                        // Yield while full, so the consumer gets the CPU even on a single core
+                        while (!buffer.offer(new long[] { producer, i })) {
+                            Thread.yield();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+
+            // Per producer, elements must arrive complete and in the order they were offered;
+            // counted here and asserted once at the end
+            long[] next = new long[producers];
+            int outOfOrder = 0;
+            int received = 0;
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+            while (received < producers * perProducer && System.nanoTime() < deadline) {
+                long[] element = buffer.poll();
+                if (element == null) {
+                    Thread.yield();
+                    continue;
+                }
+                int producer = (int) element[0];
+                if (element[1] != next[producer]) {
+                    outOfOrder++;
+                }
+                next[producer] = element[1] + 1;
+                received++;
+            }
+            for (Future<?> future : work) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+            assertThat(received).isEqualTo(producers * perProducer);
+            assertThat(outOfOrder).isZero();
+            assertThat(next).containsOnly(perProducer);
+            assertThat(buffer.poll()).isNull();
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.tracemydata.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+/**
+ * ShardDirectory routes by ShardKeys.bucketOf() and ShardMover selects rows by
+ * user_bucket() from V9, so the two must agree on every email. Set TEST_POSTGRES_URL
+ * (plus TEST_POSTGRES_USER and TEST_POSTGRES_PASSWORD) to a scratch database to run it;
+ * it creates the function from the migration under another name.
+ */
+@EnabledIfEnvironmentVariable(named = "TEST_POSTGRES_URL", matches = ".+")
+class ShardKeysPostgresTest {
+
+    private JdbcTemplate jdbc;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(System.getenv("TEST_POSTGRES_URL"),
+                System.getenv("TEST_POSTGRES_USER"), System.getenv("TEST_POSTGRES_PASSWORD"));
+        jdbc = new JdbcTemplate(dataSource);
+        String migration = Files.readString(Path.of("sql/V9__user_sharding.sql"), StandardCharsets.UTF_8);
+        int start = migration.indexOf("CREATE OR REPLACE FUNCTION user_bucket(");
+        int end = migration.indexOf("$$;", start) + 3;
+        jdbc.execute(migration.substring(start, end).replace("user_bucket(", "user_bucket_test("));
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbc.execute("DROP FUNCTION IF EXISTS user_bucket_test(TEXT)");
+    }
+
+    @Test
+    void userBucketMatchesShardKeys() {
+        ShardKeysTest.KNOWN_BUCKETS.forEach((email, bucket) -> {
+            Integer sql = jdbc.queryForObject("SELECT user_bucket_test(?)", Integer.class, email);
+
+            assertThat(sql).as(email).isEqualTo(bucket).isEqualTo(ShardKeys.bucketOf(email));
+        });
+    }
+}
@@ -0,0 +1,70 @@
+package com.tracemydata.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+
+class ShardKeysTest {
+
+    // Buckets worked out independently (SHA-256, first four bytes, mod 1024); ShardKeysPostgresTest
+    // checks user_bucket() in V9 against the same emails
+    static final Map<String, Integer> KNOWN_BUCKETS = new LinkedHashMap<>();
+
+    static {
+        KNOWN_BUCKETS.put("alice@example.com", 25);
+        KNOWN_BUCKETS.put("  Alice@Example.COM  ", 25); // spaces trimmed, ASCII lower-cased
+        KNOWN_BUCKETS.put("bob@example.com", 191);
+        KNOWN_BUCKETS.put("\tbob@example.com", 861); // only spaces are trimmed
+        KNOWN_BUCKETS.put("user+tag@sub.example.org", 901);
+        KNOWN_BUCKETS.put("ÉLODIE@exemple.fr", 679); // non-ASCII keeps its case
+        KNOWN_BUCKETS.put("élodie@exemple.fr", 762);
+        KNOWN_BUCKETS.put("Ünïcödé@例え.jp", 1014);
+        KNOWN_BUCKETS.put("", 66);
+    }
+
+    @Test
+    void bucketOfEmailMatchesKnownValues() {
+        KNOWN_BUCKETS.forEach((email, bucket) -> assertThat(ShardKeys.bucketOf(email)).as(email).isEqualTo(bucket));
+    }
+
+    @Test
+    void normalizeTrimsSpacesAndLowerCasesAsciiOnly() {
+        assertThat(ShardKeys.normalize("  Alice@Example.COM ")).isEqualTo("alice@example.com");
+        assertThat(ShardKeys.normalize("ÉLODIE@Exemple.fr")).isEqualTo("Élodie@exemple.fr");
+        assertThat(ShardKeys.normalize("\tx@y.z\n")).isEqualTo("\tx@y.z\n");
+    }
+
+    @Test
+    void newUserIdCarriesItsBucket() {
+        for (int bucket = 0; bucket < ShardKeys.BUCKETS; bucket++) {
+            UUID id = ShardKeys.newUserId(bucket);
+
+            assertThat(id.version()).isEqualTo(8);
+            assertThat(id.variant()).isEqualTo(2);
+            assertThat(ShardKeys.bucketOf(id)).isEqualTo(bucket);
+            assertThat(UUID.fromString(id.toString())).isEqualTo(id);
+        }
+        assertThat(ShardKeys.bucketOf(ShardKeys.newUserId("alice@example.com"))).isEqualTo(25);
+    }
+
+    @Test
+    void idsWithoutABucketAreUnknown() {
+        assertThat(ShardKeys.bucketOf(UUID.randomUUID())).isEqualTo(ShardKeys.UNKNOWN);
+        assertThat(ShardKeys.bucketOf((UUID) null)).isEqualTo(ShardKeys.UNKNOWN);
+    }
+
+    @Test
+    void tokenPrefixRoundTrips() {
+        assertThat(ShardKeys.bucketOfToken(ShardKeys.prefixToken(0, "abc"))).isZero();
+        assertThat(ShardKeys.bucketOfToken(ShardKeys.prefixToken(1023, "a.b"))).isEqualTo(1023);
+        assertThat(ShardKeys.prefixToken(ShardKeys.UNKNOWN, "abc")).isEqualTo("abc");
+        assertThat(ShardKeys.bucketOfToken("abc")).isEqualTo(ShardKeys.UNKNOWN);
+        assertThat(ShardKeys.bucketOfToken("1024.abc")).isEqualTo(ShardKeys.UNKNOWN);
+        assertThat(ShardKeys.bucketOfToken("1x.abc")).isEqualTo(ShardKeys.UNKNOWN);
+        assertThat(ShardKeys.bucketOfToken(null)).isEqualTo(ShardKeys.UNKNOWN);
+    }
+}
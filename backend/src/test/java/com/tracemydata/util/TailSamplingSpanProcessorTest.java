@@ -0,0 +1,120 @@
+package com.tracemydata.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.tracemydata.config.TracingConfig;
+
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+
+class TailSamplingSpanProcessorTest {
+
+    private final List<SpanData> exported = new CopyOnWriteArrayList<>();
+    private TailSamplingSpanProcessor processor;
+    private SdkTracerProvider provider;
+    private Tracer tracer;
+
+    @BeforeEach
+    void setUp() {
+        processor = new TailSamplingSpanProcessor(new Collecting(), 1000, 100, 10, 60_000);
+        // Head sampling at 0: every trace is unsampled and only tail sampling decides
+        provider = SdkTracerProvider.builder()
+                .setSampler(new TracingConfig().otelSampler(0.0, true))
+                .addSpanProcessor(processor)
+                .build();
+        tracer = provider.get("test");
+    }
+
+    @AfterEach
+    void tearDown() {
+        provider.shutdown().join(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void healthyTracesAreDroppedWithoutBuffering() {
+        Span root = tracer.spanBuilder("GET /ok").startSpan();
+        Span child = tracer.spanBuilder("db").setParent(Context.current().with(root)).startSpan();
+        child.end();
+        assertThat(processor.getPendingTraces()).isZero(); // nothing held for a fast, successful span
+        root.end();
+
+        finish();
+        assertThat(exported).isEmpty();
+        assertThat(processor.getDiscardedTraces()).isEqualTo(1);
+    }
+
+    @Test
+    void failedTracesExportOnlyTheFailedSpansAndTheRoot() {
+        Span root = tracer.spanBuilder("POST /login").startSpan();
+        Context parent = Context.current().with(root);
+        tracer.spanBuilder("cache").setParent(parent).startSpan().end();
+        Span failing = tracer.spanBuilder("db").setParent(parent).startSpan();
+        failing.setStatus(StatusCode.ERROR);
+        failing.end();
+        root.end();
+
+        finish();
+        assertThat(exported).extracting(SpanData::getName).containsExactly("db", "POST /login");
+        assertThat(exported).allMatch(span -> !span.getSpanContext().isSampled());
+        assertThat(processor.getKeptTraces()).isEqualTo(1);
+    }
+
+    @Test
+    void slowRootsAreKept() {
+        long start = System.nanoTime();
+        Span root = tracer.spanBuilder("GET /slow").setStartTimestamp(start, TimeUnit.NANOSECONDS).startSpan();
+        root.end(start + TimeUnit.SECONDS.toNanos(2), TimeUnit.NANOSECONDS);
+
+        finish();
+        assertThat(exported).extracting(SpanData::getName).containsExactly("GET /slow");
+    }
+
+    @Test
+    void serverErrorsCountAsFailures() {
+        Span root = tracer.spanBuilder("GET /boom").startSpan();
+        root.setAttribute("http.response.status_code", 503L);
+        root.end();
+
+        finish();
+        assertThat(exported).hasSize(1);
+    }
+
+    // Exports run on the processor's own thread; shutdown waits for them
+    private void finish() {
+        processor.shutdown();
+    }
+
+    private final class Collecting implements SpanExporter {
+
+        @Override
+        public CompletableResultCode export(Collection<SpanData> spans) {
+            exported.addAll(spans);
+            return CompletableResultCode.ofSuccess();
+        }
+
+        @Override
+        public CompletableResultCode flush() {
+            return CompletableResultCode.ofSuccess();
+        }
+
+        @Override
+        public CompletableResultCode shutdown() {
+            return CompletableResultCode.ofSuccess();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.tracemydata.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class TokenBucketRateLimiterTest {
+
+    @Test
+    void allowsBurstThenReportsWait() {
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter("test", 3, 1, 100);
+
+        assertThat(limiter.tryAcquire("ip")).isZero();
+        assertThat(limiter.tryAcquire("ip")).isZero();
+        assertThat(limiter.tryAcquire("ip")).isZero();
+
+        long wait = limiter.tryAcquire("ip");
+        assertThat(wait).isPositive().isLessThanOrEqualTo(TimeUnit.MINUTES.toNanos(1));
+        assertThat(limiter.getRejected()).isEqualTo(1);
+        assertThat(limiter.tryAcquire("other")).isZero(); // keys are independent
+    }
+
+    @Test
+    void refillsOverTime() throws InterruptedException {
+        // One token every millisecond
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter("test", 1, 60_000, 100);
+        assertThat(limiter.tryAcquire("ip")).isZero();
+        assertThat(limiter.tryAcquire("ip")).isPositive();
+
+        TimeUnit.MILLISECONDS.sleep(5);
+
+        assertThat(limiter.tryAcquire("ip")).isZero();
+    }
+
+    @Test
+    void concurrentCallersNeverOverdrawABucket() throws Exception {
+        int capacity = 100;
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter("test", capacity, 1, 100);
+        int threads = 16;
+        AtomicInteger allowed = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<?>> work = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                work.add(pool.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < 50; i++) {
+                        if (limiter.tryAcquire("victim@example.com") == 0) {
+                            allowed.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : work) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        // 800 attempts within well under a minute: exactly the burst gets through
+        assertThat(allowed.get()).isEqualTo(capacity);
+        assertThat(limiter.getRejected()).isEqualTo(threads * 50L - capacity);
+    }
+
+    @Test
+    void newKeysShareOneBucketWhenTableIsFull() {
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter("test", 2, 1, 2);
+        limiter.tryAcquire("a");
+        limiter.tryAcquire("b");
+
+        assertThat(limiter.tryAcquire("c")).isZero();
+        assertThat(limiter.tryAcquire("d")).isZero();
+        assertThat(limiter.tryAcquire("e")).isPositive(); // c, d and e drew from the same overflow bucket
+        assertThat(limiter.size()).isEqualTo(2);
+    }
+
+    @Test
+    void evictsOnlyRefilledKeys() throws InterruptedException {
+        TokenBucketRateLimiter fast = new TokenBucketRateLimiter("fast", 1, 60_000, 100);
+        fast.tryAcquire("a");
+        fast.tryAcquire("b");
+        TimeUnit.MILLISECONDS.sleep(5);
+        assertThat(fast.evictIdle()).isEqualTo(2);
+        assertThat(fast.size()).isZero();
+
+        TokenBucketRateLimiter slow = new TokenBucketRateLimiter("slow", 5, 1, 100);
+        slow.tryAcquire("a");
+        assertThat(slow.evictIdle()).isZero();
+    }
+}
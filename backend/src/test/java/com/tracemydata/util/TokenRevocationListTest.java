@@ -0,0 +1,97 @@
+package com.tracemydata.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class TokenRevocationListTest {
+
+    private static Date inMinutes(int minutes) {
+        return new Date(System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(minutes));
+    }
+
+    @Test
+    void revokedIdsAreFoundAndOthersAreNot() {
+        TokenRevocationList list = new TokenRevocationList(1024);
+        list.revoke("jti-1", inMinutes(15));
+
+        assertThat(list.isRevoked("jti-1")).isTrue();
+        assertThat(list.isRevoked("jti-2")).isFalse();
+        assertThat(list.isRevoked(null)).isFalse();
+    }
+
+    @Test
+    void ignoresTokensThatAlreadyExpired() {
+        TokenRevocationList list = new TokenRevocationList(1024);
+        list.revoke("old", new Date(System.currentTimeMillis() - 1));
+
+        assertThat(list.size()).isZero();
+        assertThat(list.isRevoked("old")).isFalse();
+    }
+
+    @Test
+    void entriesSurviveOneGeneration() {
+        TokenRevocationList list = new TokenRevocationList(1024);
+        list.revoke("jti-1", inMinutes(15));
+
+        list.rotate();
+        assertThat(list.isRevoked("jti-1")).isTrue();
+
+        // Two rotations are two access-token lifetimes: the token itself is long expired by then
+        list.rotate();
+        assertThat(list.isRevoked("jti-1")).isFalse();
+    }
+
+    @Test
+    void rejectsSizesThatAreNotPowersOfTwo() {
+        assertThatThrownBy(() -> new TokenRevocationList(1000)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new TokenRevocationList(32)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void concurrentRevocationsAreAllVisible() throws Exception {
+        // Small filter so threads keep setting bits in the same words
+        TokenRevocationList list = new TokenRevocationList(4096);
+        int threads = 8;
+        int perThread = 500;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<?>> work = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                work.add(pool.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < perThread; i++) {
+                        list.revoke("jti-" + thread + "-" + i, inMinutes(15));
+                        list.isRevoked("unrelated-" + thread + "-" + i);
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : work) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        for (int t = 0; t < threads; t++) {
+            for (int i = 0; i < perThread; i++) {
+                assertThat(list.isRevoked("jti-" + t + "-" + i)).as("jti-%d-%d", t, i).isTrue();
+            }
+        }
+        assertThat(list.size()).isEqualTo(threads * perThread);
+    }
+}
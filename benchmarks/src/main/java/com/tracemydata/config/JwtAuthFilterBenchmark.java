@@ -0,0 +1,109 @@
+package com.tracemydata.config;
+
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.servlet.FilterChain;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.UserDetailsService;
+
+import com.tracemydata.model.User;
+import com.tracemydata.util.BenchmarkFixtures;
+import com.tracemydata.util.JwtPrincipalCache;
+import com.tracemydata.util.JwtUtil;
+import com.tracemydata.util.TokenRevocationList;
+import com.tracemydata.util.TokenVersionRegistry;
+
+/**
+ * doFilterInternal with a stubbed UserDetailsService (no database).
+ * "cachedToken" replays one token and hits the principal cache; "uncachedToken"
+ * alternates two tokens through a one-entry cache, so every call verifies the JWT.
+ * "statelessToken" is "uncachedToken" with app.jwt.stateless-auth, building the
+ * principal from the claims instead of calling the UserDetailsService.
+ * All consult a revocation list holding 10k revoked ids, as after a busy hour of logouts.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JwtAuthFilterBenchmark {
+
+    private static final FilterChain NOOP_CHAIN = (request, response) -> { };
+
+    private JwtAuthFilter cachingFilter;
+    private JwtAuthFilter missingFilter;
+    private JwtAuthFilter statelessFilter;
+    private MockHttpServletRequest request;
+    private MockHttpServletRequest otherRequest;
+    private MockHttpServletResponse response;
+    private boolean flip;
+
+    @Setup
+    public void setUp() {
+        JwtUtil jwtUtil = BenchmarkFixtures.jwtUtil();
+        User user = BenchmarkFixtures.user();
+        UserDetailsService userDetailsService = BenchmarkFixtures::userDetails;
+
+        TokenRevocationList revocationList = new TokenRevocationList(1 << 20);
+        Date expiresAt = new Date(System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1));
+        for (int i = 0; i < 10_000; i++) {
+            revocationList.revoke(UUID.randomUUID().toString(), expiresAt);
+        }
+
+        TokenVersionRegistry tokenVersions = new TokenVersionRegistry(TimeUnit.MINUTES.toMillis(15));
+
+        cachingFilter = new JwtAuthFilter(jwtUtil, userDetailsService, new JwtPrincipalCache(1000),
+                revocationList, tokenVersions, false);
+        missingFilter = new JwtAuthFilter(jwtUtil, userDetailsService, new JwtPrincipalCache(1),
+                revocationList, tokenVersions, false);
+        statelessFilter = new JwtAuthFilter(jwtUtil, userDetailsService, new JwtPrincipalCache(1),
+                revocationList, tokenVersions, true);
+
+        request = bearerRequest(jwtUtil.generateToken(user));
+        user.setEmail("other.user@example.com");
+        otherRequest = bearerRequest(jwtUtil.generateToken(user));
+        response = new MockHttpServletResponse();
+    }
+
+    @Benchmark
+    public void cachedToken() throws Exception {
+        cachingFilter.doFilterInternal(request, response, NOOP_CHAIN);
+        SecurityContextHolder.clearContext(); // the filter only authenticates an empty context
+    }
+
+    @Benchmark
+    public void uncachedToken() throws Exception {
+        flip = !flip;
+        missingFilter.doFilterInternal(flip ? request : otherRequest, response, NOOP_CHAIN);
+        SecurityContextHolder.clearContext();
+    }
+
+    @Benchmark
+    public void statelessToken() throws Exception {
+        flip = !flip;
+        statelessFilter.doFilterInternal(flip ? request : otherRequest, response, NOOP_CHAIN);
+        SecurityContextHolder.clearContext();
+    }
+
+    private static MockHttpServletRequest bearerRequest(String token) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/dashboard");
+        request.addHeader("Authorization", "Bearer " + token);
+        return request;
+    }
+}
@@ -0,0 +1,42 @@
+package com.tracemydata.service;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.tracemydata.dto.AuthResponse;
+import com.tracemydata.model.User;
+import com.tracemydata.util.BenchmarkFixtures;
+
+// Same package as AuthService so the package-private mapper can be called directly
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AuthResponseBenchmark {
+
+    private User user;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        user = BenchmarkFixtures.user();
+        token = BenchmarkFixtures.jwtUtil().generateToken(user);
+    }
+
+    @Benchmark
+    public AuthResponse mapToAuthResponse() {
+        return AuthService.mapToAuthResponse(user, token);
+    }
+}
@@ -0,0 +1,69 @@
+package com.tracemydata.util;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.tracemydata.model.User;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+// Builds the backend components by hand, without a Spring context or a database
+public final class BenchmarkFixtures {
+
+    public static final String JWT_SECRET = "benchmark-secret-benchmark-secret-benchmark-secret-0123456789";
+
+    private BenchmarkFixtures() {
+    }
+
+    public static JwtUtil jwtUtil() {
+        GoogleIdTokenVerifier googleVerifier = new GoogleIdTokenVerifier(
+                () -> new GoogleKeySource.GoogleKeySet(Map.of(), Long.MAX_VALUE), "benchmark-client", 60000);
+        JwtUtil jwtUtil = new JwtUtil(googleVerifier, new AdminAccounts(""), keyRing(), new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(jwtUtil, "jwtSecret", JWT_SECRET);
+        ReflectionTestUtils.setField(jwtUtil, "acceptLegacyHmac", true);
+        ReflectionTestUtils.setField(jwtUtil, "jwtExpirationMs", 86400000L);
+        jwtUtil.init();
+        return jwtUtil;
+    }
+
+    // One fresh ES256 key, active immediately, instead of JwtSigningKeyService's database
+    public static JwtKeyRing keyRing() {
+        try {
+            KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+            generator.initialize(new ECGenParameterSpec("secp256r1"));
+            KeyPair pair = generator.generateKeyPair();
+            String kid = JwtKeyRing.thumbprint((ECPublicKey) pair.getPublic());
+            return new JwtKeyRing(Map.of(kid, pair.getPublic()),
+                    List.of(new JwtKeyRing.SigningKey(kid, pair.getPrivate(), 0)));
+        } catch (java.security.GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static User user() {
+        User user = new User();
+        user.setId(UUID.randomUUID());
+        user.setEmail("bench.user@example.com");
+        user.setFirstName("Bench");
+        user.setLastName("User");
+        user.setAuthProvider("local");
+        user.setPasswordHash("$2a$10$7EqJtq98hPqEX7fNZaFWoOhi5BWX4Z3pV5QGv1.rWV1tqbH8WQb9u");
+        return user;
+    }
+
+    public static UserDetails userDetails(String email) {
+        return org.springframework.security.core.userdetails.User
+                .withUsername(email)
+                .password("")
+                .authorities("USER")
+                .build();
+    }
+}
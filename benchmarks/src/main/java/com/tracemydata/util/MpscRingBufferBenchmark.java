@@ -0,0 +1,58 @@
+package com.tracemydata.util;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.tracemydata.model.AuthEvent;
+
+/**
+ * What recording an auth event costs a request thread: building the event and
+ * offering it to the journal's ring buffer while 7 other producers do the same
+ * and one thread drains it, as the journal writer does. "record" is the producer
+ * side (should stay well under a microsecond), "drain" the writer's poll.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MpscRingBufferBenchmark {
+
+    private MpscRingBuffer<AuthEvent> buffer;
+    private UUID userId;
+
+    @Setup
+    public void setUp() {
+        buffer = new MpscRingBuffer<>(16384);
+        userId = UUID.randomUUID();
+    }
+
+    @Benchmark
+    @Group("journal")
+    @GroupThreads(8)
+    public boolean record() {
+        return buffer.offer(new AuthEvent(AuthEvent.LOGIN, userId, "bench.user@example.com",
+                "203.0.113.7", "Mozilla/5.0", System.currentTimeMillis()));
+    }
+
+    @Benchmark
+    @Group("journal")
+    @GroupThreads(1)
+    public AuthEvent drain() {
+        return buffer.poll();
+    }
+}
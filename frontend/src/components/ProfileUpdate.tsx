@@ -5,6 +5,7 @@ import type { User } from '../type/User';
 import { ToastContainer, toast } from 'react-toastify';
 import 'react-toastify/dist/ReactToastify.css';
 import { logout } from '../utils/Logout';
+import { authFetch, getStoredUser } from '../utils/authFetch';
 import { useNavigate } from 'react-router-dom';
 
 type ProfileUpdateProps = {
@@ -15,7 +16,7 @@ type ProfileUpdateProps = {
   onUserUpdate: (updatedUser: User) => void;
 };
 
-export default function ProfileUpdate({ open, onClose, user, onUserUpdate, token }: ProfileUpdateProps) {
+export default function ProfileUpdate({ open, onClose, user, onUserUpdate }: ProfileUpdateProps) {
   const navigate = useNavigate();
   const [form, setForm] = useState({
     firstName: user.firstName,
@@ -77,11 +78,10 @@ export default function ProfileUpdate({ open, onClose, user, onUserUpdate, token
     }
 
     try {
-      const res = await fetch('http://localhost:8080/api/auth/update-profile', {
+      const res = await authFetch('http://localhost:8080/api/auth/update-profile', {
         method: 'POST',
         headers: {
           'Content-Type': 'application/json',
-          Authorization: `Bearer ${token}`,
         },
         body: JSON.stringify({
           firstName: form.firstName,
@@ -103,6 +103,7 @@ export default function ProfileUpdate({ open, onClose, user, onUserUpdate, token
           profilePic: data.user.profilePic || '',
           authProvider: data.user.authProvider,
           token: data.user.token, // Ensure the token is passed through if it's in the response
+          refreshToken: getStoredUser()?.refreshToken, // may have been rotated by authFetch
         };
 
         localStorage.setItem('user', JSON.stringify({ user: updatedUser }));
@@ -123,11 +124,10 @@ export default function ProfileUpdate({ open, onClose, user, onUserUpdate, token
 
   const handlePasswordChange = async () => {
     try {
-      const res = await fetch('http://localhost:8080/api/auth/change-password', {
+      const res = await authFetch('http://localhost:8080/api/auth/change-password', {
         method: 'POST',
         headers: {
           'Content-Type': 'application/json',
-          Authorization: `Bearer ${token}`,
         },
         body: JSON.stringify({
           oldPassword: form.oldPassword,
@@ -55,6 +55,7 @@ export default function Login() {
         profilePic: userData.profilePic || '',
         authProvider: userData.authProvider ,
         token: userData.token,
+        refreshToken: userData.refreshToken,
     };
       localStorage.setItem("user", JSON.stringify({ user }));
     navigate('/dashboard');
@@ -173,6 +174,7 @@ export default function Login() {
               profilePic: decoded.profilePic || '',
               authProvider: userVal.authProvider ,
               token: userVal.token,
+              refreshToken: userVal.refreshToken,
           };
             localStorage.setItem("user", JSON.stringify({ user }));
             
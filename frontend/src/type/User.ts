@@ -6,4 +6,5 @@ export interface User {
   profilePic?: string;
   authProvider: string;
   token: string; // Optional, if you want to include token in user data
+  refreshToken?: string; // one-time use, replaced on every /api/auth/refresh
 }
@@ -1,9 +1,14 @@
 // src/utils/logout.ts
 export async function logout(navigate: Function) {
   try {
+    const stored = localStorage.getItem("user");
+    const user = stored ? JSON.parse(stored).user : null;
     await fetch("http://localhost:8080/api/auth/logout", {
       method: "POST",
       credentials: "include", // ensures cookies are sent
+      headers: { "Content-Type": "application/json" },
+      // revoke both tokens on the server, not just forget them here
+      body: JSON.stringify({ token: user?.token, refreshToken: user?.refreshToken }),
     });
 
     localStorage.removeItem("user"); // frontend data only
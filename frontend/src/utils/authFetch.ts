@@ -0,0 +1,39 @@
+// src/utils/authFetch.ts
+import type { User } from '../type/User';
+
+const API = 'http://localhost:8080/api/auth';
+
+export function getStoredUser(): User | null {
+  const stored = localStorage.getItem('user');
+  return stored ? JSON.parse(stored).user ?? null : null;
+}
+
+// One refresh at a time: a refresh token is only valid once
+let refreshing: Promise<string | null> | null = null;
+
+async function refreshAccessToken(): Promise<string | null> {
+  const user = getStoredUser();
+  if (!user?.refreshToken) return null;
+  const res = await fetch(`${API}/refresh`, {
+    method: 'POST',
+    headers: { 'Content-Type': 'application/json' },
+    body: JSON.stringify({ refreshToken: user.refreshToken }),
+  });
+  if (!res.ok) return null;
+  const data = await res.json();
+  localStorage.setItem('user', JSON.stringify({ user: { ...user, token: data.token, refreshToken: data.refreshToken } }));
+  return data.token;
+}
+
+// fetch with the stored access token; on 401 renews it once with the refresh token and retries
+export async function authFetch(url: string, init: RequestInit = {}): Promise<Response> {
+  const send = (token?: string) =>
+    fetch(url, { ...init, headers: { ...init.headers, Authorization: `Bearer ${token}` } });
+
+  const res = await send(getStoredUser()?.token);
+  if (res.status !== 401) return res;
+
+  refreshing = refreshing ?? refreshAccessToken().finally(() => { refreshing = null; });
+  const token = await refreshing;
+  return token ? send(token) : res;
+}